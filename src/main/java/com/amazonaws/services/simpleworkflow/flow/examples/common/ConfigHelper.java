@@ -26,6 +26,7 @@ import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
 import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflowClient;
 
@@ -42,6 +43,8 @@ public class ConfigHelper {
     private String swfSecretKey;
     private String s3AccessId;
     private String s3SecretKey;
+    private String s3Endpoint;
+    private boolean s3PathStyleAccess;
     private String domain;
     private long domainRetentionPeriodInDays;
 
@@ -63,6 +66,8 @@ public class ConfigHelper {
 
         this.s3AccessId = awsCredentials.getProperty("AWS.Access.ID");
         this.s3SecretKey = awsCredentials.getProperty("AWS.Secret.Key");
+        this.s3Endpoint = sampleConfig.getProperty(ConfigKeys.S3_ENDPOINT_KEY);
+        this.s3PathStyleAccess = Boolean.parseBoolean(sampleConfig.getProperty(ConfigKeys.S3_PATH_STYLE_ACCESS_KEY));
 
         this.domain = sampleConfig.getProperty(ConfigKeys.DOMAIN_KEY);
         this.domainRetentionPeriodInDays = Long.parseLong(sampleConfig.getProperty(ConfigKeys.DOMAIN_RETENTION_PERIOD_KEY));
@@ -88,6 +93,13 @@ public class ConfigHelper {
     public AmazonS3 createS3Client() {
         AWSCredentials s3AWSCredentials = new BasicAWSCredentials(this.s3AccessId, this.s3SecretKey);
         AmazonS3 client = new AmazonS3Client(s3AWSCredentials);
+        // Allows pointing the samples at a local S3 compatible store
+        if (s3Endpoint != null && !s3Endpoint.trim().isEmpty()) {
+            client.setEndpoint(s3Endpoint.trim());
+        }
+        if (s3PathStyleAccess) {
+            client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+        }
         return client;
     }
 
@@ -18,6 +18,9 @@ public class ConfigKeys {
 
     public static final String SWF_SERVICE_URL_KEY = "service.url";
 
+    public static final String S3_ENDPOINT_KEY = "S3.Endpoint";
+    public static final String S3_PATH_STYLE_ACCESS_KEY = "S3.PathStyleAccess";
+
     public static final String DOMAIN_KEY = "domain";
     public static final String DOMAIN_RETENTION_PERIOD_KEY = "domainRetentionPeriodInDays";
 
@@ -14,11 +14,19 @@
  */
 package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
+
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
 import com.amazonaws.services.simpleworkflow.flow.ActivityWorker;
@@ -31,6 +39,8 @@ public class ActivityHost {
 
     private static final String ACTIVITIES_TASK_LIST = "FileProcessing";
 
+    static final String CACHE_FOLDER = "cache";
+
     public static void main(String[] args) throws Exception {
         ConfigHelper configHelper = ConfigHelper.createConfig();
         AmazonSimpleWorkflow swfService = configHelper.createSWFClient();
@@ -41,32 +51,121 @@ public class ActivityHost {
         
         // Start worker to poll the common task list
         final ActivityWorker workerForCommonTaskList = new ActivityWorker(swfService, domain, ACTIVITIES_TASK_LIST);
-        SimpleStoreActivitiesS3Impl storeActivityImpl = new SimpleStoreActivitiesS3Impl(s3Client, localFolder, getHostName());
-        workerForCommonTaskList.addActivitiesImplementation(storeActivityImpl);
+        // Downloads have a task list of their own so that only they are paused while the disk is short of room
+        final ActivityWorker workerForDownloadTaskList = new ActivityWorker(swfService, domain,
+                SimpleStoreActivities.DOWNLOAD_TASK_LIST);
+        long downloadPartSize = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_DOWNLOAD_PARTSIZE_MB)) * 1024 * 1024;
+        int downloadConcurrency = Integer.parseInt(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_DOWNLOAD_CONCURRENCY));
+        long uploadPartSize = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_UPLOAD_PARTSIZE_MB)) * 1024 * 1024;
+        int uploadConcurrency = Integer.parseInt(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_UPLOAD_CONCURRENCY));
+        LocalObjectCache objectCache = createObjectCache(configHelper, localFolder);
+        String storeRootFolder = configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_STORE_ROOTFOLDER);
+        SimpleStoreActivities storeActivityImpl;
+        if (storeRootFolder != null && !storeRootFolder.trim().isEmpty()) {
+            storeActivityImpl = new SimpleStoreActivitiesFileSystemImpl(storeRootFolder.trim(), localFolder, getHostName());
+        }
+        else {
+            storeActivityImpl = new SimpleStoreActivitiesS3Impl(s3Client, localFolder, getHostName(), downloadPartSize,
+                    downloadConcurrency, uploadPartSize, uploadConcurrency, objectCache);
+        }
+        workerForDownloadTaskList.addActivitiesImplementation(storeActivityImpl);
+        int partSize = Integer.parseInt(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_STREAMING_PARTSIZE_MB)) * 1024 * 1024;
+        int maxInFlightParts = Integer.parseInt(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_STREAMING_MAXINFLIGHTPARTS));
+        StreamingFileProcessingActivitiesZipImpl streamingActivityImpl = new StreamingFileProcessingActivitiesZipImpl(s3Client,
+                getHostName(), partSize, maxInFlightParts);
+        workerForCommonTaskList.addActivitiesImplementation(streamingActivityImpl);
+        SegmentedFileProcessingActivitiesZipImpl segmentedActivityImpl = new SegmentedFileProcessingActivitiesZipImpl(
+                s3Client, Runtime.getRuntime().availableProcessors(), partSize, maxInFlightParts);
+        workerForCommonTaskList.addActivitiesImplementation(segmentedActivityImpl);
+        String reportBucketName = configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_LOADREPORT_BUCKETNAME);
+        if (reportBucketName != null && reportBucketName.trim().isEmpty()) {
+            reportBucketName = null;
+        }
+        String reportPrefix = configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_LOADREPORT_PREFIX);
+        long reportInterval = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_LOADREPORT_INTERVAL_SECONDS));
+        // Reports missing three publications in a row belong to hosts that are gone
+        HostRoutingActivitiesImpl routingActivityImpl = new HostRoutingActivitiesImpl(s3Client, reportBucketName,
+                reportPrefix, TimeUnit.SECONDS.toMillis(reportInterval * 3));
+        workerForCommonTaskList.addActivitiesImplementation(routingActivityImpl);
+        workerForCommonTaskList.addActivitiesImplementation(new BatchManifestActivitiesS3Impl(s3Client));
         workerForCommonTaskList.start();
-        System.out.println("Host Service Started for Task List: " + ACTIVITIES_TASK_LIST);        
+        System.out.println("Host Service Started for Task List: " + ACTIVITIES_TASK_LIST);
+        workerForDownloadTaskList.start();
+        System.out.println("Host Service Started for Task List: " + SimpleStoreActivities.DOWNLOAD_TASK_LIST);
+
+        // Stop taking new files from the download task list while the local folder is short of room
+        DiskAdmissionController admissionController = createAdmissionController(configHelper, workerForDownloadTaskList,
+                localFolder);
+        final ScheduledExecutorService hostScheduler = Executors.newScheduledThreadPool(2);
+        long admissionInterval = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_ADMISSION_INTERVAL_SECONDS));
+        hostScheduler.scheduleWithFixedDelay(admissionController, 0, admissionInterval, TimeUnit.SECONDS);        
         
         // Start worker to poll the host specific task list
         final ActivityWorker workerForHostSpecificTaskList =  new ActivityWorker(swfService, domain, getHostName());
         workerForHostSpecificTaskList.addActivitiesImplementation(storeActivityImpl);
-        FileProcessingActivitiesZipImpl processorActivityImpl = new FileProcessingActivitiesZipImpl(localFolder);
+        int ioBufferSize = Integer.parseInt(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_IO_BUFFER_KB)) * 1024;
+        long mapThreshold = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_IO_MAPTHRESHOLD_MB)) * 1024 * 1024;
+        FileProcessingActivitiesZipImpl processorActivityImpl = new FileProcessingActivitiesZipImpl(localFolder,
+                new LocalFileIO(ioBufferSize, mapThreshold));
         workerForHostSpecificTaskList.addActivitiesImplementation(processorActivityImpl);
         workerForHostSpecificTaskList.start();
         System.out.println("Worker Started for Activity Task List: " + getHostName());      
 
+        // Publish the load of this host once its task list is polled, when routing by host load is configured
+        final HostLoadPublisher loadPublisher;
+        if (reportBucketName != null) {
+            loadPublisher = new HostLoadPublisher(s3Client, reportBucketName, reportPrefix, getHostName(), localFolder,
+                    objectCache, admissionController);
+            hostScheduler.scheduleWithFixedDelay(loadPublisher, 0, reportInterval, TimeUnit.SECONDS);
+        }
+        else {
+            loadPublisher = null;
+        }
+
+        // Clean up files of runs that ended without deleting them, at low priority
+        final ScheduledExecutorService janitorScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "StagedFileJanitor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        long janitorInterval = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_JANITOR_INTERVAL_MINUTES));
+        long janitorMinAge = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_JANITOR_MINAGE_MINUTES));
+        long janitorRate = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_JANITOR_MAXDELETE_MB_PER_SECOND)) * 1024 * 1024;
+        StagedFileJanitor janitor = new StagedFileJanitor(swfService, domain, localFolder,
+                TimeUnit.MINUTES.toMillis(janitorMinAge), janitorRate);
+        janitorScheduler.scheduleWithFixedDelay(janitor, janitorInterval, janitorInterval, TimeUnit.MINUTES);
+
         Runtime.getRuntime().addShutdownHook(new Thread() {
 
             public void run() {
                 try {
+                    hostScheduler.shutdownNow();
+                    janitorScheduler.shutdownNow();
                     workerForCommonTaskList.shutdown();
+                    workerForDownloadTaskList.shutdown();
                     workerForHostSpecificTaskList.shutdown();
                     workerForCommonTaskList.awaitTermination(1, TimeUnit.MINUTES);
+                    workerForDownloadTaskList.awaitTermination(1, TimeUnit.MINUTES);
                     workerForHostSpecificTaskList.awaitTermination(1, TimeUnit.MINUTES);
                     System.out.println("Activity Workers Exited.");
                 }
                 catch (InterruptedException e) {
                     e.printStackTrace();
                 }
+                if (loadPublisher != null) {
+                    try {
+                        // Withdrawn after the workers drained, so an S3 failure cannot skip their shutdown
+                        loadPublisher.withdraw();
+                    }
+                    catch (AmazonClientException e) {
+                        e.printStackTrace();
+                    }
+                }
             }
         });
 
@@ -82,6 +181,35 @@ public class ActivityHost {
 
     }
 
+    /**
+     * @return cache registered with JMX or null if it is disabled
+     */
+    private static LocalObjectCache createObjectCache(ConfigHelper configHelper, String localFolder) throws Exception {
+        long quota = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_CACHE_QUOTA_MB)) * 1024 * 1024;
+        if (quota <= 0) {
+            return null;
+        }
+        LocalObjectCache objectCache = new LocalObjectCache(new File(localFolder, CACHE_FOLDER), quota);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(objectCache,
+                new ObjectName("com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing:type=LocalObjectCache"));
+        System.out.println("Object cache holds " + objectCache.getEntryCount() + " objects");
+        return objectCache;
+    }
+
+    /**
+     * @return controller registered with JMX
+     */
+    private static DiskAdmissionController createAdmissionController(ConfigHelper configHelper, ActivityWorker worker,
+            String localFolder) throws Exception {
+        long minFree = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_ADMISSION_MINFREE_MB)) * 1024 * 1024;
+        long maxStaged = Long.parseLong(configHelper.getValueFromConfig(FileProcessingConfigKeys.ACTIVITY_WORKER_ADMISSION_MAXSTAGED_MB)) * 1024 * 1024;
+        DiskAdmissionController admissionController = new DiskAdmissionController(worker, localFolder,
+                new File(localFolder, CACHE_FOLDER), minFree, maxStaged);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(admissionController,
+                new ObjectName("com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing:type=DiskAdmissionController"));
+        return admissionController;
+    }
+
     static String getHostName() {
         try {
             InetAddress addr = InetAddress.getLocalHost();
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+/**
+ * Options of {@link BatchFileProcessingWorkflow}, carried over to every run of
+ * the batch
+ */
+public class BatchFileProcessingOptions {
+
+    private int maxInFlight = 20;
+
+    private int manifestPageSize = 100;
+
+    private int continueAsNewAfterFiles = 500;
+
+    private FileProcessingOptions fileProcessingOptions = new FileProcessingOptions();
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Maximum number of files being downloaded, zipped or uploaded at the
+     * same time across all hosts
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getManifestPageSize() {
+        return manifestPageSize;
+    }
+
+    /**
+     * Number of manifest entries read by one activity. Pages of long keys
+     * hold fewer, so they stay under the 32KB limit of a result.
+     */
+    public void setManifestPageSize(int manifestPageSize) {
+        this.manifestPageSize = manifestPageSize;
+    }
+
+    public int getContinueAsNewAfterFiles() {
+        return continueAsNewAfterFiles;
+    }
+
+    /**
+     * Number of files after which no more manifest pages are read and a new
+     * run continues the batch once the files in flight are done. Every file
+     * adds about 30 events to the history, which is limited to 25000.
+     */
+    public void setContinueAsNewAfterFiles(int continueAsNewAfterFiles) {
+        this.continueAsNewAfterFiles = continueAsNewAfterFiles;
+    }
+
+    public FileProcessingOptions getFileProcessingOptions() {
+        return fileProcessingOptions;
+    }
+
+    /**
+     * Compression settings applied to every file. The batch always stages
+     * files, so the processing mode is ignored.
+     */
+    public void setFileProcessingOptions(FileProcessingOptions fileProcessingOptions) {
+        this.fileProcessingOptions = fileProcessingOptions;
+    }
+
+}
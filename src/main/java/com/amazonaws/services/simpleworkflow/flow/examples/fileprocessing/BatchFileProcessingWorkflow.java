@@ -0,0 +1,45 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Execute;
+import com.amazonaws.services.simpleworkflow.flow.annotations.GetState;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Workflow;
+import com.amazonaws.services.simpleworkflow.flow.annotations.WorkflowRegistrationOptions;
+
+/**
+ * Contract for processing every file listed in a manifest within a single
+ * workflow execution
+ */
+@Workflow
+@WorkflowRegistrationOptions(defaultExecutionStartToCloseTimeoutSeconds = 86400, defaultTaskStartToCloseTimeoutSeconds = 10)
+public interface BatchFileProcessingWorkflow {
+
+    /**
+     * @param manifestBucketName
+     *          Name of S3 bucket that contains the manifest
+     * @param manifestKey
+     *          Key of the manifest, see {@link BatchManifestActivities}
+     * @param progress
+     *          Progress of the previous run or null for a new batch
+     */
+    @Execute(name = "ProcessFileBatch", version = "1.0")
+    public void processBatch(String manifestBucketName, String manifestKey, BatchFileProcessingOptions options,
+            BatchProgress progress);
+
+    @GetState
+    public String getState();
+
+}
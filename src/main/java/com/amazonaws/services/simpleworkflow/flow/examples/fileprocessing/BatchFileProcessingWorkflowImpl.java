@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import com.amazonaws.services.simpleworkflow.flow.ActivitySchedulingOptions;
+import com.amazonaws.services.simpleworkflow.flow.DecisionContextProviderImpl;
+import com.amazonaws.services.simpleworkflow.flow.WorkflowContext;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.annotations.NoWait;
+import com.amazonaws.services.simpleworkflow.flow.core.OrPromise;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.core.Settable;
+import com.amazonaws.services.simpleworkflow.flow.core.TryCatchFinally;
+
+/**
+ * Zips every file of a manifest the same way {@link FileProcessingWorkflowZipImpl}
+ * zips one, keeping at most {@link BatchFileProcessingOptions#getMaxInFlight()}
+ * files in progress.
+ * <p>
+ * Each host zips one file at a time and uploads one file at a time, in the
+ * order the files were downloaded to it. Downloads are not held back, so a
+ * host downloads the next file while it zips the previous one and uploads the
+ * one before that.
+ * <p>
+ * A failed file is counted and does not stop the batch. Once enough files
+ * were started the run stops reading the manifest, lets the files in flight
+ * finish and continues as a new run from where it stopped.
+ */
+public class BatchFileProcessingWorkflowImpl implements BatchFileProcessingWorkflow {
+
+    /**
+     * Completion of the last zip and upload scheduled on a host. A slot is
+     * released when its stage completes or its file fails.
+     */
+    private static class HostPipeline {
+
+        Promise<Void> processSlot = Promise.Void();
+
+        Promise<Void> uploadSlot = Promise.Void();
+
+    }
+
+    private final BatchManifestActivitiesClient manifest;
+
+    private final SimpleStoreActivitiesClient store;
+
+    private final FileProcessingActivitiesClient processor;
+
+    /**
+     * Used to continue the batch in a new run to reset history
+     */
+    private final BatchFileProcessingWorkflowSelfClient selfClient;
+
+    private final WorkflowContext workflowContext;
+
+    private final Map<String, HostPipeline> pipelines = new HashMap<String, HostPipeline>();
+
+    private final Deque<ManifestEntry> pending = new ArrayDeque<ManifestEntry>();
+
+    /**
+     * Completion of the files in flight
+     */
+    private final List<Promise<Void>> running = new ArrayList<Promise<Void>>();
+
+    private String manifestBucketName;
+
+    private String manifestKey;
+
+    private BatchFileProcessingOptions options;
+
+    private BatchProgress progress;
+
+    /**
+     * Page being read, null when none is
+     */
+    private Promise<ManifestPage> nextPage;
+
+    private boolean manifestExhausted;
+
+    private int startedInRun;
+
+    private String state = "Started";
+
+    public BatchFileProcessingWorkflowImpl() {
+        manifest = new BatchManifestActivitiesClientImpl();
+        store = new SimpleStoreActivitiesClientImpl();
+        processor = new FileProcessingActivitiesClientImpl();
+        selfClient = new BatchFileProcessingWorkflowSelfClientImpl();
+        workflowContext = (new DecisionContextProviderImpl()).getDecisionContext().getWorkflowContext();
+    }
+
+    /**
+     * Constructor used for unit testing or when Spring is used to configure
+     * workflow
+     */
+    public BatchFileProcessingWorkflowImpl(BatchManifestActivitiesClient manifest, SimpleStoreActivitiesClient store,
+            FileProcessingActivitiesClient processor, BatchFileProcessingWorkflowSelfClient selfClient,
+            WorkflowContext workflowContext) {
+        this.manifest = manifest;
+        this.store = store;
+        this.processor = processor;
+        this.selfClient = selfClient;
+        this.workflowContext = workflowContext;
+    }
+
+    @Override
+    public void processBatch(String manifestBucketName, String manifestKey, BatchFileProcessingOptions options,
+            BatchProgress progress) {
+        this.manifestBucketName = manifestBucketName;
+        this.manifestKey = manifestKey;
+        this.options = options == null ? new BatchFileProcessingOptions() : options;
+        this.progress = progress == null ? new BatchProgress() : progress;
+        schedule();
+    }
+
+    /**
+     * Starts pending files up to the in-flight limit, reads ahead in the
+     * manifest while this run still takes files and waits for the next file
+     * or page to complete. Every step runs in the root scope, so the scopes
+     * of the files do not nest however many of them the run processes.
+     */
+    private void schedule() {
+        while (running.size() < options.getMaxInFlight() && !pending.isEmpty()) {
+            running.add(processEntry(pending.removeFirst()));
+        }
+        boolean takesMoreFiles = startedInRun + pending.size() < options.getContinueAsNewAfterFiles();
+        if (nextPage == null && !manifestExhausted && takesMoreFiles && pending.size() < options.getMaxInFlight()) {
+            nextPage = manifest.readManifest(manifestBucketName, manifestKey, progress.getNextOffset(),
+                    options.getManifestPageSize());
+        }
+        updateState();
+        if (running.isEmpty() && pending.isEmpty() && nextPage == null) {
+            finishRun();
+            return;
+        }
+        List<Promise<?>> events = new ArrayList<Promise<?>>(running);
+        if (nextPage != null) {
+            events.add(nextPage);
+        }
+        scheduleAfter(new OrPromise(events.toArray(new Promise<?>[events.size()])));
+    }
+
+    @Asynchronous
+    private void scheduleAfter(OrPromise anyCompleted) {
+        if (nextPage != null && nextPage.isReady()) {
+            ManifestPage page = nextPage.get();
+            nextPage = null;
+            pending.addAll(page.getEntries());
+            progress.setNextOffset(page.getNextOffset());
+            manifestExhausted = page.isLast();
+        }
+        Iterator<Promise<Void>> files = running.iterator();
+        while (files.hasNext()) {
+            if (files.next().isReady()) {
+                files.remove();
+            }
+        }
+        schedule();
+    }
+
+    private void finishRun() {
+        if (manifestExhausted) {
+            state = "Completed: " + progress.getSucceeded() + " succeeded (" + progress.getUnchanged() + " unchanged), "
+                    + progress.getFailed() + " failed";
+            return;
+        }
+        BatchProgress nextRunProgress = new BatchProgress();
+        nextRunProgress.setNextOffset(progress.getNextOffset());
+        nextRunProgress.setRun(progress.getRun() + 1);
+        nextRunProgress.setSucceeded(progress.getSucceeded());
+        nextRunProgress.setFailed(progress.getFailed());
+        nextRunProgress.setUnchanged(progress.getUnchanged());
+        nextRunProgress.setLastFailure(progress.getLastFailure());
+        state = "Continued as run " + nextRunProgress.getRun();
+        // Request new run of the current workflow instance
+        selfClient.processBatch(manifestBucketName, manifestKey, options, nextRunProgress);
+    }
+
+    /**
+     * @return ready once the file succeeded or failed
+     */
+    private Promise<Void> processEntry(final ManifestEntry entry) {
+        startedInRun++;
+        final Settable<Void> done = new Settable<Void>();
+        final Settable<String> taskList = new Settable<String>();
+        final Settable<Void> processSlot = new Settable<Void>();
+        final Settable<Void> uploadSlot = new Settable<Void>();
+
+        // Use runId and the position in the run so that files with the same name do not collide
+        String prefix = workflowContext.getWorkflowExecution().getRunId() + "_" + startedInRun + "_";
+        final String localSourceFilename = prefix + new File(entry.getSourceFilename()).getName();
+        final String localTargetFilename = prefix + new File(entry.getTargetFilename()).getName();
+        new TryCatchFinally() {
+
+            private boolean failed;
+
+            @Override
+            protected void doTry() throws Throwable {
+                // Downloads go to their own task list, which hosts short of disk stop polling
+                ActivitySchedulingOptions downloadOptions = new ActivitySchedulingOptions()
+                        .withTaskList(SimpleStoreActivities.DOWNLOAD_TASK_LIST);
+                Promise<String> activityWorkerTaskList = store.download(entry.getSourceBucketName(),
+                        entry.getSourceFilename(), localSourceFilename, downloadOptions);
+                taskList.chain(activityWorkerTaskList);
+                Promise<Void> fileProcessed = processInPipeline(activityWorkerTaskList, localSourceFilename,
+                        localTargetFilename, processSlot);
+                Promise<Boolean> uploaded = uploadInPipeline(activityWorkerTaskList, fileProcessed, entry,
+                        localTargetFilename, uploadSlot);
+                countUnchanged(uploaded);
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                if (e instanceof CancellationException) {
+                    throw e;
+                }
+                failed = true;
+                progress.setLastFailure(entry.getSourceFilename() + ": " + e.getMessage());
+            }
+
+            @Override
+            protected void doFinally() throws Throwable {
+                // Let the next file on the host proceed even if this one failed
+                if (!processSlot.isReady()) {
+                    processSlot.set(null);
+                }
+                if (!uploadSlot.isReady()) {
+                    uploadSlot.set(null);
+                }
+                if (taskList.isReady()) {
+                    ActivitySchedulingOptions options = new ActivitySchedulingOptions().withTaskList(taskList.get());
+                    store.deleteLocalFile(localSourceFilename, options);
+                    store.deleteLocalFile(localTargetFilename, options);
+                }
+                if (failed) {
+                    progress.setFailed(progress.getFailed() + 1);
+                }
+                else {
+                    progress.setSucceeded(progress.getSucceeded() + 1);
+                }
+                done.set(null);
+            }
+        };
+        return done;
+    }
+
+    private HostPipeline pipelineFor(String taskList) {
+        HostPipeline pipeline = pipelines.get(taskList);
+        if (pipeline == null) {
+            pipeline = new HostPipeline();
+            pipelines.put(taskList, pipeline);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Queues the zip behind the previous zip on the same host
+     */
+    @Asynchronous
+    private Promise<Void> processInPipeline(Promise<String> taskList, String fileToProcess, String fileToUpload,
+            @NoWait Settable<Void> processSlot) {
+        HostPipeline pipeline = pipelineFor(taskList.get());
+        Promise<Void> previous = pipeline.processSlot;
+        pipeline.processSlot = processSlot;
+        Promise<Void> processed = processAfter(previous, taskList.get(), fileToProcess, fileToUpload);
+        release(processSlot, processed);
+        return processed;
+    }
+
+    @Asynchronous
+    private Promise<Void> processAfter(Promise<Void> previous, String taskList, String fileToProcess,
+            String fileToUpload) {
+        ActivitySchedulingOptions schedulingOptions = new ActivitySchedulingOptions().withTaskList(taskList);
+        FileProcessingOptions processingOptions = options.getFileProcessingOptions();
+        if (processingOptions.getCompressionThreads() > 1 || processingOptions.getCompressionLevel() != -1) {
+            return processor.processFileParallel(fileToProcess, fileToUpload, processingOptions.getCompressionThreads(),
+                    processingOptions.getCompressionLevel(), schedulingOptions);
+        }
+        return processor.processFile(fileToProcess, fileToUpload, schedulingOptions);
+    }
+
+    /**
+     * Queues the upload behind the previous upload on the same host
+     */
+    @Asynchronous
+    private Promise<Boolean> uploadInPipeline(Promise<String> taskList, Promise<Void> fileProcessed, ManifestEntry entry,
+            String localTargetFilename, @NoWait Settable<Void> uploadSlot) {
+        HostPipeline pipeline = pipelineFor(taskList.get());
+        Promise<Void> previous = pipeline.uploadSlot;
+        pipeline.uploadSlot = uploadSlot;
+        Promise<Boolean> uploaded = uploadAfter(previous, taskList.get(), entry, localTargetFilename);
+        release(uploadSlot, uploaded);
+        return uploaded;
+    }
+
+    @Asynchronous
+    private Promise<Boolean> uploadAfter(Promise<Void> previous, String taskList, ManifestEntry entry,
+            String localTargetFilename) {
+        ActivitySchedulingOptions schedulingOptions = new ActivitySchedulingOptions().withTaskList(taskList);
+        return store.upload(entry.getTargetBucketName(), localTargetFilename, entry.getTargetFilename(),
+                schedulingOptions);
+    }
+
+    @Asynchronous
+    private void release(@NoWait Settable<Void> slot, Promise<?> stage) {
+        slot.set(null);
+    }
+
+    /**
+     * A null result comes from an upload that returned nothing, see
+     * FileProcessingWorkflowZipImpl
+     */
+    @Asynchronous
+    private void countUnchanged(Promise<Boolean> uploaded) {
+        if (Boolean.FALSE.equals(uploaded.get())) {
+            progress.setUnchanged(progress.getUnchanged() + 1);
+        }
+    }
+
+    private void updateState() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Run ").append(progress.getRun());
+        builder.append(": ").append(progress.getSucceeded()).append(" succeeded (");
+        builder.append(progress.getUnchanged()).append(" unchanged), ");
+        builder.append(progress.getFailed()).append(" failed, ");
+        builder.append(running.size()).append(" in flight on ").append(pipelines.size()).append(" hosts, ");
+        builder.append(pending.size()).append(" queued");
+        if (progress.getLastFailure() != null) {
+            builder.append("; last failure ").append(progress.getLastFailure());
+        }
+        state = builder.toString();
+    }
+
+    @Override
+    public String getState() {
+        return state;
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.IOException;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Activities;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrationOptions;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ExponentialRetry;
+
+/**
+ * Contract for reading the manifest of a batch
+ */
+@Activities(version = "1.0")
+@ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 60, defaultTaskStartToCloseTimeoutSeconds = 120)
+public interface BatchManifestActivities {
+
+    /**
+     * Manifest lines hold the source bucket, source key, target bucket and
+     * target key separated by tabs. Empty lines and lines starting with #
+     * are skipped.
+     * 
+     * @param bucketName
+     *          Name of S3 bucket that contains the manifest
+     * @param key
+     *          Key of the manifest
+     * @param offset
+     *          Byte offset to read from, 0 or the next offset of the
+     *          previous page
+     * @param maxEntries
+     *          Maximum number of entries returned, fewer are returned when
+     *          the page would get close to the 32KB limit of a result
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 5)
+    public ManifestPage readManifest(String bucketName, String key, long offset, int maxEntries) throws IOException;
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Reads manifest pages with ranged GETs starting at the offset where the
+ * previous page ended, so the cost of a page does not grow with its
+ * position in the manifest.
+ */
+public class BatchManifestActivitiesS3Impl implements BatchManifestActivities {
+
+    /**
+     * Bound of the serialized page, leaving room under the 32KB limit of an
+     * activity result for the estimate being off
+     */
+    static final int MAX_PAGE_BYTES = 24 * 1024;
+
+    /**
+     * Serialized size of an entry beyond its four fields: the field names,
+     * quotes and type information
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 200;
+
+    private final AmazonS3 s3Client;
+
+    public BatchManifestActivitiesS3Impl(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    @Override
+    public ManifestPage readManifest(String bucketName, String key, long offset, int maxEntries) throws IOException {
+        ManifestPage page = new ManifestPage();
+        long length = s3Client.getObjectMetadata(bucketName, key).getContentLength();
+        if (offset >= length) {
+            page.setNextOffset(offset);
+            page.setLast(true);
+            return page;
+        }
+        GetObjectRequest request = new GetObjectRequest(bucketName, key);
+        request.setRange(offset, length - 1);
+        S3Object object = s3Client.getObject(request);
+        S3ObjectInputStream objectContent = object.getObjectContent();
+        try {
+            InputStream inputStream = new BufferedInputStream(objectContent);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = offset;
+            long pageBytes = 0;
+            while (page.getEntries().size() < maxEntries && position < length) {
+                int consumed = readLine(inputStream, line);
+                ManifestEntry entry = parseLine(new String(line.toByteArray(), StandardCharsets.UTF_8), key);
+                if (entry != null) {
+                    // Escaping aside, the fields take as many bytes as the line
+                    long entryBytes = ENTRY_OVERHEAD_BYTES + line.size();
+                    if (!page.getEntries().isEmpty() && pageBytes + entryBytes > MAX_PAGE_BYTES) {
+                        // The next page starts with this line
+                        break;
+                    }
+                    pageBytes += entryBytes;
+                    page.getEntries().add(entry);
+                }
+                position += consumed;
+            }
+            page.setNextOffset(position);
+            page.setLast(position >= length);
+        }
+        finally {
+            // The rest of the range is not needed
+            objectContent.abort();
+        }
+        System.out.println("readManifest read " + page.getEntries().size() + " entries of " + key + " from byte " + offset);
+        return page;
+    }
+
+    /**
+     * @return number of bytes consumed including the line terminator
+     */
+    private static int readLine(InputStream inputStream, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int consumed = 0;
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            consumed++;
+            if (b == '\n') {
+                break;
+            }
+            line.write(b);
+        }
+        return consumed;
+    }
+
+    /**
+     * @return entry or null for lines that do not describe a file
+     */
+    static ManifestEntry parseLine(String line, String manifestKey) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return null;
+        }
+        String[] fields = trimmed.split("\t");
+        if (fields.length != 4) {
+            System.out.println("Skipping line of manifest " + manifestKey + " without 4 tab separated fields: " + line);
+            return null;
+        }
+        return new ManifestEntry(fields[0].trim(), fields[1].trim(), fields[2].trim(), fields[3].trim());
+    }
+
+}
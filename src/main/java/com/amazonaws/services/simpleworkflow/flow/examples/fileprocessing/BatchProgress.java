@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+/**
+ * Position and counters of a batch handed from one run of
+ * {@link BatchFileProcessingWorkflow} to the next
+ */
+public class BatchProgress {
+
+    private long nextOffset;
+
+    private int run;
+
+    private long succeeded;
+
+    private long failed;
+
+    private long unchanged;
+
+    private String lastFailure;
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Byte offset of the first manifest line not started yet
+     */
+    public void setNextOffset(long nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+
+    public int getRun() {
+        return run;
+    }
+
+    /**
+     * Number of the current run, starting at 0
+     */
+    public void setRun(int run) {
+        this.run = run;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public void setSucceeded(long succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Succeeded files whose target already had the same content
+     */
+    public void setUnchanged(long unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Source key and message of the most recent file that failed
+     */
+    public void setLastFailure(String lastFailure) {
+        this.lastFailure = lastFailure;
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
+import com.amazonaws.services.simpleworkflow.flow.examples.common.ConfigHelper;
+import com.amazonaws.services.simpleworkflow.model.WorkflowExecution;
+
+/**
+ * This is used for launching a Workflow instance of BatchFileProcessingWorkflow
+ */
+public class BatchWorkflowExecutionStarter {
+
+    public static void main(String[] args) throws Exception {
+
+        // Load configuration
+        ConfigHelper configHelper = ConfigHelper.createConfig();
+
+        // Create the client for Simple Workflow Service
+        AmazonSimpleWorkflow swfService = configHelper.createSWFClient();
+        String domain = configHelper.getDomain();
+
+        // Start Workflow instance
+        String manifestBucketName = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_MANIFESTBUCKETNAME_KEY);
+        String manifestKey = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_MANIFESTKEY_KEY);
+        BatchFileProcessingOptions options = new BatchFileProcessingOptions();
+        String maxInFlight = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_MAXINFLIGHT_KEY);
+        if (maxInFlight != null) {
+            options.setMaxInFlight(Integer.parseInt(maxInFlight.trim()));
+        }
+        FileProcessingOptions fileProcessingOptions = new FileProcessingOptions();
+        String compressionThreads = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_COMPRESSIONTHREADS_KEY);
+        if (compressionThreads != null) {
+            fileProcessingOptions.setCompressionThreads(Integer.parseInt(compressionThreads.trim()));
+        }
+        String compressionLevel = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_COMPRESSIONLEVEL_KEY);
+        if (compressionLevel != null) {
+            fileProcessingOptions.setCompressionLevel(Integer.parseInt(compressionLevel.trim()));
+        }
+        options.setFileProcessingOptions(fileProcessingOptions);
+
+        BatchFileProcessingWorkflowClientExternalFactory clientFactory = new BatchFileProcessingWorkflowClientExternalFactoryImpl(
+                swfService, domain);
+        BatchFileProcessingWorkflowClientExternal workflow = clientFactory.getClient();
+        workflow.processBatch(manifestBucketName, manifestKey, options, null);
+
+        // WorkflowExecution is available after workflow creation
+        WorkflowExecution workflowExecution = workflow.getWorkflowExecution();
+        System.out.println("Started batch workflow with workflowId=\"" + workflowExecution.getWorkflowId()
+                + "\" and runId=\"" + workflowExecution.getRunId() + "\"");
+
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Digest identifying the output of a processing activity, stored in a
+ * sidecar file next to the output and as user metadata on the uploaded
+ * object. It covers the uncompressed content and the compression settings
+ * rather than the zip bytes, which embed the staging name and time and so
+ * differ on every run even when the content does not.
+ */
+public class ContentDigest {
+
+    /**
+     * Suffix of the sidecar file holding the digest of a local output file
+     */
+    static final String SIDECAR_SUFFIX = ".sha256";
+
+    /**
+     * User metadata key of the digest on the uploaded object
+     */
+    static final String METADATA_KEY = "content-sha256";
+
+    private ContentDigest() {
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * @param variant
+     *            Describes how the content was transformed, outputs of
+     *            different variants never match
+     */
+    static String format(MessageDigest digest, String variant) {
+        return toHex(digest.digest()) + "-" + variant;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    static void writeSidecar(File output, String digest) throws IOException {
+        Files.write(sidecar(output).toPath(), digest.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return digest of the output or null if none was recorded
+     */
+    static String readSidecar(File output) throws IOException {
+        File sidecar = sidecar(output);
+        if (!sidecar.exists()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    static File sidecar(File output) {
+        return new File(output.getPath() + SIDECAR_SUFFIX);
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+
+import com.amazonaws.services.simpleworkflow.flow.ActivityWorker;
+
+/**
+ * Stops a host from taking new files when its local folder runs out of room.
+ * Polling of the worker on the download task list is suspended once free
+ * disk drops below a minimum or the files staged in the local folder grow
+ * past a maximum. The other workers keep polling, so files already on the
+ * host are processed, uploaded and deleted, and work that does not stage
+ * files keeps running.
+ * <p>
+ * Polling resumes only when both measures are back within the limits with a
+ * margin, so a host hovering around a limit does not flap between states.
+ * Staged bytes count downloads in progress at their full size, as the
+ * downloader allocates the whole file up front.
+ */
+public class DiskAdmissionController implements Runnable, DiskAdmissionControllerMXBean {
+
+    /**
+     * Fraction of the limits that must be regained before polling resumes
+     */
+    static final double RESUME_MARGIN = 0.1;
+
+    private final ActivityWorker worker;
+
+    private final File localFolder;
+
+    private final File excludedFolder;
+
+    private final long minUsableBytes;
+
+    private final long maxStagedBytes;
+
+    private volatile boolean paused;
+
+    private volatile long usableBytes;
+
+    private volatile long stagedBytes;
+
+    private long pauseCount;
+
+    private long resumeCount;
+
+    private long pausedMillis;
+
+    private long pausedSince;
+
+    /**
+     * @param excludedFolder
+     *            Folder inside the local folder whose files are not counted
+     *            as staged, such as the object cache which has its own quota
+     */
+    public DiskAdmissionController(ActivityWorker worker, String localFolder, File excludedFolder,
+            long minUsableBytes, long maxStagedBytes) {
+        this.worker = worker;
+        this.localFolder = new File(localFolder);
+        this.excludedFolder = excludedFolder;
+        this.minUsableBytes = minUsableBytes;
+        this.maxStagedBytes = maxStagedBytes;
+    }
+
+    @Override
+    public void run() {
+        usableBytes = localFolder.getUsableSpace();
+        stagedBytes = sizeOf(localFolder);
+        boolean pause = shouldPause(paused, usableBytes, stagedBytes);
+        if (pause && !paused) {
+            worker.suspendPolling();
+            synchronized (this) {
+                paused = true;
+                pauseCount++;
+                pausedSince = System.currentTimeMillis();
+            }
+            System.out.println("Paused polling of " + worker.getTaskListToPoll() + ": " + usableBytes
+                    + " bytes free, " + stagedBytes + " bytes staged");
+        }
+        else if (!pause && paused) {
+            worker.resumePolling();
+            synchronized (this) {
+                paused = false;
+                resumeCount++;
+                pausedMillis += System.currentTimeMillis() - pausedSince;
+            }
+            System.out.println("Resumed polling of " + worker.getTaskListToPoll() + ": " + usableBytes
+                    + " bytes free, " + stagedBytes + " bytes staged");
+        }
+    }
+
+    /**
+     * @return whether polling should be paused given the current state
+     */
+    boolean shouldPause(boolean paused, long usable, long staged) {
+        if (!paused) {
+            return usable < minUsableBytes || staged > maxStagedBytes;
+        }
+        return usable < minUsableBytes * (1 + RESUME_MARGIN) || staged > maxStagedBytes * (1 - RESUME_MARGIN);
+    }
+
+    private long sizeOf(File folder) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long size = 0;
+        for (File file : files) {
+            if (file.isFile()) {
+                size += file.length();
+            }
+            else if (file.isDirectory() && !file.equals(excludedFolder)) {
+                size += sizeOf(file);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isPaused() {
+        return paused;
+    }
+
+    @Override
+    public synchronized long getPauseCount() {
+        return pauseCount;
+    }
+
+    @Override
+    public synchronized long getResumeCount() {
+        return resumeCount;
+    }
+
+    @Override
+    public synchronized long getPausedMillis() {
+        return paused ? pausedMillis + System.currentTimeMillis() - pausedSince : pausedMillis;
+    }
+
+    @Override
+    public long getUsableBytes() {
+        return usableBytes;
+    }
+
+    @Override
+    public long getStagedBytes() {
+        return stagedBytes;
+    }
+
+    @Override
+    public long getMinUsableBytes() {
+        return minUsableBytes;
+    }
+
+    @Override
+    public long getMaxStagedBytes() {
+        return maxStagedBytes;
+    }
+
+}
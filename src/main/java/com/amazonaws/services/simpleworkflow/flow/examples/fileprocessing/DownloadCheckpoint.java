@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+/**
+ * Progress of a download: the version of the object being downloaded and the
+ * length of the prefix of the local file that is complete and flushed to
+ * disk. Serialized to a compact single line so that it fits in activity
+ * heartbeat details.
+ * <p>
+ * Format: <code>eTag;contentLength;durableBytes</code>, heartbeat details
+ * append the percentage of the object transferred so far.
+ */
+public class DownloadCheckpoint {
+
+    private final String eTag;
+
+    private final long contentLength;
+
+    private final long durableBytes;
+
+    public DownloadCheckpoint(String eTag, long contentLength, long durableBytes) {
+        this.eTag = eTag;
+        this.contentLength = contentLength;
+        this.durableBytes = durableBytes;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public long getDurableBytes() {
+        return durableBytes;
+    }
+
+    /**
+     * @return true if the download can continue from this checkpoint given
+     *         the current version of the object and the partial local file
+     */
+    public boolean isValidFor(String currentETag, long currentContentLength, long localFileLength) {
+        return eTag != null && eTag.equals(currentETag) && contentLength == currentContentLength
+                && localFileLength >= durableBytes && durableBytes <= contentLength;
+    }
+
+    @Override
+    public String toString() {
+        return eTag + ";" + contentLength + ";" + durableBytes;
+    }
+
+    /**
+     * @param bytesTransferred
+     *            Bytes received so far, including ranges that are not part of
+     *            the durable prefix yet
+     */
+    public String toHeartbeatDetails(long bytesTransferred) {
+        int progress = contentLength == 0 ? 100 : (int) (bytesTransferred * 100 / contentLength);
+        return toString() + ";" + progress + "%";
+    }
+
+    /**
+     * @return parsed checkpoint or null if the value is not a checkpoint
+     */
+    public static DownloadCheckpoint parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.trim().split(";", -1);
+        if (fields.length < 3 || fields.length > 4 || fields[0].isEmpty()) {
+            return null;
+        }
+        try {
+            return new DownloadCheckpoint(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
@@ -14,6 +14,8 @@
  */
 package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 
+import java.util.List;
+
 import com.amazonaws.services.simpleworkflow.flow.annotations.Activities;
 import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrationOptions;
 
@@ -25,5 +27,34 @@ import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrati
 public interface FileProcessingActivities {
 
     public void processFile(String inputFileName, String outputFileName) throws Exception;
+
+    /**
+     * Same as {@link #processFile(String, String)} but compresses blocks of
+     * the file on several cores. Meant for large files, so it has an hour to
+     * complete rather than a minute.
+     * 
+     * @param threads
+     *          Number of threads compressing the file
+     * @param compressionLevel
+     *          Deflate level from 0 to 9 or -1 for the default level
+     */
+    @ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 60, defaultTaskStartToCloseTimeoutSeconds = 3600)
+    public void processFileParallel(String inputFileName, String outputFileName, int threads, int compressionLevel)
+            throws Exception;
+
+    /**
+     * Archives several files into one zip, one entry per file. Entries are
+     * prepared in parallel and files whose content is already compressed
+     * are stored instead of deflated.
+     * 
+     * @param inputFileNames
+     *          Names of the files to archive, also used as entry names
+     * @param threads
+     *          Number of files prepared concurrently
+     * @param compressionLevel
+     *          Deflate level from 0 to 9 or -1 for the default level
+     */
+    public void processFiles(List<String> inputFileNames, String outputFileName, int threads, int compressionLevel)
+            throws Exception;
     
 }
@@ -14,10 +14,16 @@
  */
 package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -28,8 +34,15 @@ public class FileProcessingActivitiesZipImpl implements FileProcessingActivities
 
     private final String localDirectory;
 
+    private final LocalFileIO io;
+
     public FileProcessingActivitiesZipImpl(String localDirectory) {
+        this(localDirectory, new LocalFileIO());
+    }
+
+    public FileProcessingActivitiesZipImpl(String localDirectory, LocalFileIO io) {
         this.localDirectory = localDirectory;
+        this.io = io;
     }
 
     /**
@@ -48,21 +61,20 @@ public class FileProcessingActivitiesZipImpl implements FileProcessingActivities
         String zipFileNameFullPath = localDirectory + zipFileName;
 
         System.out.println("processFile activity begin.  fileName= " + fileNameFullPath + ", zipFileName= " + zipFileNameFullPath);
-        final int BUFFER = 1024;
-        BufferedInputStream origin = null;
+        InputStream origin = null;
         ZipOutputStream out = null;
+        MessageDigest digest = ContentDigest.newSha256();
 
         try {
-            FileOutputStream dest = new FileOutputStream(zipFileNameFullPath);
-            out = new ZipOutputStream(new BufferedOutputStream(dest));
-            byte data[] = new byte[BUFFER];
+            out = new ZipOutputStream(io.openOutput(new File(zipFileNameFullPath)));
+            byte data[] = new byte[io.getBufferSize()];
 
-            FileInputStream fi = new FileInputStream(fileNameFullPath);
-            origin = new BufferedInputStream(fi, BUFFER);
+            // Digest the content on the way to the zip so it is read only once
+            origin = new DigestInputStream(io.openInput(new File(fileNameFullPath)), digest);
             ZipEntry entry = new ZipEntry(fileName);
             out.putNextEntry(entry);
             int count;
-            while ((count = origin.read(data, 0, BUFFER)) != -1) {
+            while ((count = origin.read(data, 0, data.length)) != -1) {
                 out.write(data, 0, count);
             }
         }
@@ -72,7 +84,85 @@ public class FileProcessingActivitiesZipImpl implements FileProcessingActivities
             if (out != null)
                 out.close();
         }
+        ContentDigest.writeSidecar(new File(zipFileNameFullPath), ContentDigest.format(digest,
+                "deflate" + Deflater.DEFAULT_COMPRESSION));
+
+        System.out.println("zipFileActivity done.");
+    }
+
+    /**
+     * Zips the file with {@link ParallelDeflater}. A pool is created per call
+     * so that the thread count really is chosen by the caller.
+     */
+    @Override
+    public void processFileParallel(String fileName, String zipFileName, int threads, int compressionLevel)
+            throws Exception {
+        String fileNameFullPath = localDirectory + fileName;
+        String zipFileNameFullPath = localDirectory + zipFileName;
+
+        System.out.println("processFileParallel activity begin.  fileName= " + fileNameFullPath + ", zipFileName= "
+                + zipFileNameFullPath + ", threads= " + threads + ", level= " + compressionLevel);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        InputStream origin = null;
+        ZipStreamWriter out = null;
+        MessageDigest digest = ContentDigest.newSha256();
+        try {
+            File input = new File(fileNameFullPath);
+            origin = new DigestInputStream(io.openInput(input), digest);
+            out = new ZipStreamWriter(io.openOutput(new File(zipFileNameFullPath)));
+            OutputStream entry = out.beginDeflatedEntry(fileName, input.lastModified());
+            ParallelDeflater deflater = new ParallelDeflater(pool, compressionLevel, ParallelDeflater.DEFAULT_BLOCK_SIZE);
+            ParallelDeflater.Result result = deflater.deflate(origin, entry);
+            out.endDeflatedEntry(result.getCrc(), result.getSize());
+        }
+        finally {
+            pool.shutdownNow();
+            if (origin != null)
+                origin.close();
+            if (out != null)
+                out.close();
+        }
+        ContentDigest.writeSidecar(new File(zipFileNameFullPath),
+                ContentDigest.format(digest, "deflate" + compressionLevel));
 
         System.out.println("zipFileActivity done.");
     }
+
+    /**
+     * Archives the files with {@link ParallelArchiveBuilder}. The digest of
+     * the archive is taken over the names and digests of its entries.
+     */
+    @Override
+    public void processFiles(List<String> fileNames, String zipFileName, int threads, int compressionLevel)
+            throws Exception {
+        String zipFileNameFullPath = localDirectory + zipFileName;
+
+        System.out.println("processFiles activity begin.  files= " + fileNames.size() + ", zipFileName= "
+                + zipFileNameFullPath + ", threads= " + threads + ", level= " + compressionLevel);
+        List<File> inputs = new ArrayList<File>(fileNames.size());
+        for (String fileName : fileNames) {
+            inputs.add(new File(localDirectory + fileName));
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        List<ParallelArchiveBuilder.Entry> entries;
+        try {
+            ParallelArchiveBuilder builder = new ParallelArchiveBuilder(pool, compressionLevel, io);
+            entries = builder.build(inputs, fileNames, new File(zipFileNameFullPath));
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        MessageDigest digest = ContentDigest.newSha256();
+        int stored = 0;
+        for (ParallelArchiveBuilder.Entry entry : entries) {
+            digest.update((entry.getName() + "\n" + entry.getSha256() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (entry.getMethod() == ZipStreamWriter.STORED) {
+                stored++;
+            }
+        }
+        ContentDigest.writeSidecar(new File(zipFileNameFullPath),
+                ContentDigest.format(digest, "archive" + compressionLevel));
+
+        System.out.println("processFiles done, " + stored + " of " + entries.size() + " entries stored.");
+    }
 }
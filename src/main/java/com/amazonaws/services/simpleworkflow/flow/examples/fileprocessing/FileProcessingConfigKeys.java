@@ -17,6 +17,44 @@ package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 public class FileProcessingConfigKeys {
 
     public static final String ACTIVITY_WORKER_LOCALFOLDER = "Activity.Worker.LocalFolder";
+
+    public static final String ACTIVITY_WORKER_STORE_ROOTFOLDER = "Activity.Worker.Store.RootFolder";
+
+    public static final String ACTIVITY_WORKER_DOWNLOAD_PARTSIZE_MB = "Activity.Worker.Download.PartSizeMB";
+
+    public static final String ACTIVITY_WORKER_DOWNLOAD_CONCURRENCY = "Activity.Worker.Download.Concurrency";
+
+    public static final String ACTIVITY_WORKER_UPLOAD_PARTSIZE_MB = "Activity.Worker.Upload.PartSizeMB";
+
+    public static final String ACTIVITY_WORKER_UPLOAD_CONCURRENCY = "Activity.Worker.Upload.Concurrency";
+
+    public static final String ACTIVITY_WORKER_CACHE_QUOTA_MB = "Activity.Worker.Cache.QuotaMB";
+
+    public static final String ACTIVITY_WORKER_ADMISSION_MINFREE_MB = "Activity.Worker.Admission.MinFreeMB";
+
+    public static final String ACTIVITY_WORKER_ADMISSION_MAXSTAGED_MB = "Activity.Worker.Admission.MaxStagedMB";
+
+    public static final String ACTIVITY_WORKER_ADMISSION_INTERVAL_SECONDS = "Activity.Worker.Admission.IntervalSeconds";
+
+    public static final String ACTIVITY_WORKER_JANITOR_INTERVAL_MINUTES = "Activity.Worker.Janitor.IntervalMinutes";
+
+    public static final String ACTIVITY_WORKER_JANITOR_MINAGE_MINUTES = "Activity.Worker.Janitor.MinAgeMinutes";
+
+    public static final String ACTIVITY_WORKER_JANITOR_MAXDELETE_MB_PER_SECOND = "Activity.Worker.Janitor.MaxDeleteMBPerSecond";
+
+    public static final String ACTIVITY_WORKER_LOADREPORT_BUCKETNAME = "Activity.Worker.LoadReport.BucketName";
+
+    public static final String ACTIVITY_WORKER_LOADREPORT_PREFIX = "Activity.Worker.LoadReport.Prefix";
+
+    public static final String ACTIVITY_WORKER_LOADREPORT_INTERVAL_SECONDS = "Activity.Worker.LoadReport.IntervalSeconds";
+
+    public static final String ACTIVITY_WORKER_IO_BUFFER_KB = "Activity.Worker.IO.BufferKB";
+
+    public static final String ACTIVITY_WORKER_IO_MAPTHRESHOLD_MB = "Activity.Worker.IO.MapThresholdMB";
+
+    public static final String ACTIVITY_WORKER_STREAMING_PARTSIZE_MB = "Activity.Worker.Streaming.PartSizeMB";
+
+    public static final String ACTIVITY_WORKER_STREAMING_MAXINFLIGHTPARTS = "Activity.Worker.Streaming.MaxInFlightParts";
     
     public static final String WORKFLOW_INPUT_SOURCEFILENAME_KEY = "Workflow.Input.SourceFileName";
     
@@ -26,4 +64,26 @@ public class FileProcessingConfigKeys {
     
     public static final String WORKFLOW_INPUT_TARGETBUCKETNAME_KEY = "Workflow.Input.TargetBucketName";
 
+    public static final String WORKFLOW_INPUT_PROCESSINGMODE_KEY = "Workflow.Input.ProcessingMode";
+
+    public static final String WORKFLOW_INPUT_COMPRESSIONTHREADS_KEY = "Workflow.Input.CompressionThreads";
+
+    public static final String WORKFLOW_INPUT_COMPRESSIONLEVEL_KEY = "Workflow.Input.CompressionLevel";
+
+    public static final String WORKFLOW_INPUT_SPLITTHRESHOLD_MB_KEY = "Workflow.Input.SplitThresholdMB";
+
+    public static final String WORKFLOW_INPUT_SEGMENTSIZE_MB_KEY = "Workflow.Input.SegmentSizeMB";
+
+    public static final String WORKFLOW_INPUT_ROUTEBYHOSTLOAD_KEY = "Workflow.Input.RouteByHostLoad";
+
+    public static final String WORKFLOW_INPUT_SEGMENTTIMEOUT_SECONDS_KEY = "Workflow.Input.SegmentTimeoutSeconds";
+
+    public static final String WORKFLOW_INPUT_EXECUTIONTIMEOUT_SECONDS_KEY = "Workflow.Input.ExecutionTimeoutSeconds";
+
+    public static final String WORKFLOW_INPUT_MANIFESTBUCKETNAME_KEY = "Workflow.Input.ManifestBucketName";
+
+    public static final String WORKFLOW_INPUT_MANIFESTKEY_KEY = "Workflow.Input.ManifestKey";
+
+    public static final String WORKFLOW_INPUT_MAXINFLIGHT_KEY = "Workflow.Input.MaxInFlight";
+
 }
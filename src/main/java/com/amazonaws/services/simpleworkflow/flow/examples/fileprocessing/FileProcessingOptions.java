@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+/**
+ * Per execution options of {@link FileProcessingWorkflow}
+ */
+public class FileProcessingOptions {
+
+    private ProcessingMode mode = ProcessingMode.STAGED;
+
+    private int compressionThreads = 1;
+
+    private int compressionLevel = -1;
+
+    private boolean routeByHostLoad;
+
+    private long splitThresholdBytes;
+
+    private long segmentSizeBytes = 256L * 1024 * 1024;
+
+    private int segmentTimeoutSeconds = 600;
+
+    private int executionTimeoutSeconds = 7200;
+
+    public ProcessingMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Choose between staging the file on a worker and streaming it through a
+     * single activity
+     */
+    public void setMode(ProcessingMode mode) {
+        this.mode = mode;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Number of cores used to zip the file in the staged mode. More than one
+     * thread switches to the parallel block compressor.
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Deflate level from 0 to 9, -1 keeps the default level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public boolean isRouteByHostLoad() {
+        return routeByHostLoad;
+    }
+
+    /**
+     * Let {@link HostRoutingActivities} pick the host that stages the file
+     * instead of whichever host takes the download from the download task list
+     */
+    public void setRouteByHostLoad(boolean routeByHostLoad) {
+        this.routeByHostLoad = routeByHostLoad;
+    }
+
+    public long getSplitThresholdBytes() {
+        return splitThresholdBytes;
+    }
+
+    /**
+     * Files larger than this are compressed in segments on several hosts in
+     * the staged mode, 0 never splits files
+     */
+    public void setSplitThresholdBytes(long splitThresholdBytes) {
+        this.splitThresholdBytes = splitThresholdBytes;
+    }
+
+    public long getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    /**
+     * Size of the ranges of a split file. Segments compressing to less than
+     * 5MB are joined through a host instead of by S3.
+     */
+    public void setSegmentSizeBytes(long segmentSizeBytes) {
+        this.segmentSizeBytes = segmentSizeBytes;
+    }
+
+    public int getSegmentTimeoutSeconds() {
+        return segmentTimeoutSeconds;
+    }
+
+    /**
+     * Time a host has to compress one segment. Segments are queued at once,
+     * so the last ones wait for as many segments as there are before them.
+     */
+    public void setSegmentTimeoutSeconds(int segmentTimeoutSeconds) {
+        this.segmentTimeoutSeconds = segmentTimeoutSeconds;
+    }
+
+    /**
+     * Execution timeout that lets a file of the given size complete in
+     * segments on a single free host, which also joins them at the end
+     */
+    public long computeSplitExecutionTimeoutSeconds(long contentLength) {
+        long segmentCount = (contentLength + segmentSizeBytes - 1) / segmentSizeBytes;
+        return (segmentCount + 1) * segmentTimeoutSeconds;
+    }
+
+    public int getExecutionTimeoutSeconds() {
+        return executionTimeoutSeconds;
+    }
+
+    /**
+     * Time the whole run has to complete, passed by the starter. Leave room
+     * for the transfer of the largest file, a streamed file is uploaded
+     * within the run. The starter raises it for files it splits.
+     */
+    public void setExecutionTimeoutSeconds(int executionTimeoutSeconds) {
+        this.executionTimeoutSeconds = executionTimeoutSeconds;
+    }
+
+}
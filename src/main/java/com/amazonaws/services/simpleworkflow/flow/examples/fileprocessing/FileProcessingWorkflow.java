@@ -25,12 +25,12 @@ import com.amazonaws.services.simpleworkflow.flow.annotations.WorkflowRegistrati
  * Contract for file processing workflow
  */
 @Workflow
-@WorkflowRegistrationOptions(defaultExecutionStartToCloseTimeoutSeconds = 300, defaultTaskStartToCloseTimeoutSeconds = 10)
+@WorkflowRegistrationOptions(defaultExecutionStartToCloseTimeoutSeconds = 7200, defaultTaskStartToCloseTimeoutSeconds = 10)
 public interface FileProcessingWorkflow {
 
-    @Execute(name = "ProcessFile", version = "1.0")
-    public void processFile(String sourceBucketName, String sourceFilename, String targetBucketName, String targetFilename)
-            throws IOException;
+    @Execute(name = "ProcessFile", version = "2.0")
+    public void processFile(String sourceBucketName, String sourceFilename, String targetBucketName, String targetFilename,
+            FileProcessingOptions options) throws IOException;
     
     @GetState
     public String getState();
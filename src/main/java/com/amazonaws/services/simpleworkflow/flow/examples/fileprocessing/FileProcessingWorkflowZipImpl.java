@@ -16,13 +16,20 @@ package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import com.amazonaws.services.simpleworkflow.flow.ActivitySchedulingOptions;
+import com.amazonaws.services.simpleworkflow.flow.DecisionContext;
 import com.amazonaws.services.simpleworkflow.flow.DecisionContextProviderImpl;
+import com.amazonaws.services.simpleworkflow.flow.WorkflowClock;
 import com.amazonaws.services.simpleworkflow.flow.WorkflowContext;
 import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Wait;
 import com.amazonaws.services.simpleworkflow.flow.core.Promise;
 import com.amazonaws.services.simpleworkflow.flow.core.Settable;
+import com.amazonaws.services.simpleworkflow.flow.core.TryCatch;
 import com.amazonaws.services.simpleworkflow.flow.core.TryCatchFinally;
 
 /**
@@ -35,15 +42,33 @@ public class FileProcessingWorkflowZipImpl implements FileProcessingWorkflow {
 
     private final FileProcessingActivitiesClient processor;
 
+    private final StreamingFileProcessingActivitiesClient streamingProcessor;
+
+    private final HostRoutingActivitiesClient router;
+
+    private final SegmentedFileProcessingActivitiesClient segmentedProcessor;
+
     private final WorkflowContext workflowContext;
 
+    private final WorkflowClock clock;
+
     private String state = "Started";
 
+    /**
+     * Set when the target already had the content and the upload was skipped
+     */
+    private boolean unchanged;
+
     public FileProcessingWorkflowZipImpl() {
         // Create activity clients
         this.store = new SimpleStoreActivitiesClientImpl();
         processor = new FileProcessingActivitiesClientImpl();
-        workflowContext = (new DecisionContextProviderImpl()).getDecisionContext().getWorkflowContext();
+        streamingProcessor = new StreamingFileProcessingActivitiesClientImpl();
+        router = new HostRoutingActivitiesClientImpl();
+        segmentedProcessor = new SegmentedFileProcessingActivitiesClientImpl();
+        DecisionContext decisionContext = (new DecisionContextProviderImpl()).getDecisionContext();
+        workflowContext = decisionContext.getWorkflowContext();
+        clock = decisionContext.getWorkflowClock();
     }
 
     /**
@@ -51,15 +76,126 @@ public class FileProcessingWorkflowZipImpl implements FileProcessingWorkflow {
      * workflow
      */
     public FileProcessingWorkflowZipImpl(SimpleStoreActivitiesClient store, FileProcessingActivitiesClient processor,
-            WorkflowContext workflowContext) {
+            StreamingFileProcessingActivitiesClient streamingProcessor, HostRoutingActivitiesClient router,
+            SegmentedFileProcessingActivitiesClient segmentedProcessor, WorkflowContext workflowContext,
+            WorkflowClock clock) {
         this.store = store;
         this.processor = processor;
+        this.streamingProcessor = streamingProcessor;
+        this.router = router;
+        this.segmentedProcessor = segmentedProcessor;
         this.workflowContext = workflowContext;
+        this.clock = clock;
     }
 
     @Override
     public void processFile(final String sourceBucketName, final String sourceFilename, final String targetBucketName,
-            final String targetFilename) throws IOException {
+            final String targetFilename, FileProcessingOptions options) throws IOException {
+        if (options == null) {
+            options = new FileProcessingOptions();
+        }
+        if (options.getMode() == ProcessingMode.STREAMING) {
+            processFileStreaming(sourceBucketName, sourceFilename, targetBucketName, targetFilename);
+        }
+        else if (options.getSplitThresholdBytes() > 0) {
+            Promise<Long> contentLength = segmentedProcessor.getContentLength(sourceBucketName, sourceFilename);
+            processFileBySize(sourceBucketName, sourceFilename, targetBucketName, targetFilename, options, contentLength);
+        }
+        else {
+            processFileStaged(sourceBucketName, sourceFilename, targetBucketName, targetFilename, options);
+        }
+    }
+
+    @Asynchronous
+    private void processFileBySize(String sourceBucketName, String sourceFilename, String targetBucketName,
+            String targetFilename, FileProcessingOptions options, Promise<Long> contentLength) {
+        if (contentLength.get() > options.getSplitThresholdBytes()) {
+            processFileSplit(sourceBucketName, sourceFilename, targetBucketName, targetFilename, options,
+                    contentLength.get());
+        }
+        else {
+            processFileStaged(sourceBucketName, sourceFilename, targetBucketName, targetFilename, options);
+        }
+    }
+
+    /**
+     * Compresses ranges of the file on whichever hosts pick them up from the
+     * common task list and joins them into the zip file once all are done
+     */
+    private void processFileSplit(final String sourceBucketName, final String sourceFilename,
+            final String targetBucketName, final String targetFilename, final FileProcessingOptions options,
+            final long contentLength) {
+        final long segmentSize = options.getSegmentSizeBytes();
+        final int segmentCount = (int) ((contentLength + segmentSize - 1) / segmentSize);
+        final String entryName = new File(sourceFilename).getName();
+        final long entryTime = clock.currentTimeMillis();
+        // Use runId so that segments of concurrent runs for the same target do not collide
+        final String segmentPrefix = targetFilename + ".segments/" + workflowContext.getWorkflowExecution().getRunId()
+                + "/";
+        // Segments queue for free hosts, so the last ones wait for every segment before them
+        final ActivitySchedulingOptions scheduling = new ActivitySchedulingOptions()
+                .withScheduleToStartTimeoutSeconds((long) segmentCount * options.getSegmentTimeoutSeconds())
+                .withStartToCloseTimeoutSeconds((long) options.getSegmentTimeoutSeconds());
+        new TryCatchFinally() {
+
+            @Override
+            protected void doTry() throws Throwable {
+                List<Promise<SegmentResult>> segments = new ArrayList<Promise<SegmentResult>>(segmentCount);
+                for (int i = 0; i < segmentCount; i++) {
+                    long start = i * segmentSize;
+                    long end = Math.min(contentLength, start + segmentSize);
+                    segments.add(segmentedProcessor.compressSegment(sourceBucketName, sourceFilename, start, end,
+                            targetBucketName, segmentPrefix + i, entryName, entryTime, i == segmentCount - 1,
+                            options.getCompressionLevel(), scheduling));
+                }
+                state = "Compressing " + segmentCount + " segments";
+                composeSegments(targetBucketName, targetFilename, segmentPrefix, entryName, entryTime, segments);
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                state = "Failed: " + e.getMessage();
+                throw e;
+            }
+
+            @Override
+            protected void doFinally() throws Throwable {
+                if (state.startsWith("Failed:")) {
+                    // Segments that completed before the failure are not joined by anything
+                    segmentedProcessor.deleteSegments(targetBucketName, segmentPrefix);
+                }
+                else {
+                    state = "Completed";
+                }
+            }
+
+        };
+    }
+
+    /**
+     * Folds the checksum and sizes of the segments here rather than passing
+     * their results, which would exceed the activity input limit for large
+     * files
+     */
+    @Asynchronous
+    private void composeSegments(String targetBucketName, String targetFilename, String segmentPrefix,
+            String entryName, long entryTime, @Wait List<Promise<SegmentResult>> segments) {
+        long crc = 0;
+        long size = 0;
+        long compressedSize = 0;
+        for (Promise<SegmentResult> segment : segments) {
+            SegmentResult result = segment.get();
+            crc = Crc32Combine.combine(crc, result.getCrc(), result.getSize());
+            size += result.getSize();
+            compressedSize += result.getCompressedSize();
+        }
+        state = "Composing " + segments.size() + " segments";
+        segmentedProcessor.composeArchive(targetBucketName, targetFilename, segmentPrefix, segments.size(), entryName,
+                entryTime, crc, size, compressedSize);
+    }
+
+    private void processFileStaged(final String sourceBucketName, final String sourceFilename,
+            final String targetBucketName, final String targetFilename, final FileProcessingOptions options) {
         // Settable to store the worker specific task list returned by the activity
         final Settable<String> taskList = new Settable<String>();
 
@@ -73,11 +209,20 @@ public class FileProcessingWorkflowZipImpl implements FileProcessingWorkflow {
 
             @Override
             protected void doTry() throws Throwable {
-                Promise<String> activityWorkerTaskList = store.download(sourceBucketName, sourceFilename, localSourceFilename);
+                Promise<String> activityWorkerTaskList;
+                if (options.isRouteByHostLoad()) {
+                    Promise<String> chosenTaskList = router.chooseHost(sourceBucketName, sourceFilename);
+                    activityWorkerTaskList = downloadOnHost(sourceBucketName, sourceFilename, localSourceFilename,
+                            chosenTaskList);
+                }
+                else {
+                    activityWorkerTaskList = store.download(sourceBucketName, sourceFilename, localSourceFilename, downloadOptions());
+                }
                 // chaining is a way for one promise get assigned value of another 
                 taskList.chain(activityWorkerTaskList);
                 // Call processFile activity to zip the file
-                Promise<Void> fileProcessed = processFileOnHost(localSourceFilename, localTargetFilename, activityWorkerTaskList);
+                Promise<Void> fileProcessed = processFileOnHost(localSourceFilename, localTargetFilename, options,
+                        activityWorkerTaskList);
                 // Call upload activity to upload zipped file
                 upload(targetBucketName, targetFilename, localTargetFilename, taskList, fileProcessed);
             }
@@ -99,6 +244,35 @@ public class FileProcessingWorkflowZipImpl implements FileProcessingWorkflow {
                     store.deleteLocalFile(localSourceFilename, options);
                     store.deleteLocalFile(localTargetFilename, options);
                 }
+                if (!state.startsWith("Failed:")) {
+                    state = unchanged ? "Unchanged" : "Completed";
+                }
+            }
+
+        };
+    }
+
+    private void processFileStreaming(final String sourceBucketName, final String sourceFilename,
+            final String targetBucketName, final String targetFilename) {
+        new TryCatchFinally() {
+
+            @Override
+            protected void doTry() throws Throwable {
+                // Whichever host picks the task up from the common task list streams the file,
+                // so there is nothing left on its disk to clean up afterwards
+                Promise<String> activityWorkerTaskList = streamingProcessor.processFileStreaming(sourceBucketName,
+                        sourceFilename, targetBucketName, targetFilename);
+                reportStreamed(activityWorkerTaskList);
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                state = "Failed: " + e.getMessage();
+                throw e;
+            }
+
+            @Override
+            protected void doFinally() throws Throwable {
                 if (!state.startsWith("Failed:")) {
                     state = "Completed";
                 }
@@ -108,10 +282,59 @@ public class FileProcessingWorkflowZipImpl implements FileProcessingWorkflow {
     }
 
     @Asynchronous
-    private Promise<Void> processFileOnHost(String fileToProcess, String fileToUpload, Promise<String> taskList) {
+    private void reportStreamed(Promise<String> taskList) {
+        state = "Streamed at " + taskList.get();
+    }
+
+    @Asynchronous
+    private Promise<String> downloadOnHost(final String sourceBucketName, final String sourceFilename,
+            final String localSourceFilename, final Promise<String> chosenTaskList) {
+        if (chosenTaskList.get() == null) {
+            // No host reported its load, fall back to the download task list
+            return store.download(sourceBucketName, sourceFilename, localSourceFilename, downloadOptions());
+        }
+        state = "Routed to " + chosenTaskList.get();
+        final Settable<String> taskList = new Settable<String>();
+        new TryCatch() {
+
+            @Override
+            protected void doTry() throws Throwable {
+                ActivitySchedulingOptions options = new ActivitySchedulingOptions().withTaskList(chosenTaskList.get());
+                taskList.chain(store.downloadRouted(sourceBucketName, sourceFilename, localSourceFilename, options));
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                if (e instanceof CancellationException) {
+                    throw e;
+                }
+                // The chosen host did not take the file, let whichever host is free take it
+                state = "Routing to " + chosenTaskList.get() + " failed: " + e.getMessage();
+                taskList.chain(store.download(sourceBucketName, sourceFilename, localSourceFilename, downloadOptions()));
+            }
+
+        };
+        return taskList;
+    }
+
+    /**
+     * Downloads go to their own task list, which hosts short of disk stop
+     * polling
+     */
+    private static ActivitySchedulingOptions downloadOptions() {
+        return new ActivitySchedulingOptions().withTaskList(SimpleStoreActivities.DOWNLOAD_TASK_LIST);
+    }
+
+    @Asynchronous
+    private Promise<Void> processFileOnHost(String fileToProcess, String fileToUpload, FileProcessingOptions processingOptions,
+            Promise<String> taskList) {
         state = "Downloaded to " + taskList.get();
         // Call the activity to process the file using worker specific task list
         ActivitySchedulingOptions options = new ActivitySchedulingOptions().withTaskList(taskList.get());
+        if (processingOptions.getCompressionThreads() > 1 || processingOptions.getCompressionLevel() != -1) {
+            return processor.processFileParallel(fileToProcess, fileToUpload, processingOptions.getCompressionThreads(),
+                    processingOptions.getCompressionLevel(), options);
+        }
         return processor.processFile(fileToProcess, fileToUpload, options);
     }
 
@@ -120,7 +343,17 @@ public class FileProcessingWorkflowZipImpl implements FileProcessingWorkflow {
             Promise<String> taskList, Promise<Void> fileProcessed) {
         state = "Processed at " + taskList.get();
         ActivitySchedulingOptions options = new ActivitySchedulingOptions().withTaskList(taskList.get());
-        store.upload(targetBucketName, localTargetFilename, targetFilename, options);
+        Promise<Boolean> uploaded = store.upload(targetBucketName, localTargetFilename, targetFilename, options);
+        reportUploaded(uploaded);
+    }
+
+    /**
+     * upload returned nothing before it reported skipped transfers, so a
+     * replayed history yields null, which counts as uploaded
+     */
+    @Asynchronous
+    private void reportUploaded(Promise<Boolean> uploaded) {
+        unchanged = Boolean.FALSE.equals(uploaded.get());
     }
 
     @Override
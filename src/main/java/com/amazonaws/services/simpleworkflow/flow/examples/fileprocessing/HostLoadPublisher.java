@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+
+/**
+ * Periodically publishes the {@link HostLoadReport} of this host as an S3
+ * object named after the host, so that {@link HostRoutingActivitiesImpl} can
+ * see the load of every host without them talking to each other.
+ * <p>
+ * The number of in-flight tasks is approximated by the number of workflow
+ * runs that have files staged in the local folder. It counts work that was
+ * routed to the host but is still waiting in its task list, which a counter
+ * of executing activities would miss.
+ */
+public class HostLoadPublisher implements Runnable {
+
+    /**
+     * Cached entries listed in a report, enough for the cache hits that
+     * matter while keeping the report small
+     */
+    static final int MAX_REPORTED_CACHE_ENTRIES = 1000;
+
+    private final AmazonS3 s3Client;
+
+    private final String bucketName;
+
+    private final String keyPrefix;
+
+    private final String hostName;
+
+    private final File localFolder;
+
+    private final LocalObjectCache objectCache;
+
+    private final DiskAdmissionController admissionController;
+
+    /**
+     * @param objectCache
+     *            Cache of the host or null if it has none
+     * @param admissionController
+     *            Admission control of the host or null if it has none
+     */
+    public HostLoadPublisher(AmazonS3 s3Client, String bucketName, String keyPrefix, String hostName,
+            String localFolder, LocalObjectCache objectCache, DiskAdmissionController admissionController) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.keyPrefix = keyPrefix;
+        this.hostName = hostName;
+        this.localFolder = new File(localFolder);
+        this.objectCache = objectCache;
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public void run() {
+        try {
+            byte[] report = createReport().toString().getBytes(StandardCharsets.UTF_8);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(report.length);
+            metadata.setContentType("text/plain");
+            s3Client.putObject(bucketName, keyPrefix + hostName, new ByteArrayInputStream(report), metadata);
+        }
+        catch (AmazonClientException e) {
+            // A missed report only makes the routing data older
+            System.out.println("Could not publish load report: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the report so that no more work is routed to this host
+     */
+    public void withdraw() {
+        s3Client.deleteObject(bucketName, keyPrefix + hostName);
+    }
+
+    HostLoadReport createReport() {
+        Set<String> cachedEntries = objectCache == null ? Collections.<String> emptySet()
+                : objectCache.getEntryNames(MAX_REPORTED_CACHE_ENTRIES);
+        return new HostLoadReport(hostName, System.currentTimeMillis(), localFolder.getUsableSpace(),
+                localFolder.getTotalSpace(), countStagedRuns(), cachedEntries,
+                admissionController == null || !admissionController.isPaused());
+    }
+
+    /**
+     * Staged files are named after the run that owns them, see
+     * FileProcessingWorkflowZipImpl
+     */
+    private int countStagedRuns() {
+        File[] files = localFolder.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        Set<String> runIds = new HashSet<String>();
+        for (File file : files) {
+            int separator = file.getName().indexOf('_');
+            if (file.isFile() && separator > 0) {
+                runIds.add(file.getName().substring(0, separator));
+            }
+        }
+        return runIds.size();
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Load of an activity host as published by {@link HostLoadPublisher} and read
+ * by {@link HostRoutingActivitiesImpl} to decide where a file is processed.
+ */
+public class HostLoadReport {
+
+    private final String hostName;
+
+    private final long timestamp;
+
+    private final long usableDiskBytes;
+
+    private final long totalDiskBytes;
+
+    private final int inFlightTasks;
+
+    private final Set<String> cachedEntries;
+
+    private final boolean acceptingWork;
+
+    /**
+     * @param cachedEntries
+     *            Names of the {@link LocalObjectCache} entries present on the
+     *            host, see {@link LocalObjectCache#entryName}
+     * @param acceptingWork
+     *            False while the host does not admit new files, see
+     *            {@link DiskAdmissionController}
+     */
+    public HostLoadReport(String hostName, long timestamp, long usableDiskBytes, long totalDiskBytes,
+            int inFlightTasks, Set<String> cachedEntries, boolean acceptingWork) {
+        this.hostName = hostName;
+        this.timestamp = timestamp;
+        this.usableDiskBytes = usableDiskBytes;
+        this.totalDiskBytes = totalDiskBytes;
+        this.inFlightTasks = inFlightTasks;
+        this.cachedEntries = cachedEntries;
+        this.acceptingWork = acceptingWork;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getUsableDiskBytes() {
+        return usableDiskBytes;
+    }
+
+    public long getTotalDiskBytes() {
+        return totalDiskBytes;
+    }
+
+    /**
+     * @return fraction of the disk that is used, between 0 and 1
+     */
+    public double getDiskUsage() {
+        if (totalDiskBytes <= 0) {
+            return 1;
+        }
+        return 1 - (double) usableDiskBytes / totalDiskBytes;
+    }
+
+    public int getInFlightTasks() {
+        return inFlightTasks;
+    }
+
+    public Set<String> getCachedEntries() {
+        return cachedEntries;
+    }
+
+    public boolean isAcceptingWork() {
+        return acceptingWork;
+    }
+
+    @Override
+    public String toString() {
+        Properties properties = new Properties();
+        properties.setProperty("host", hostName);
+        properties.setProperty("timestamp", Long.toString(timestamp));
+        properties.setProperty("usableDiskBytes", Long.toString(usableDiskBytes));
+        properties.setProperty("totalDiskBytes", Long.toString(totalDiskBytes));
+        properties.setProperty("inFlightTasks", Integer.toString(inFlightTasks));
+        StringBuilder entries = new StringBuilder();
+        for (String entry : cachedEntries) {
+            if (entries.length() > 0) {
+                entries.append(',');
+            }
+            entries.append(entry);
+        }
+        properties.setProperty("cachedEntries", entries.toString());
+        properties.setProperty("acceptingWork", Boolean.toString(acceptingWork));
+        StringWriter writer = new StringWriter();
+        try {
+            properties.store(writer, null);
+        }
+        catch (IOException e) {
+            throw new Error(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @return parsed report or null if the text is not a valid report
+     */
+    public static HostLoadReport parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(text));
+            String hostName = properties.getProperty("host");
+            if (hostName == null || hostName.isEmpty()) {
+                return null;
+            }
+            Set<String> cachedEntries = new LinkedHashSet<String>();
+            String entries = properties.getProperty("cachedEntries", "");
+            if (!entries.isEmpty()) {
+                Collections.addAll(cachedEntries, entries.split(","));
+            }
+            return new HostLoadReport(hostName, Long.parseLong(properties.getProperty("timestamp")),
+                    Long.parseLong(properties.getProperty("usableDiskBytes")),
+                    Long.parseLong(properties.getProperty("totalDiskBytes")),
+                    Integer.parseInt(properties.getProperty("inFlightTasks")), cachedEntries,
+                    Boolean.parseBoolean(properties.getProperty("acceptingWork", "true")));
+        }
+        catch (IOException e) {
+            return null;
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
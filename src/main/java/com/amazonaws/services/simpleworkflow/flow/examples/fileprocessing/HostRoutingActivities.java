@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Activities;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrationOptions;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ExponentialRetry;
+
+/**
+ * Contract for choosing the host that stages and processes a file
+ */
+@Activities(version = "1.0")
+@ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 60, defaultTaskStartToCloseTimeoutSeconds = 60)
+public interface HostRoutingActivities {
+
+    /**
+     * @param bucketName
+     *          Name of S3 bucket that contains the file to process
+     * @param key
+     *          Key of the file to process
+     * @return Task list of the chosen host or null when no host published
+     *          its load recently, in which case any host may take the file
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 5)
+    public String chooseHost(String bucketName, String key);
+
+}
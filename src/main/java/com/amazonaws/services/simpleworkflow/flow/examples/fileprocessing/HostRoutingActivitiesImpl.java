@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.util.IOUtils;
+
+/**
+ * Chooses a host from the reports published by {@link HostLoadPublisher}.
+ * Every host that reported recently, admits new files and has room for the
+ * file gets a cost
+ * made of its in-flight tasks and its disk usage, and a host that already
+ * caches the exact version of the file is credited with the transfer it
+ * saves. The cheapest host wins.
+ */
+public class HostRoutingActivitiesImpl implements HostRoutingActivities {
+
+    /**
+     * Cost of one in-flight task
+     */
+    private static final double TASK_COST = 1.0;
+
+    /**
+     * Cost of a full disk, a half full disk costs as much as two tasks
+     */
+    private static final double DISK_COST = 4.0;
+
+    /**
+     * Credit for a cached copy of the file, worth skipping a few queued tasks
+     */
+    private static final double CACHE_HIT_CREDIT = 3.0;
+
+    /**
+     * The file and its zip are staged side by side, leave room for both
+     */
+    private static final int SPACE_FACTOR = 2;
+
+    private final AmazonS3 s3Client;
+
+    private final String reportBucketName;
+
+    private final String reportKeyPrefix;
+
+    private final long maxReportAgeMillis;
+
+    /**
+     * @param reportBucketName
+     *            Bucket holding the load reports or null when routing is not
+     *            configured, in which case every file uses the common task
+     *            list
+     */
+    public HostRoutingActivitiesImpl(AmazonS3 s3Client, String reportBucketName, String reportKeyPrefix,
+            long maxReportAgeMillis) {
+        this.s3Client = s3Client;
+        this.reportBucketName = reportBucketName;
+        this.reportKeyPrefix = reportKeyPrefix;
+        this.maxReportAgeMillis = maxReportAgeMillis;
+    }
+
+    @Override
+    public String chooseHost(String bucketName, String key) {
+        if (reportBucketName == null) {
+            System.out.println("chooseHost has no load reports configured, using the download task list");
+            return null;
+        }
+        ObjectMetadata metadata = s3Client.getObjectMetadata(bucketName, key);
+        String cacheEntry = LocalObjectCache.entryName(bucketName, key, metadata.getETag());
+        HostLoadReport chosen = choose(readReports(), cacheEntry, metadata.getContentLength(),
+                System.currentTimeMillis());
+        if (chosen == null) {
+            System.out.println("chooseHost found no host for " + key + ", using the download task list");
+            return null;
+        }
+        System.out.println("chooseHost routed " + key + " to " + chosen.getHostName());
+        return chosen.getHostName();
+    }
+
+    HostLoadReport choose(List<HostLoadReport> reports, String cacheEntry, long contentLength, long now) {
+        HostLoadReport best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (HostLoadReport report : reports) {
+            if (now - report.getTimestamp() > maxReportAgeMillis || !report.isAcceptingWork()) {
+                continue;
+            }
+            boolean cached = report.getCachedEntries().contains(cacheEntry);
+            if (!cached && report.getUsableDiskBytes() < contentLength * SPACE_FACTOR) {
+                continue;
+            }
+            double cost = report.getInFlightTasks() * TASK_COST + report.getDiskUsage() * DISK_COST;
+            if (cached) {
+                cost -= CACHE_HIT_CREDIT;
+            }
+            if (cost < bestCost) {
+                best = report;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    private List<HostLoadReport> readReports() {
+        List<HostLoadReport> reports = new ArrayList<HostLoadReport>();
+        ListObjectsRequest request = new ListObjectsRequest().withBucketName(reportBucketName).withPrefix(
+                reportKeyPrefix);
+        ObjectListing listing;
+        do {
+            listing = s3Client.listObjects(request);
+            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                HostLoadReport report = HostLoadReport.parse(readObject(summary.getKey()));
+                if (report != null) {
+                    reports.add(report);
+                }
+                // Without a delimiter S3 does not return the next marker, so continue after the last key
+                request.setMarker(summary.getKey());
+            }
+        }
+        while (listing.isTruncated());
+        return reports;
+    }
+
+    private String readObject(String key) {
+        try {
+            InputStream inputStream = s3Client.getObject(reportBucketName, key).getObjectContent();
+            try {
+                return new String(IOUtils.toByteArray(inputStream), StandardCharsets.UTF_8);
+            }
+            finally {
+                inputStream.close();
+            }
+        }
+        catch (AmazonServiceException e) {
+            // The host may have withdrawn its report after the listing
+            System.out.println("Could not read load report " + key + ": " + e.getMessage());
+            return null;
+        }
+        catch (IOException e) {
+            System.out.println("Could not read load report " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+}
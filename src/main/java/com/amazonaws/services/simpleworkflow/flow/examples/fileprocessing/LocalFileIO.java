@@ -0,0 +1,313 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local file access used by the activities that stage files on the host.
+ * Large inputs are read through memory mappings, everything else through
+ * {@link FileChannel}s with a direct buffer, which spares the copy into a
+ * temporary direct buffer the JDK makes for every read into a heap array.
+ * Copies that do not transform the data use
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * so they stay in the kernel.
+ */
+public class LocalFileIO {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    public static final long DEFAULT_MAP_THRESHOLD = 64L * 1024 * 1024;
+
+    /**
+     * Files are mapped in windows of this size as a single mapping is limited
+     * to 2GB
+     */
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    private final int bufferSize;
+
+    private final long mapThreshold;
+
+    public LocalFileIO() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAP_THRESHOLD);
+    }
+
+    /**
+     * @param bufferSize
+     *            Size of the direct buffers of the streams
+     * @param mapThreshold
+     *            Size from which input files are memory mapped
+     */
+    public LocalFileIO(int bufferSize, long mapThreshold) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.mapThreshold = mapThreshold;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public InputStream openInput(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        if (channel.size() >= mapThreshold) {
+            return new MappedInputStream(channel);
+        }
+        return new ChannelInputStream(channel, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    public OutputStream openOutput(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new ChannelOutputStream(channel, ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    /**
+     * Copies the file without moving its content through the JVM heap
+     * 
+     * @return number of bytes copied
+     */
+    public static long copy(File source, File target) throws IOException {
+        FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                return transfer(in, 0, in.size(), out);
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Appends a region of a file to the output channel. transferTo may move
+     * fewer bytes than requested, so it is called until the region is done.
+     */
+    public static long transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long moved = in.transferTo(position + transferred, count - transferred, out);
+            if (moved <= 0) {
+                throw new IOException("transferTo stopped at " + (position + transferred) + " of " + in.size());
+            }
+            transferred += moved;
+        }
+        return transferred;
+    }
+
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer;
+
+        ChannelInputStream(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        /**
+         * @return false at the end of the file
+         */
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer);
+            }
+            while (read == 0);
+            buffer.flip();
+            return read > 0;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private long windowStart;
+
+        private MappedByteBuffer window;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureWindow()) {
+                return -1;
+            }
+            return window.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureWindow()) {
+                return -1;
+            }
+            int count = Math.min(len, window.remaining());
+            window.get(b, off, count);
+            return count;
+        }
+
+        /**
+         * Maps the next window once the current one is consumed. Released
+         * windows are unmapped when they are garbage collected.
+         * 
+         * @return false at the end of the file
+         */
+        private boolean ensureWindow() throws IOException {
+            if (window != null && window.hasRemaining()) {
+                return true;
+            }
+            if (window != null) {
+                windowStart += window.capacity();
+            }
+            if (windowStart >= size) {
+                return false;
+            }
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(MAP_WINDOW, size - windowStart));
+            return true;
+        }
+
+        @Override
+        public int available() {
+            return window == null ? 0 : window.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer;
+
+        ChannelOutputStream(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                drain();
+            }
+            finally {
+                channel.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Disk cache of S3 objects on an activity host. Entries are addressed by the
+ * bucket, key and ETag of the object, so a changed object never hits a stale
+ * entry. Files are shared with the staging area through hard links, which
+ * makes both admitting a downloaded file and serving a hit a metadata only
+ * operation when the cache and the local folder are on the same volume.
+ * <p>
+ * Entries are evicted in least recently used order once the cache grows past
+ * its byte quota. Evicting an entry only removes the cache's link, staged
+ * copies being processed keep their data.
+ */
+public class LocalObjectCache implements LocalObjectCacheMXBean {
+
+    private final File directory;
+
+    private final long quotaBytes;
+
+    /**
+     * Entry name to size in access order
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private long sizeBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public LocalObjectCache(File directory, long quotaBytes) {
+        this.directory = directory;
+        this.quotaBytes = quotaBytes;
+        directory.mkdirs();
+        loadExistingEntries();
+    }
+
+    /**
+     * Restores the LRU order from the modification time of the files left by
+     * a previous run of the host
+     */
+    private void loadExistingEntries() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            sizeBytes += file.length();
+        }
+        evict(null);
+    }
+
+    /**
+     * Links the cached copy of the object to the destination.
+     *
+     * @return true on a cache hit
+     */
+    public boolean get(String bucketName, String key, String eTag, File destination) throws IOException {
+        if (eTag == null) {
+            return false;
+        }
+        String name = entryName(bucketName, key, eTag);
+        synchronized (this) {
+            if (entries.get(name) == null) {
+                misses++;
+                return false;
+            }
+        }
+        File cached = new File(directory, name);
+        try {
+            link(cached, destination);
+        }
+        catch (NoSuchFileException e) {
+            // Evicted after the lookup
+            synchronized (this) {
+                entries.remove(name);
+                misses++;
+            }
+            return false;
+        }
+        cached.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            hits++;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a downloaded file to the cache. The file stays where it is.
+     */
+    public void put(String bucketName, String key, String eTag, File source) throws IOException {
+        if (eTag == null || source.length() > quotaBytes) {
+            return;
+        }
+        String name = entryName(bucketName, key, eTag);
+        // Unique across the hosts sharing the directory, the link replaces the reserved file
+        File temp = Files.createTempFile(directory.toPath(), name + ".", ".tmp").toFile();
+        link(source, temp);
+        Files.move(temp.toPath(), new File(directory, name).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            Long previous = entries.put(name, source.length());
+            if (previous != null) {
+                sizeBytes -= previous;
+            }
+            sizeBytes += source.length();
+            evict(name);
+        }
+    }
+
+    private synchronized void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > quotaBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            new File(directory, eldest.getKey()).delete();
+            sizeBytes -= eldest.getValue();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Hard links the file, falling back to a copy when the file system or the
+     * volume layout does not allow a link.
+     */
+    private static void link(File existing, File link) throws IOException {
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+        }
+        catch (NoSuchFileException e) {
+            throw e;
+        }
+        catch (FileAlreadyExistsException e) {
+            Files.delete(link.toPath());
+            link(existing, link);
+        }
+        catch (IOException e) {
+            LocalFileIO.copy(existing, link);
+        }
+        catch (UnsupportedOperationException e) {
+            LocalFileIO.copy(existing, link);
+        }
+    }
+
+    /**
+     * @return names of at most <code>max</code> entries, most recently used
+     *         first
+     */
+    public synchronized Set<String> getEntryNames(int max) {
+        List<String> names = new ArrayList<String>(entries.keySet());
+        Collections.reverse(names);
+        return new LinkedHashSet<String>(names.subList(0, Math.min(max, names.size())));
+    }
+
+    static String entryName(String bucketName, String key, String eTag) {
+        MessageDigest digest = ContentDigest.newSha256();
+        return ContentDigest.toHex(digest.digest((bucketName + "\n" + key + "\n" + eTag).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @Override
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consecutive entries of a manifest returned by
+ * {@link BatchManifestActivities#readManifest}
+ */
+public class ManifestPage {
+
+    private List<ManifestEntry> entries = new ArrayList<ManifestEntry>();
+
+    private long nextOffset;
+
+    private boolean last;
+
+    public List<ManifestEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<ManifestEntry> entries) {
+        this.entries = entries;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Byte offset of the manifest line following the last entry of the page
+     */
+    public void setNextOffset(long nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * True when the page ends at the end of the manifest
+     */
+    public void setLast(boolean last) {
+        this.last = last;
+    }
+
+}
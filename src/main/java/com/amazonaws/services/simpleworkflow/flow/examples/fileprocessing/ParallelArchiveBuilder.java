@@ -0,0 +1,368 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Builds a zip archive of several files, preparing the entries in parallel on
+ * a {@link ForkJoinPool} and appending them to the archive in order as they
+ * become ready.
+ * <p>
+ * Before compressing a file a few blocks spread over it are sampled, and if
+ * their byte entropy shows the content is already compressed (JPEG, video,
+ * other archives) the file is stored as is. Its CRC is computed up front so
+ * the stored entry needs no data descriptor. Deflated entries are compressed
+ * into temporary files next to the archive.
+ */
+public class ParallelArchiveBuilder {
+
+    /**
+     * Entropy above which deflate is not expected to gain anything. Text
+     * and uncompressed images sit well below 7, compressed formats close to
+     * 8.
+     */
+    static final double INCOMPRESSIBLE_BITS_PER_BYTE = 7.5;
+
+    /**
+     * Smaller files are always deflated, their entropy cannot be estimated
+     * reliably and they are cheap to compress anyway
+     */
+    static final long MIN_SAMPLED_SIZE = 16 * 1024;
+
+    private static final int SAMPLES = 8;
+
+    private static final int SAMPLE_SIZE = 16 * 1024;
+
+    /**
+     * Describes an entry of a built archive
+     */
+    public static class Entry {
+
+        private final String name;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long size;
+
+        private final String sha256;
+
+        Entry(String name, int method, long crc, long size, String sha256) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@link ZipStreamWriter#STORED} or
+         *         {@link ZipStreamWriter#DEFLATED}
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return hex SHA-256 of the uncompressed content
+         */
+        public String getSha256() {
+            return sha256;
+        }
+
+    }
+
+    private final ForkJoinPool pool;
+
+    private final int level;
+
+    private final LocalFileIO io;
+
+    /**
+     * @param level
+     *            Deflate compression level, see {@link Deflater}
+     */
+    public ParallelArchiveBuilder(ForkJoinPool pool, int level, LocalFileIO io) {
+        this.pool = pool;
+        this.level = level;
+        this.io = io;
+    }
+
+    /**
+     * @param names
+     *            Entry names in the same order as the inputs
+     */
+    public List<Entry> build(List<File> inputs, List<String> names, File output) throws IOException {
+        if (inputs.size() != names.size()) {
+            throw new IllegalArgumentException(inputs.size() + " inputs but " + names.size() + " names");
+        }
+        List<Future<PreparedEntry>> prepared = new ArrayList<Future<PreparedEntry>>(inputs.size());
+        List<Entry> entries = new ArrayList<Entry>(inputs.size());
+        AtomicBoolean cancelled = new AtomicBoolean();
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                prepared.add(pool.submit(new PrepareTask(inputs.get(i), names.get(i), tempFile(output, i), cancelled)));
+            }
+            ZipStreamWriter writer = new ZipStreamWriter(io.openOutput(output));
+            try {
+                for (Future<PreparedEntry> future : prepared) {
+                    entries.add(append(writer, get(future)));
+                }
+            }
+            finally {
+                writer.close();
+            }
+        }
+        finally {
+            // Cancelling a ForkJoinPool future does not interrupt its task, so the tasks are told to stop and
+            // waited for before their temporary files are deleted
+            cancelled.set(true);
+            for (Future<PreparedEntry> future : prepared) {
+                awaitQuietly(future);
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                tempFile(output, i).delete();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Waits for the task to end, ignoring its result
+     */
+    private static void awaitQuietly(Future<PreparedEntry> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+            catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static File tempFile(File output, int index) {
+        return new File(output.getPath() + "." + index + ".deflate");
+    }
+
+    private Entry append(ZipStreamWriter writer, PreparedEntry prepared) throws IOException {
+        long time = prepared.source.lastModified();
+        if (prepared.method == ZipStreamWriter.STORED) {
+            OutputStream entry = writer.beginStoredEntry(prepared.name, time, prepared.crc, prepared.size);
+            copy(prepared.source, entry);
+            writer.endStoredEntry();
+        }
+        else {
+            OutputStream entry = writer.beginDeflatedEntry(prepared.name, time);
+            copy(prepared.compressed, entry);
+            writer.endDeflatedEntry(prepared.crc, prepared.size);
+            prepared.compressed.delete();
+        }
+        return new Entry(prepared.name, prepared.method, prepared.crc, prepared.size, prepared.sha256);
+    }
+
+    private void copy(File source, OutputStream out) throws IOException {
+        InputStream in = io.openInput(source);
+        try {
+            byte[] buffer = new byte[io.getBufferSize()];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static PreparedEntry get(Future<PreparedEntry> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for archive entry");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Archive entry preparation failed", cause);
+        }
+    }
+
+    /**
+     * Estimates the Shannon entropy in bits per byte from blocks spread
+     * evenly over the file
+     */
+    static double sampleEntropy(File file) throws IOException {
+        long[] counts = new long[256];
+        long total = 0;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+            long stride = Math.max(SAMPLE_SIZE, size / SAMPLES);
+            for (long position = 0; position < size; position += stride) {
+                sample.clear();
+                int read;
+                do {
+                    read = channel.read(sample, position + sample.position());
+                }
+                while (read > 0 && sample.hasRemaining());
+                byte[] bytes = sample.array();
+                for (int i = 0; i < sample.position(); i++) {
+                    counts[bytes[i] & 0xff]++;
+                }
+                total += sample.position();
+            }
+        }
+        finally {
+            channel.close();
+        }
+        double entropy = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return entropy;
+    }
+
+    private static class PreparedEntry {
+
+        File source;
+
+        String name;
+
+        int method;
+
+        long crc;
+
+        long size;
+
+        String sha256;
+
+        File compressed;
+
+    }
+
+    private class PrepareTask implements Callable<PreparedEntry> {
+
+        private final File source;
+
+        private final String name;
+
+        private final File temp;
+
+        private final AtomicBoolean cancelled;
+
+        PrepareTask(File source, String name, File temp, AtomicBoolean cancelled) {
+            this.source = source;
+            this.name = name;
+            this.temp = temp;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public PreparedEntry call() throws IOException {
+            if (cancelled.get()) {
+                throw new InterruptedIOException("Archive entry preparation cancelled");
+            }
+            PreparedEntry prepared = new PreparedEntry();
+            prepared.source = source;
+            prepared.name = name;
+            boolean store = source.length() >= MIN_SAMPLED_SIZE
+                    && sampleEntropy(source) >= INCOMPRESSIBLE_BITS_PER_BYTE;
+            prepared.method = store ? ZipStreamWriter.STORED : ZipStreamWriter.DEFLATED;
+
+            CRC32 crc = new CRC32();
+            MessageDigest digest = ContentDigest.newSha256();
+            Deflater deflater = store ? null : new Deflater(level, true);
+            OutputStream out = store ? null : new DeflaterOutputStream(io.openOutput(temp), deflater,
+                    io.getBufferSize());
+            InputStream in = io.openInput(source);
+            try {
+                byte[] buffer = new byte[io.getBufferSize()];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    if (cancelled.get()) {
+                        throw new InterruptedIOException("Archive entry preparation cancelled");
+                    }
+                    crc.update(buffer, 0, count);
+                    digest.update(buffer, 0, count);
+                    prepared.size += count;
+                    if (out != null) {
+                        out.write(buffer, 0, count);
+                    }
+                }
+            }
+            finally {
+                in.close();
+                if (out != null) {
+                    out.close();
+                    deflater.end();
+                }
+            }
+            prepared.crc = crc.getValue();
+            prepared.sha256 = ContentDigest.toHex(digest.digest());
+            prepared.compressed = store ? null : temp;
+            return prepared;
+        }
+    }
+
+}
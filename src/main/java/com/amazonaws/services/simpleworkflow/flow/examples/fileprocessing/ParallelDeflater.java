@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Produces a raw deflate stream using several cores, the way pigz does. The
+ * input is cut into blocks which are compressed independently on a
+ * {@link ForkJoinPool}. Every block is primed with the last 32KB of the
+ * previous block as a preset dictionary, so matches across block boundaries
+ * are not lost, and all blocks but the last end with a sync flush so that the
+ * compressed blocks can simply be concatenated in order.
+ * <p>
+ * The CRC32 of the input is computed by the reading thread while the blocks
+ * are being compressed. At most twice as many blocks as there are threads are
+ * held in memory at any time.
+ */
+public class ParallelDeflater {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Checksum and sizes of the data compressed by
+     * {@link ParallelDeflater#deflate(InputStream, OutputStream)}
+     */
+    public static class Result {
+
+        private final long crc;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        Result(long crc, long size, long compressedSize) {
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+    }
+
+    private final ForkJoinPool pool;
+
+    private final int level;
+
+    private final int blockSize;
+
+    /**
+     * @param level
+     *            Deflate compression level, see {@link Deflater}
+     */
+    public ParallelDeflater(ForkJoinPool pool, int level, int blockSize) {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("blockSize must be at least " + DICTIONARY_SIZE + ": " + blockSize);
+        }
+        this.pool = pool;
+        this.level = level;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Compresses everything from the input into the output as a single raw
+     * deflate stream (no zlib header or trailer). Neither stream is closed.
+     */
+    public Result deflate(InputStream in, OutputStream out) throws IOException {
+        return deflate(in, out, null, true);
+    }
+
+    /**
+     * Compresses everything from the input into the output as one segment of
+     * a raw deflate stream. Segments compressed separately, each primed with
+     * the data before it, can be concatenated into a single stream as long as
+     * only the last one is finished.
+     * 
+     * @param dictionary
+     *            Data preceding the input, of which at most the last 32KB
+     *            are used, or null at the start of the stream
+     * @param finish
+     *            Whether the output ends the deflate stream. Otherwise it ends
+     *            with a sync flush.
+     */
+    public Result deflate(InputStream in, OutputStream out, byte[] dictionary, boolean finish) throws IOException {
+        int maxPending = Math.max(2, pool.getParallelism() * 2);
+        Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>(maxPending);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        long compressedSize = 0;
+        try {
+            byte[] previous = dictionary;
+            byte[] current = readBlock(in);
+            if (current == null) {
+                // Even an empty stream needs a final block
+                current = new byte[0];
+            }
+            while (current != null) {
+                crc.update(current, 0, current.length);
+                size += current.length;
+                byte[] next = readBlock(in);
+                if (pending.size() == maxPending) {
+                    compressedSize += writeBlock(pending.removeFirst(), out);
+                }
+                pending.addLast(pool.submit(new BlockTask(current, previous, finish && next == null)));
+                previous = current;
+                current = next;
+            }
+            while (!pending.isEmpty()) {
+                compressedSize += writeBlock(pending.removeFirst(), out);
+            }
+        }
+        finally {
+            for (Future<byte[]> block : pending) {
+                block.cancel(true);
+            }
+        }
+        return new Result(crc.getValue(), size, compressedSize);
+    }
+
+    /**
+     * @return next block or null at the end of the input
+     */
+    private byte[] readBlock(InputStream in) throws IOException {
+        byte[] block = new byte[blockSize];
+        int length = 0;
+        int read;
+        while (length < blockSize && (read = in.read(block, length, blockSize - length)) != -1) {
+            length += read;
+        }
+        if (length == 0) {
+            return null;
+        }
+        return length == blockSize ? block : Arrays.copyOf(block, length);
+    }
+
+    private int writeBlock(Future<byte[]> block, OutputStream out) throws IOException {
+        try {
+            byte[] compressed = block.get();
+            out.write(compressed);
+            return compressed.length;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for compressed block");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Block compression failed", e.getCause());
+        }
+    }
+
+    private class BlockTask implements Callable<byte[]> {
+
+        private final byte[] block;
+
+        private final byte[] previous;
+
+        private final boolean last;
+
+        BlockTask(byte[] block, byte[] previous, boolean last) {
+            this.block = block;
+            this.previous = previous;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (previous != null) {
+                    int dictionaryLength = Math.min(DICTIONARY_SIZE, previous.length);
+                    deflater.setDictionary(previous, previous.length - dictionaryLength, dictionaryLength);
+                }
+                deflater.setInput(block);
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.length / 2 + 64);
+                byte[] buffer = new byte[Math.max(64, block.length / 4)];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, count);
+                    }
+                }
+                else {
+                    // Sync flush byte aligns the output without marking it final
+                    int count;
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, count);
+                    }
+                    while (count == buffer.length);
+                }
+                return compressed.toByteArray();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+    }
+
+}
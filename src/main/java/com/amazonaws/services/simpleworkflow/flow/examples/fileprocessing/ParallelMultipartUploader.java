@@ -0,0 +1,278 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads a local file as a multipart upload with a bounded number of parts in
+ * flight. Parts are read by the SDK straight from the file at their offset, so
+ * memory use does not depend on the part size.
+ * <p>
+ * Progress is tracked in an {@link UploadCheckpoint}. An upload started with a
+ * checkpoint of an earlier attempt only sends the parts S3 does not have yet.
+ * Failed attempts intentionally leave the multipart upload open so that the
+ * retry can resume it; configure a lifecycle rule on the bucket to expire
+ * incomplete multipart uploads that are never retried.
+ */
+public class ParallelMultipartUploader {
+
+    /**
+     * Receives the checkpoint of a running upload. Always called from the
+     * thread that invoked {@link ParallelMultipartUploader#upload}.
+     */
+    public interface CheckpointListener {
+
+        void checkpoint(UploadCheckpoint checkpoint);
+
+    }
+
+    private static final long PROGRESS_POLL_MILLIS = 1000;
+
+    private final AmazonS3 s3Client;
+
+    private final ExecutorService executor;
+
+    private final long partSize;
+
+    private final int maxConcurrentParts;
+
+    public ParallelMultipartUploader(AmazonS3 s3Client, ExecutorService executor, long partSize, int maxConcurrentParts) {
+        if (partSize < S3MultipartOutputStream.MINIMUM_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be at least " + S3MultipartOutputStream.MINIMUM_PART_SIZE
+                    + " bytes: " + partSize);
+        }
+        if (maxConcurrentParts < 1) {
+            throw new IllegalArgumentException("maxConcurrentParts must be positive: " + maxConcurrentParts);
+        }
+        this.s3Client = s3Client;
+        this.executor = executor;
+        this.partSize = partSize;
+        this.maxConcurrentParts = maxConcurrentParts;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * @param previous
+     *            Checkpoint of an earlier attempt to upload the same file or
+     *            null to start a new upload
+     */
+    public void upload(String bucketName, String key, File file, ObjectMetadata metadata, UploadCheckpoint previous,
+            CheckpointListener listener) throws IOException {
+        UploadCheckpoint checkpoint = resume(bucketName, key, file, previous);
+        if (checkpoint == null) {
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName, key);
+            if (metadata != null) {
+                request.setObjectMetadata(metadata);
+            }
+            String uploadId = s3Client.initiateMultipartUpload(request).getUploadId();
+            checkpoint = new UploadCheckpoint(uploadId, partSize, file.length());
+        }
+        if (listener != null) {
+            listener.checkpoint(checkpoint);
+        }
+
+        Map<Integer, String> completed = checkpoint.getCompletedParts();
+        List<Integer> missingParts = new ArrayList<Integer>();
+        for (int partNumber = 1; partNumber <= checkpoint.getPartCount(); partNumber++) {
+            if (!completed.containsKey(partNumber)) {
+                missingParts.add(partNumber);
+            }
+        }
+        System.out.println("Uploading " + missingParts.size() + " of " + checkpoint.getPartCount() + " parts to s3://"
+                + bucketName + "/" + key);
+
+        AtomicInteger nextPart = new AtomicInteger();
+        int workers = Math.min(maxConcurrentParts, missingParts.size());
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(new PartWorker(bucketName, key, file, checkpoint, missingParts, nextPart)));
+        }
+        try {
+            for (Future<Void> future : futures) {
+                waitReportingCheckpoint(future, checkpoint, listener);
+            }
+        }
+        finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+        if (listener != null) {
+            listener.checkpoint(checkpoint);
+        }
+
+        List<PartETag> partETags = new ArrayList<PartETag>();
+        for (Map.Entry<Integer, String> part : checkpoint.getCompletedParts().entrySet()) {
+            partETags.add(new PartETag(part.getKey(), part.getValue()));
+        }
+        s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, checkpoint.getUploadId(),
+                partETags));
+    }
+
+    /**
+     * Validates the checkpoint of an earlier attempt against S3. The part list
+     * returned by S3 replaces the one in the checkpoint as parts acknowledged
+     * after the last heartbeat are not recorded there.
+     *
+     * @return checkpoint to continue from or null if a new upload is needed
+     */
+    private UploadCheckpoint resume(String bucketName, String key, File file, UploadCheckpoint previous) {
+        if (previous == null) {
+            return null;
+        }
+        if (!previous.matches(partSize, file.length())) {
+            abortQuietly(bucketName, key, previous.getUploadId());
+            return null;
+        }
+        UploadCheckpoint checkpoint = new UploadCheckpoint(previous.getUploadId(), partSize, file.length());
+        try {
+            ListPartsRequest request = new ListPartsRequest(bucketName, key, previous.getUploadId());
+            PartListing listing;
+            do {
+                listing = s3Client.listParts(request);
+                for (PartSummary part : listing.getParts()) {
+                    if (part.getSize() == expectedPartSize(part.getPartNumber(), file.length())) {
+                        checkpoint.partCompleted(part.getPartNumber(), part.getETag());
+                    }
+                }
+                request.setPartNumberMarker(listing.getNextPartNumberMarker());
+            }
+            while (listing.isTruncated());
+        }
+        catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                // Upload was completed or aborted in the meantime
+                return null;
+            }
+            throw e;
+        }
+        return checkpoint;
+    }
+
+    private long expectedPartSize(int partNumber, long fileLength) {
+        long offset = (partNumber - 1) * partSize;
+        return Math.max(0, Math.min(partSize, fileLength - offset));
+    }
+
+    private void abortQuietly(String bucketName, String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        }
+        catch (AmazonServiceException e) {
+            System.out.println("Could not abort stale upload " + uploadId + ": " + e.getMessage());
+        }
+    }
+
+    private void waitReportingCheckpoint(Future<Void> future, UploadCheckpoint checkpoint, CheckpointListener listener)
+            throws IOException {
+        while (true) {
+            try {
+                future.get(PROGRESS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            catch (TimeoutException e) {
+                if (listener != null) {
+                    listener.checkpoint(checkpoint);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for part upload");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    private class PartWorker implements Callable<Void> {
+
+        private final String bucketName;
+
+        private final String key;
+
+        private final File file;
+
+        private final UploadCheckpoint checkpoint;
+
+        private final List<Integer> parts;
+
+        private final AtomicInteger nextPart;
+
+        PartWorker(String bucketName, String key, File file, UploadCheckpoint checkpoint, List<Integer> parts,
+                AtomicInteger nextPart) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.file = file;
+            this.checkpoint = checkpoint;
+            this.parts = parts;
+            this.nextPart = nextPart;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            int index;
+            while ((index = nextPart.getAndIncrement()) < parts.size()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Part upload cancelled");
+                }
+                int partNumber = parts.get(index);
+                long offset = (partNumber - 1) * partSize;
+                UploadPartRequest request = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+                        .withUploadId(checkpoint.getUploadId()).withPartNumber(partNumber).withFile(file)
+                        .withFileOffset(offset).withPartSize(expectedPartSize(partNumber, file.length()));
+                PartETag partETag = s3Client.uploadPart(request).getPartETag();
+                checkpoint.partCompleted(partETag.getPartNumber(), partETag.getETag());
+            }
+            return null;
+        }
+    }
+
+}
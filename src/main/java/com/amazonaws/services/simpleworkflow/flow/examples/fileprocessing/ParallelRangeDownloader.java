@@ -0,0 +1,304 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Downloads an S3 object over several connections. The object is split into
+ * fixed size byte ranges which are fetched by concurrent ranged GETs and
+ * written at their offset in the destination file with positional
+ * {@link FileChannel} writes, so the parts can complete in any order.
+ * <p>
+ * Every range is requested with the ETag returned by the initial HEAD as a
+ * matching constraint, so an object overwritten in the middle of the download
+ * fails the transfer instead of producing a file mixing two versions.
+ * <p>
+ * Progress is reported as a {@link DownloadCheckpoint} whose durable prefix
+ * only covers ranges that are complete and forced to disk. Passing that
+ * checkpoint to a later download of the same object into the same file
+ * fetches only the bytes after the prefix.
+ */
+public class ParallelRangeDownloader {
+
+    /**
+     * Receives the aggregate progress of a transfer. Always called from the
+     * thread that invoked {@link ParallelRangeDownloader#download}, which is
+     * what activity heartbeats require.
+     */
+    public interface ProgressListener {
+
+        void progress(long bytesTransferred, long totalBytes, DownloadCheckpoint checkpoint);
+
+    }
+
+    private static final int BUFFER = 64 * 1024;
+
+    private static final long PROGRESS_POLL_MILLIS = 1000;
+
+    private final AmazonS3 s3Client;
+
+    private final ExecutorService executor;
+
+    private final long partSize;
+
+    private final int concurrency;
+
+    public ParallelRangeDownloader(AmazonS3 s3Client, ExecutorService executor, long partSize, int concurrency) {
+        if (partSize <= 0) {
+            throw new IllegalArgumentException("partSize must be positive: " + partSize);
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.s3Client = s3Client;
+        this.executor = executor;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @param previous
+     *            Checkpoint of an earlier attempt to download the same object
+     *            into the same file or null to download the whole object. It
+     *            is ignored if the object or the file do not match it.
+     * @return metadata of the downloaded object
+     */
+    public ObjectMetadata download(String bucketName, String key, File destination, DownloadCheckpoint previous,
+            ProgressListener listener) throws IOException {
+        final ObjectMetadata metadata = s3Client.getObjectMetadata(bucketName, key);
+        final long totalSize = metadata.getContentLength();
+        long startOffset = 0;
+        if (previous != null && previous.isValidFor(metadata.getETag(), totalSize, destination.length())) {
+            startOffset = previous.getDurableBytes();
+            System.out.println("Resuming download of s3://" + bucketName + "/" + key + " at byte " + startOffset);
+        }
+        final int partCount = (int) ((totalSize - startOffset + partSize - 1) / partSize);
+        RandomAccessFile file = new RandomAccessFile(destination, "rw");
+        try {
+            file.setLength(totalSize);
+            FileChannel channel = file.getChannel();
+            Progress progress = new Progress(metadata.getETag(), totalSize, startOffset, partCount, channel);
+            AtomicInteger nextPart = new AtomicInteger();
+            int workers = Math.min(concurrency, partCount);
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new RangeWorker(bucketName, key, progress, nextPart)));
+            }
+            try {
+                for (Future<Void> future : futures) {
+                    waitReportingProgress(future, progress, listener);
+                }
+            }
+            finally {
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            progress.report(listener);
+        }
+        finally {
+            file.close();
+        }
+        return metadata;
+    }
+
+    private void waitReportingProgress(Future<Void> future, Progress progress, ProgressListener listener)
+            throws IOException {
+        while (true) {
+            try {
+                future.get(PROGRESS_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            catch (TimeoutException e) {
+                progress.report(listener);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for ranged download");
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Shared state of a single download
+     */
+    private class Progress {
+
+        final String eTag;
+
+        final long totalSize;
+
+        final long startOffset;
+
+        final int partCount;
+
+        final FileChannel channel;
+
+        final AtomicLong transferred;
+
+        private final BitSet completedParts = new BitSet();
+
+        private long durableBytes;
+
+        Progress(String eTag, long totalSize, long startOffset, int partCount, FileChannel channel) {
+            this.eTag = eTag;
+            this.totalSize = totalSize;
+            this.startOffset = startOffset;
+            this.partCount = partCount;
+            this.channel = channel;
+            this.transferred = new AtomicLong(startOffset);
+            this.durableBytes = startOffset;
+        }
+
+        long partStart(int part) {
+            return startOffset + part * partSize;
+        }
+
+        synchronized void partCompleted(int part) {
+            completedParts.set(part);
+        }
+
+        /**
+         * Forces the completed prefix of the file to disk before reporting
+         * it, so a checkpoint never claims bytes that a crash could lose.
+         */
+        void report(ProgressListener listener) throws IOException {
+            int firstIncomplete;
+            synchronized (this) {
+                firstIncomplete = completedParts.nextClearBit(0);
+            }
+            long completedPrefix = Math.min(totalSize, partStart(firstIncomplete));
+            if (completedPrefix > durableBytes) {
+                channel.force(false);
+                durableBytes = completedPrefix;
+            }
+            if (listener != null) {
+                listener.progress(transferred.get(), totalSize, new DownloadCheckpoint(eTag, totalSize, durableBytes));
+            }
+        }
+    }
+
+    /**
+     * Keeps taking the next unclaimed part until all of them are claimed, so
+     * a slow connection only delays the parts it is working on.
+     */
+    private class RangeWorker implements Callable<Void> {
+
+        private final String bucketName;
+
+        private final String key;
+
+        private final Progress progress;
+
+        private final AtomicInteger nextPart;
+
+        RangeWorker(String bucketName, String key, Progress progress, AtomicInteger nextPart) {
+            this.bucketName = bucketName;
+            this.key = key;
+            this.progress = progress;
+            this.nextPart = nextPart;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            byte[] bytes = new byte[BUFFER];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int part;
+            while ((part = nextPart.getAndIncrement()) < progress.partCount) {
+                long start = progress.partStart(part);
+                long end = Math.min(progress.totalSize, start + partSize) - 1;
+                downloadRange(start, end, bytes, buffer);
+                progress.partCompleted(part);
+            }
+            return null;
+        }
+
+        private void downloadRange(long start, long end, byte[] bytes, ByteBuffer buffer) throws IOException {
+            GetObjectRequest request = new GetObjectRequest(bucketName, key);
+            request.setRange(start, end);
+            if (progress.eTag != null) {
+                request.withMatchingETagConstraint(progress.eTag);
+            }
+            S3Object obj = s3Client.getObject(request);
+            if (obj == null) {
+                // The constraint did not match
+                throw new IOException("s3://" + bucketName + "/" + key + " changed during download");
+            }
+            S3ObjectInputStream inputStream = obj.getObjectContent();
+            boolean completed = false;
+            try {
+                long position = start;
+                int read;
+                while (position <= end && (read = inputStream.read(bytes)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Ranged download cancelled");
+                    }
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += progress.channel.write(buffer, position);
+                    }
+                    progress.transferred.addAndGet(read);
+                }
+                if (position != end + 1) {
+                    throw new IOException("Range " + start + "-" + end + " of s3://" + bucketName + "/" + key
+                            + " ended at " + position);
+                }
+                completed = true;
+            }
+            finally {
+                if (completed) {
+                    inputStream.close();
+                }
+                else {
+                    inputStream.abort();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+/**
+ * How FileProcessingWorkflow moves the file through the worker
+ */
+public enum ProcessingMode {
+
+    /**
+     * Download the file to the local folder of a worker, zip it there and
+     * upload the result from the same worker
+     */
+    STAGED,
+
+    /**
+     * Download, zip and upload in a single activity without any local copy
+     */
+    STREAMING
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * OutputStream that writes to an S3 object through a multipart upload. Data
+ * is accumulated in fixed size part buffers which are uploaded concurrently
+ * while the caller keeps writing. The number of buffers is fixed, so a writer
+ * that outpaces the network blocks instead of growing the heap: memory use is
+ * at most <code>partSize * (maxInFlightParts + 1)</code> bytes.
+ * <p>
+ * The upload is completed by {@link #close()}. If the writer fails it must
+ * call {@link #abort()} so that S3 discards the parts already uploaded.
+ */
+public class S3MultipartOutputStream extends OutputStream {
+
+    /**
+     * S3 rejects multipart uploads with parts smaller than 5MB (except the
+     * last one)
+     */
+    public static final int MINIMUM_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * S3 rejects part numbers above 10,000
+     */
+    public static final int MAXIMUM_PARTS = 10000;
+
+    private final AmazonS3 s3Client;
+
+    private final String bucketName;
+
+    private final String key;
+
+    private final String uploadId;
+
+    private final int partSize;
+
+    private final ExecutorService executor;
+
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    private final List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+
+    private byte[] buffer;
+
+    private int position;
+
+    private boolean closed;
+
+    public S3MultipartOutputStream(AmazonS3 s3Client, String bucketName, String key, int partSize, int maxInFlightParts,
+            ExecutorService executor) {
+        this(s3Client, bucketName, key, new ObjectMetadata(), partSize, maxInFlightParts, executor);
+    }
+
+    /**
+     * @param metadata
+     *            Metadata of the object created when the stream is closed
+     */
+    public S3MultipartOutputStream(AmazonS3 s3Client, String bucketName, String key, ObjectMetadata metadata,
+            int partSize, int maxInFlightParts, ExecutorService executor) {
+        if (partSize < MINIMUM_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be at least " + MINIMUM_PART_SIZE + " bytes: " + partSize);
+        }
+        if (maxInFlightParts < 1) {
+            throw new IllegalArgumentException("maxInFlightParts must be positive: " + maxInFlightParts);
+        }
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSize = partSize;
+        this.executor = executor;
+        // Room for every buffer, including the one being filled, once all uploads returned theirs
+        this.freeBuffers = new ArrayBlockingQueue<byte[]>(maxInFlightParts + 1);
+        for (int i = 0; i < maxInFlightParts; i++) {
+            freeBuffers.add(new byte[partSize]);
+        }
+        this.buffer = new byte[partSize];
+        this.uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata))
+                .getUploadId();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (position == partSize) {
+            uploadBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (position == partSize) {
+                uploadBuffer();
+            }
+            int count = Math.min(length, partSize - position);
+            System.arraycopy(data, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Uploads the buffered tail as the last part and completes the multipart
+     * upload. The stream is aborted if any part failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            // S3 requires at least one part, even for an empty object
+            if (position > 0 || parts.isEmpty()) {
+                uploadBuffer();
+            }
+            List<PartETag> partETags = new ArrayList<PartETag>(parts.size());
+            for (Future<PartETag> part : parts) {
+                partETags.add(waitForPart(part));
+            }
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+            closed = true;
+        }
+        catch (IOException e) {
+            abort();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancels outstanding part uploads and asks S3 to discard the upload.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Future<PartETag> part : parts) {
+            part.cancel(true);
+        }
+        s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    private void uploadBuffer() throws IOException {
+        if (parts.size() == MAXIMUM_PARTS) {
+            throw new IOException("s3://" + bucketName + "/" + key + " does not fit in " + MAXIMUM_PARTS
+                    + " parts of " + partSize + " bytes");
+        }
+        final byte[] data = buffer;
+        final int length = position;
+        final int partNumber = parts.size() + 1;
+        parts.add(executor.submit(new Callable<PartETag>() {
+
+            @Override
+            public PartETag call() throws Exception {
+                try {
+                    UploadPartRequest request = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+                            .withUploadId(uploadId).withPartNumber(partNumber).withPartSize(length)
+                            .withInputStream(new ByteArrayInputStream(data, 0, length));
+                    return s3Client.uploadPart(request).getPartETag();
+                }
+                finally {
+                    freeBuffers.add(data);
+                }
+            }
+        }));
+        try {
+            // Blocks while all the other buffers are being uploaded
+            buffer = freeBuffers.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a free part buffer");
+        }
+        position = 0;
+        failFast();
+    }
+
+    /**
+     * Surfaces a failed part upload as soon as it is noticed instead of at
+     * close time, so a broken upload does not consume the rest of the input.
+     */
+    private void failFast() throws IOException {
+        for (Future<PartETag> part : parts) {
+            if (part.isDone()) {
+                waitForPart(part);
+            }
+        }
+    }
+
+    private PartETag waitForPart(Future<PartETag> part) throws IOException {
+        try {
+            return part.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for part upload");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Part upload failed for s3://" + bucketName + "/" + key, e.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+/**
+ * A byte range of a source file compressed by
+ * {@link SegmentedFileProcessingActivities#compressSegment} into a temporary
+ * object
+ */
+public class SegmentResult {
+
+    private String segmentKey;
+
+    private long start;
+
+    private long size;
+
+    private long crc;
+
+    private long compressedSize;
+
+    private long objectSize;
+
+    public SegmentResult() {
+    }
+
+    public SegmentResult(String segmentKey, long start, long size, long crc, long compressedSize, long objectSize) {
+        this.segmentKey = segmentKey;
+        this.start = start;
+        this.size = size;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.objectSize = objectSize;
+    }
+
+    public String getSegmentKey() {
+        return segmentKey;
+    }
+
+    public void setSegmentKey(String segmentKey) {
+        this.segmentKey = segmentKey;
+    }
+
+    /**
+     * Offset of the range in the source file
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    /**
+     * Length of the range in the source file
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * CRC32 of the range
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    public void setCrc(long crc) {
+        this.crc = crc;
+    }
+
+    /**
+     * Length of the deflate data of the range
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public void setCompressedSize(long compressedSize) {
+        this.compressedSize = compressedSize;
+    }
+
+    /**
+     * Length of the temporary object, which includes the zip header of the
+     * archive for the first segment
+     */
+    public long getObjectSize() {
+        return objectSize;
+    }
+
+    public void setObjectSize(long objectSize) {
+        this.objectSize = objectSize;
+    }
+
+}
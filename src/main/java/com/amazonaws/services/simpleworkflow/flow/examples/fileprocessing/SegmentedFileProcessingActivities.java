@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Activities;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrationOptions;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ExponentialRetry;
+
+/**
+ * Contract for zipping a large file as byte ranges compressed by different
+ * hosts. Every range becomes a segment of one deflate stream, and the
+ * segments are joined into a zip archive with a single entry.
+ * <p>
+ * Segments wait in the common task list until a host is free, hence the
+ * long schedule to start timeout.
+ */
+@Activities(version = "2.0")
+@ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 3600, defaultTaskStartToCloseTimeoutSeconds = 3600)
+public interface SegmentedFileProcessingActivities {
+
+    /**
+     * @return size of the object in bytes
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 5)
+    public long getContentLength(String bucketName, String key);
+
+    /**
+     * Compresses a byte range of the source into a temporary object. The
+     * range is primed with the 32KB before it, and all but the last segment
+     * end with a sync flush so the segments can be concatenated. The first
+     * segment starts with the local zip header of the entry.
+     * 
+     * @param start
+     *          Offset of the first byte of the range
+     * @param end
+     *          Offset after the last byte of the range
+     * @param segmentKey
+     *          Key of the temporary object in the target bucket
+     * @param entryName
+     *          Name of the entry in the archive
+     * @param entryTime
+     *          Modification time of the entry in the archive
+     * @param last
+     *          Whether the range ends the source
+     * @param compressionLevel
+     *          Deflate level from 0 to 9 or -1 for the default
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
+    public SegmentResult compressSegment(String sourceBucketName, String sourceFilename, long start, long end,
+            String targetBucketName, String segmentKey, String entryName, long entryTime, boolean last,
+            int compressionLevel) throws Exception;
+
+    /**
+     * Joins the segments stored under the prefix in the order of their index,
+     * appends the end of the archive and deletes the temporary objects. The
+     * checksum and sizes of the entry are folded by the caller, so the input
+     * does not grow with the number of segments. Calling it again after the
+     * archive was composed only finishes the cleanup.
+     * 
+     * @param segmentPrefix
+     *          Prefix of the temporary objects, each key ending with the
+     *          index of its segment
+     * @param segmentCount
+     *          Number of segments expected under the prefix
+     * @param crc
+     *          CRC32 of the whole entry
+     * @param size
+     *          Uncompressed size of the entry
+     * @param compressedSize
+     *          Size of the deflate stream of the entry
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
+    public void composeArchive(String targetBucketName, String targetFilename, String segmentPrefix, int segmentCount,
+            String entryName, long entryTime, long crc, long size, long compressedSize) throws Exception;
+
+    /**
+     * Deletes the temporary objects left under the prefix by segments of a
+     * failed or cancelled run.
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 5)
+    public void deleteSegments(String targetBucketName, String segmentPrefix);
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContext;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProvider;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProviderImpl;
+
+/**
+ * This implementation of SegmentedFileProcessingActivities streams every range
+ * through a {@link ParallelDeflater} into a temporary object, so a segment
+ * uses all the cores of the host that picked it up and nothing is staged on
+ * its disk.
+ * <p>
+ * The archive is composed on the S3 side with a multipart upload whose parts
+ * are copied from the segment objects, followed by a small last part holding
+ * the data descriptor and the central directory. Only that tail is computed
+ * by the host, using the CRC32 of the ranges combined with
+ * {@link Crc32Combine}. When a segment is too small to be a part, the
+ * segments are streamed through the host instead.
+ */
+public class SegmentedFileProcessingActivitiesZipImpl implements SegmentedFileProcessingActivities {
+
+    private static final int HEARTBEAT_INTERVAL = 60000;
+
+    private static final int BUFFER = 64 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * S3 does not copy more than 5GB into a single part
+     */
+    private static final long MAXIMUM_COPY_PART_SIZE = 5L * 1024 * 1024 * 1024;
+
+    private static final int MAXIMUM_PARTS = 10000;
+
+    /**
+     * User metadata that ties the archive to the segments it was composed
+     * from, so a retried compose can tell it already succeeded
+     */
+    static final String SEGMENT_PREFIX_METADATA = "segment-prefix";
+
+    private final ActivityExecutionContextProvider contextProvider = new ActivityExecutionContextProviderImpl();
+
+    private final AmazonS3 s3Client;
+
+    private final ForkJoinPool pool;
+
+    private final int partSize;
+
+    private final int maxInFlightParts;
+
+    private final ExecutorService uploadExecutor;
+
+    /**
+     * @param threads
+     *            Number of cores used to compress a segment
+     * @param partSize
+     *            Size of the parts buffered while uploading a segment
+     * @param maxInFlightParts
+     *            Number of parts of a segment uploaded concurrently
+     */
+    public SegmentedFileProcessingActivitiesZipImpl(AmazonS3 s3Client, int threads, int partSize, int maxInFlightParts) {
+        this.s3Client = s3Client;
+        this.pool = new ForkJoinPool(threads);
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.uploadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "segment-upload");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public long getContentLength(String bucketName, String key) {
+        return s3Client.getObjectMetadata(bucketName, key).getContentLength();
+    }
+
+    @Override
+    public SegmentResult compressSegment(String sourceBucketName, String sourceFilename, long start, long end,
+            String targetBucketName, String segmentKey, String entryName, long entryTime, boolean last,
+            int compressionLevel) throws Exception {
+        System.out.println("compressSegment begin source=" + sourceBucketName + "/" + sourceFilename + ", range=" + start
+                + "-" + end + ", segment=" + segmentKey);
+        long rangeStart = Math.max(0, start - DICTIONARY_SIZE);
+        GetObjectRequest request = new GetObjectRequest(sourceBucketName, sourceFilename);
+        request.setRange(rangeStart, end - 1);
+        S3Object obj = s3Client.getObject(request);
+        S3ObjectInputStream inputStream = obj.getObjectContent();
+        S3MultipartOutputStream upload = null;
+        boolean completed = false;
+        try {
+            byte[] dictionary = start == 0 ? null : readFully(inputStream, (int) (start - rangeStart));
+            upload = new S3MultipartOutputStream(s3Client, targetBucketName, segmentKey, partSize, maxInFlightParts,
+                    uploadExecutor);
+            byte[] header = start == 0 ? zipHeader(entryName, entryTime) : new byte[0];
+            upload.write(header);
+            ParallelDeflater deflater = new ParallelDeflater(pool, compressionLevel, ParallelDeflater.DEFAULT_BLOCK_SIZE);
+            ParallelDeflater.Result result = deflater.deflate(new HeartbeatInputStream(inputStream, end - start), upload,
+                    dictionary, last);
+            if (result.getSize() != end - start) {
+                throw new EOFException("Range " + start + "-" + end + " of " + sourceFilename + " ended after "
+                        + result.getSize() + " bytes");
+            }
+            upload.close();
+            completed = true;
+            System.out.println("compressSegment done");
+            return new SegmentResult(segmentKey, start, result.getSize(), result.getCrc(), result.getCompressedSize(),
+                    header.length + result.getCompressedSize());
+        }
+        finally {
+            if (!completed) {
+                inputStream.abort();
+                if (upload != null) {
+                    upload.abort();
+                }
+            }
+            else {
+                inputStream.close();
+            }
+        }
+    }
+
+    @Override
+    public void composeArchive(String targetBucketName, String targetFilename, String segmentPrefix, int segmentCount,
+            String entryName, long entryTime, long crc, long size, long compressedSize) throws Exception {
+        System.out.println("composeArchive begin target=" + targetBucketName + "/" + targetFilename + ", segments="
+                + segmentCount);
+        byte[] trailer = zipTrailer(entryName, entryTime, crc, size, compressedSize);
+        List<S3ObjectSummary> segments = listSegments(targetBucketName, segmentPrefix);
+        if (segments.size() == segmentCount) {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.addUserMetadata(SEGMENT_PREFIX_METADATA, segmentPrefix);
+            if (canCopyParts(segments)) {
+                composeByCopy(targetBucketName, targetFilename, metadata, segments, trailer);
+            }
+            else {
+                composeByStreaming(targetBucketName, targetFilename, metadata, segments, trailer);
+            }
+        }
+        else if (!isComposedFrom(targetBucketName, targetFilename, segmentPrefix)) {
+            throw new IllegalStateException("Found " + segments.size() + " of " + segmentCount + " segments under "
+                    + targetBucketName + "/" + segmentPrefix);
+        }
+        // else a previous attempt composed the archive and failed while deleting the segments
+        deleteSegments(targetBucketName, segmentPrefix);
+        System.out.println("composeArchive done");
+    }
+
+    @Override
+    public void deleteSegments(String targetBucketName, String segmentPrefix) {
+        for (S3ObjectSummary segment : listSegments(targetBucketName, segmentPrefix)) {
+            s3Client.deleteObject(targetBucketName, segment.getKey());
+        }
+    }
+
+    /**
+     * @return objects under the prefix in the order of the index that ends
+     *         their key
+     */
+    private List<S3ObjectSummary> listSegments(String bucketName, final String segmentPrefix) {
+        List<S3ObjectSummary> segments = new ArrayList<S3ObjectSummary>();
+        ListObjectsRequest request = new ListObjectsRequest().withBucketName(bucketName).withPrefix(segmentPrefix);
+        ObjectListing listing;
+        do {
+            listing = s3Client.listObjects(request);
+            segments.addAll(listing.getObjectSummaries());
+            // Without a delimiter S3 does not return the next marker, so continue after the last key
+            if (!listing.getObjectSummaries().isEmpty()) {
+                List<S3ObjectSummary> summaries = listing.getObjectSummaries();
+                request.setMarker(summaries.get(summaries.size() - 1).getKey());
+            }
+        }
+        while (listing.isTruncated());
+        Collections.sort(segments, new Comparator<S3ObjectSummary>() {
+
+            @Override
+            public int compare(S3ObjectSummary a, S3ObjectSummary b) {
+                return Long.compare(segmentIndex(a, segmentPrefix), segmentIndex(b, segmentPrefix));
+            }
+        });
+        return segments;
+    }
+
+    private static long segmentIndex(S3ObjectSummary segment, String segmentPrefix) {
+        return Long.parseLong(segment.getKey().substring(segmentPrefix.length()));
+    }
+
+    /**
+     * @return whether the target is the archive composed from the segments
+     *         under the prefix
+     */
+    private boolean isComposedFrom(String bucketName, String key, String segmentPrefix) {
+        ObjectMetadata metadata;
+        try {
+            metadata = s3Client.getObjectMetadata(bucketName, key);
+        }
+        catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+        return segmentPrefix.equals(metadata.getUserMetadata().get(SEGMENT_PREFIX_METADATA));
+    }
+
+    private static boolean canCopyParts(List<S3ObjectSummary> segments) {
+        if (segments.size() + 1 > MAXIMUM_PARTS) {
+            return false;
+        }
+        for (S3ObjectSummary segment : segments) {
+            if (segment.getSize() < S3MultipartOutputStream.MINIMUM_PART_SIZE
+                    || segment.getSize() > MAXIMUM_COPY_PART_SIZE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void composeByCopy(String bucketName, String key, ObjectMetadata metadata, List<S3ObjectSummary> segments,
+            byte[] trailer) {
+        String uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata))
+                .getUploadId();
+        boolean completed = false;
+        try {
+            List<PartETag> partETags = new ArrayList<PartETag>(segments.size() + 1);
+            long lastHeartbeatTime = System.currentTimeMillis();
+            for (S3ObjectSummary segment : segments) {
+                CopyPartRequest request = new CopyPartRequest().withSourceBucketName(bucketName)
+                        .withSourceKey(segment.getKey()).withDestinationBucketName(bucketName)
+                        .withDestinationKey(key).withUploadId(uploadId).withPartNumber(partETags.size() + 1);
+                partETags.add(s3Client.copyPart(request).getPartETag());
+                lastHeartbeatTime = heartbeat(lastHeartbeatTime, partETags.size(), segments.size());
+            }
+            UploadPartRequest request = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+                    .withUploadId(uploadId).withPartNumber(partETags.size() + 1).withPartSize(trailer.length)
+                    .withInputStream(new ByteArrayInputStream(trailer));
+            partETags.add(s3Client.uploadPart(request).getPartETag());
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+            completed = true;
+        }
+        finally {
+            if (!completed) {
+                s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            }
+        }
+    }
+
+    private void composeByStreaming(String bucketName, String key, ObjectMetadata metadata,
+            List<S3ObjectSummary> segments, byte[] trailer) throws IOException {
+        S3MultipartOutputStream upload = new S3MultipartOutputStream(s3Client, bucketName, key, metadata, partSize,
+                maxInFlightParts, uploadExecutor);
+        boolean completed = false;
+        try {
+            byte[] data = new byte[BUFFER];
+            long lastHeartbeatTime = System.currentTimeMillis();
+            int copied = 0;
+            for (S3ObjectSummary segment : segments) {
+                S3ObjectInputStream inputStream = s3Client.getObject(bucketName, segment.getKey())
+                        .getObjectContent();
+                try {
+                    int read;
+                    while ((read = inputStream.read(data)) != -1) {
+                        upload.write(data, 0, read);
+                    }
+                }
+                finally {
+                    inputStream.close();
+                }
+                lastHeartbeatTime = heartbeat(lastHeartbeatTime, ++copied, segments.size());
+            }
+            upload.write(trailer);
+            upload.close();
+            completed = true;
+        }
+        finally {
+            if (!completed) {
+                upload.abort();
+            }
+        }
+    }
+
+    /**
+     * @return local header of the single deflated entry of the archive
+     */
+    static byte[] zipHeader(String entryName, long entryTime) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipStreamWriter zip = new ZipStreamWriter(bytes);
+        zip.beginDeflatedEntry(entryName, entryTime);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return data descriptor of the single deflated entry followed by the
+     *         end of the archive
+     */
+    static byte[] zipTrailer(String entryName, long entryTime, long crc, long size, long compressedSize)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipStreamWriter zip = new ZipStreamWriter(bytes);
+        zip.beginDeflatedEntry(entryName, entryTime);
+        int headerLength = bytes.size();
+        zip.skipEntryData(compressedSize);
+        zip.endDeflatedEntry(crc, size);
+        zip.close();
+        byte[] archive = bytes.toByteArray();
+        return Arrays.copyOfRange(archive, headerLength, archive.length);
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] data = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(data, offset, length - offset);
+            if (read == -1) {
+                throw new EOFException("Range ended after " + offset + " of " + length + " bytes");
+            }
+            offset += read;
+        }
+        return data;
+    }
+
+    /**
+     * Heartbeat every minute with the percentage of the work done so far.
+     * 
+     * @return time of the last heartbeat
+     */
+    private long heartbeat(long lastHeartbeatTime, long done, long total) {
+        if (System.currentTimeMillis() - lastHeartbeatTime > HEARTBEAT_INTERVAL) {
+            ActivityExecutionContext context = contextProvider.getActivityExecutionContext();
+            int progress = total == 0 ? 100 : (int) (done * 100 / total);
+            context.recordActivityHeartbeat(Integer.toString(progress));
+            lastHeartbeatTime = System.currentTimeMillis();
+        }
+        return lastHeartbeatTime;
+    }
+
+    /**
+     * Heartbeats while the deflater consumes the range
+     */
+    private class HeartbeatInputStream extends FilterInputStream {
+
+        private final long total;
+
+        private long read;
+
+        private long lastHeartbeatTime = System.currentTimeMillis();
+
+        HeartbeatInputStream(InputStream in, long total) {
+            super(in);
+            this.total = total;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                read += count;
+                lastHeartbeatTime = heartbeat(lastHeartbeatTime, read, total);
+            }
+            return count;
+        }
+    }
+
+}
@@ -21,6 +21,13 @@ import com.amazonaws.services.simpleworkflow.flow.annotations.ExponentialRetry;
 @Activities(version = "1.0")
 @ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 60, defaultTaskStartToCloseTimeoutSeconds = 120)
 public interface SimpleStoreActivities {
+
+    /**
+     * Task list of the downloads any host may take. A host stops polling it
+     * while its local folder is short of room, without pausing the other
+     * activities of the common task list.
+     */
+    String DOWNLOAD_TASK_LIST = "FileProcessingDownload";
  
     /**
      * 
@@ -30,10 +37,11 @@ public interface SimpleStoreActivities {
      *          Name of the file to use on S3 bucket after upload
      * @param fromBox
      *          Machine name which has the file that needs to be uploaded
-     * @return
+     * @return false when the transfer was skipped because the object
+     *          already has the same content digest
      */
     @ExponentialRetry(initialRetryIntervalSeconds = 10,  maximumAttempts = 10) 
-    public void upload(String bucketName, String localName, String targetName);
+    public boolean upload(String bucketName, String localName, String targetName) throws Exception;
     /**
      * 
      * @param remoteName 
@@ -46,6 +54,14 @@ public interface SimpleStoreActivities {
      */
     @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
     public String download(String bucketName, String remoteName, String localName) throws Exception;
+
+    /**
+     * Same as {@link #download} but without retries. It is scheduled on the
+     * task list of a host chosen by {@link HostRoutingActivities}, and a host
+     * that is gone would otherwise get every retry, so the caller falls back
+     * to the download task list after the first failure instead.
+     */
+    public String downloadRouted(String bucketName, String remoteName, String localName) throws Exception;
     /**
      * 
      * @param fileName 
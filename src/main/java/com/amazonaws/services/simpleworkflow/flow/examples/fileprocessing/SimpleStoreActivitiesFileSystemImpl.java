@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Store implementation backed by a local or mounted directory tree instead of
+ * S3, for running the pipeline on premises or benchmarking it without the
+ * network. A bucket is a folder under the root folder and a key is a path
+ * inside it.
+ * <p>
+ * Files are hard linked between the store and the local folder when both are
+ * on the same volume, so a transfer costs no I/O at all. Otherwise they are
+ * copied with {@link java.nio.channels.FileChannel#transferTo}. Uploads are
+ * written to a temporary name next to the target and renamed over it, so
+ * readers never see a partial object and a link from an earlier download
+ * keeps the content it had. The content digest of an uploaded file is kept
+ * in a sidecar next to the object.
+ */
+public class SimpleStoreActivitiesFileSystemImpl implements SimpleStoreActivities {
+
+    private final File rootDirectory;
+
+    private final String localDirectory;
+
+    private final String hostSpecificTaskList;
+
+    public SimpleStoreActivitiesFileSystemImpl(String rootDirectory, String localDirectory, String taskList) {
+        this.rootDirectory = new File(rootDirectory);
+        this.localDirectory = localDirectory;
+        this.hostSpecificTaskList = taskList;
+    }
+
+    @Override
+    public boolean upload(String bucketName, String localName, String targetName) throws Exception {
+        System.out.println("upload begin targetName=" + targetName + ", localName=" + localName);
+        File local = new File(localDirectory + localName);
+        File target = objectFile(bucketName, targetName);
+        String digest = ContentDigest.readSidecar(local);
+        if (digest != null && target.exists() && digest.equals(ContentDigest.readSidecar(target))) {
+            System.out.println("upload skipped, " + targetName + " is unchanged");
+            return false;
+        }
+        target.getParentFile().mkdirs();
+        replace(local, target);
+        if (digest != null) {
+            ContentDigest.writeSidecar(target, digest);
+        }
+        else {
+            ContentDigest.sidecar(target).delete();
+        }
+        System.out.println("upload done");
+        return true;
+    }
+
+    @Override
+    public String download(String bucketName, String remoteName, String localName) throws Exception {
+        System.out.println("download begin remoteName=" + remoteName + ", localName=" + localName);
+        File source = objectFile(bucketName, remoteName);
+        if (!source.isFile()) {
+            throw new FileNotFoundException(source.getPath());
+        }
+        replace(source, new File(localDirectory + localName));
+        System.out.println("download done");
+        return hostSpecificTaskList;
+    }
+
+    @Override
+    public String downloadRouted(String bucketName, String remoteName, String localName) throws Exception {
+        return download(bucketName, remoteName, localName);
+    }
+
+    @Override
+    public void deleteLocalFile(String fileName) {
+        System.out.println("deleteLocalActivity begin fileName=" + fileName);
+        File f = new File(localDirectory + fileName);
+        f.delete();
+        ContentDigest.sidecar(f).delete();
+        System.out.println("deleteLocalActivity done");
+    }
+
+    File objectFile(String bucketName, String key) throws IOException {
+        File bucket = new File(rootDirectory, bucketName);
+        File object = new File(bucket, key);
+        // Keys such as "../x" must not escape the bucket
+        if (!object.getCanonicalPath().startsWith(bucket.getCanonicalPath() + File.separator)) {
+            throw new IllegalArgumentException("Key outside of bucket " + bucketName + ": " + key);
+        }
+        return object;
+    }
+
+    /**
+     * Makes the target a link to or a copy of the source, switching to the
+     * new content atomically
+     */
+    static void replace(File source, File target) throws IOException {
+        // Unique across the threads and hosts sharing the folder, freed again for the link
+        File temp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(), target.getName() + ".",
+                ".tmp").toFile();
+        try {
+            try {
+                Files.delete(temp.toPath());
+                Files.createLink(temp.toPath(), source.toPath());
+            }
+            catch (IOException e) {
+                // Different volumes or no link support
+                LocalFileIO.copy(source, temp);
+            }
+            catch (UnsupportedOperationException e) {
+                LocalFileIO.copy(source, temp);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+}
@@ -15,12 +15,19 @@
 package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContext;
 import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProvider;
 import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProviderImpl;
@@ -34,6 +41,26 @@ public class SimpleStoreActivitiesS3Impl implements SimpleStoreActivities {
 
     private static final int HEARTBEAT_INTERVAL = 60000;
 
+    private static final long DEFAULT_DOWNLOAD_PART_SIZE = 16 * 1024 * 1024;
+
+    private static final int DEFAULT_DOWNLOAD_CONCURRENCY = 4;
+
+    private static final long DEFAULT_UPLOAD_PART_SIZE = 16 * 1024 * 1024;
+
+    private static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+
+    /**
+     * Suffix of the file that records the multipart upload of a local file so
+     * that a retried upload can resume it
+     */
+    static final String UPLOAD_JOURNAL_SUFFIX = ".upload";
+
+    /**
+     * Suffix of the file that records how much of a partially downloaded
+     * file is durable so that a retried download can continue from there
+     */
+    static final String DOWNLOAD_JOURNAL_SUFFIX = ".download";
+
     private final ActivityExecutionContextProvider contextProvider = new ActivityExecutionContextProviderImpl();
 
     private final AmazonS3 s3Client;
@@ -42,15 +69,53 @@ public class SimpleStoreActivitiesS3Impl implements SimpleStoreActivities {
 
     private final String hostSpecificTaskList;
 
+    private final ParallelRangeDownloader downloader;
+
+    private final ParallelMultipartUploader uploader;
+
+    private final LocalObjectCache objectCache;
+
     public SimpleStoreActivitiesS3Impl(AmazonS3 s3Client, String localDirectory, String taskList) {
+        this(s3Client, localDirectory, taskList, DEFAULT_DOWNLOAD_PART_SIZE, DEFAULT_DOWNLOAD_CONCURRENCY,
+                DEFAULT_UPLOAD_PART_SIZE, DEFAULT_UPLOAD_CONCURRENCY, null);
+    }
+
+    /**
+     * @param downloadPartSize
+     *            Size of the byte ranges fetched by download
+     * @param downloadConcurrency
+     *            Number of ranges of a single object fetched concurrently
+     * @param uploadPartSize
+     *            Size of the multipart upload parts, files not larger than
+     *            that are uploaded with a single PUT
+     * @param uploadConcurrency
+     *            Number of parts of a single file uploaded concurrently
+     * @param objectCache
+     *            Cache of previously downloaded objects or null to always
+     *            download
+     */
+    public SimpleStoreActivitiesS3Impl(AmazonS3 s3Client, String localDirectory, String taskList, long downloadPartSize,
+            int downloadConcurrency, long uploadPartSize, int uploadConcurrency, LocalObjectCache objectCache) {
         this.s3Client = s3Client;
+        this.objectCache = objectCache;
         this.localDirectory = localDirectory;
         this.hostSpecificTaskList = taskList;
+        ExecutorService transferExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "s3-transfer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.downloader = new ParallelRangeDownloader(s3Client, transferExecutor, downloadPartSize, downloadConcurrency);
+        this.uploader = new ParallelMultipartUploader(s3Client, transferExecutor, uploadPartSize, uploadConcurrency);
     }
 
     @Override
-    public void upload(String bucketName, String localName, String targetName) {
-        uploadFileToS3(bucketName, localDirectory + localName, targetName);
+    public boolean upload(String bucketName, String localName, String targetName) throws Exception {
+        return uploadFileToS3(bucketName, localDirectory + localName, targetName);
     }
 
     /**
@@ -67,14 +132,86 @@ public class SimpleStoreActivitiesS3Impl implements SimpleStoreActivities {
      *            requirement to run this activity on the machine name passed
      *            in. We want to run this activity on the same box that ran the
      *            download.
-     * @return A Value object
+     * @return false if the object already had the content of the file
      */
 
-    private void uploadFileToS3(String bucket, String localName, String remoteName) {
+    private boolean uploadFileToS3(String bucket, String localName, String remoteName) throws IOException {
         System.out.println("uploadToS3 begin remoteName=" + remoteName + ", localName=" + localName);
         File f = new File(localName);
-        s3Client.putObject(bucket, remoteName, f);
+        String digest = ContentDigest.readSidecar(f);
+        if (digest != null && digest.equals(getRemoteDigest(bucket, remoteName))) {
+            System.out.println("uploadToS3 skipped, " + remoteName + " is unchanged");
+            return false;
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (digest != null) {
+            metadata.addUserMetadata(ContentDigest.METADATA_KEY, digest);
+        }
+        if (f.length() <= uploader.getPartSize()) {
+            s3Client.putObject(new PutObjectRequest(bucket, remoteName, f).withMetadata(metadata));
+        }
+        else {
+            final File journal = new File(localName + UPLOAD_JOURNAL_SUFFIX);
+            UploadCheckpoint previous = journal.exists() ? UploadCheckpoint.parse(readJournal(journal)) : null;
+            uploader.upload(bucket, remoteName, f, metadata, previous, new ParallelMultipartUploader.CheckpointListener() {
+
+                private long lastHeartbeatTime = System.currentTimeMillis();
+
+                @Override
+                public void checkpoint(UploadCheckpoint checkpoint) {
+                    writeJournal(journal, checkpoint.toString());
+                    lastHeartbeatTime = heartbeat(lastHeartbeatTime, checkpoint.toHeartbeatDetails());
+                }
+            });
+            journal.delete();
+        }
         System.out.println("uploadToS3 done");
+        return true;
+    }
+
+    /**
+     * @return digest recorded on the object or null if there is no object or
+     *         it has no digest
+     */
+    private String getRemoteDigest(String bucket, String remoteName) {
+        try {
+            return s3Client.getObjectMetadata(bucket, remoteName).getUserMetaDataOf(ContentDigest.METADATA_KEY);
+        }
+        catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static String readJournal(File journal) throws IOException {
+        return new String(Files.readAllBytes(journal.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replaces the journal atomically so that a crash never leaves a torn
+     * checkpoint behind
+     */
+    private static void writeJournal(File journal, String content) {
+        Path temp = null;
+        try {
+            // Unique per attempt, a timed out attempt may still write while its retry runs on this host
+            temp = Files.createTempFile(journal.getAbsoluteFile().getParentFile().toPath(), journal.getName() + ".",
+                    ".tmp");
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        }
+        catch (IOException e) {
+            // Losing the journal only costs transferring some bytes again on retry
+            System.out.println("Could not write transfer journal " + journal + ": " + e.getMessage());
+        }
+        finally {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
     }
 
     @Override
@@ -82,6 +219,11 @@ public class SimpleStoreActivitiesS3Impl implements SimpleStoreActivities {
         return downloadFileFromS3(bucketName, remoteName, localDirectory + localName);
     }
 
+    @Override
+    public String downloadRouted(String bucketName, String remoteName, String localName) throws Exception {
+        return download(bucketName, remoteName, localName);
+    }
+
     /**
      * 
      * @param bucketName
@@ -99,30 +241,30 @@ public class SimpleStoreActivitiesS3Impl implements SimpleStoreActivities {
 
     private String downloadFileFromS3(String bucketName, String remoteName, String localName) throws IOException {
         System.out.println("downloadFileFromS3 begin remoteName=" + remoteName + ", localName=" + localName);
-        FileOutputStream f = new FileOutputStream(localName);
-        try {
-            S3Object obj = s3Client.getObject(bucketName, remoteName);
-            InputStream inputStream = obj.getObjectContent();
-            long totalSize = obj.getObjectMetadata().getContentLength();
-
-            try {
-                long totalRead = 0;
-                int read = 0;
-                byte[] bytes = new byte[1024];
-                long lastHeartbeatTime = System.currentTimeMillis();
-                while ((read = inputStream.read(bytes)) != -1) {
-                    totalRead += read;
-                    f.write(bytes, 0, read);
-                    int progress = (int) (totalRead / totalSize * 100);
-                    lastHeartbeatTime = heartbeat(lastHeartbeatTime, progress);
-                }
-            }
-            finally {
-                inputStream.close();
+        final File journal = new File(localName + DOWNLOAD_JOURNAL_SUFFIX);
+        if (objectCache != null) {
+            // Only the HEAD is paid when the object did not change since it was cached
+            ObjectMetadata metadata = s3Client.getObjectMetadata(bucketName, remoteName);
+            if (objectCache.get(bucketName, remoteName, metadata.getETag(), new File(localName))) {
+                journal.delete();
+                System.out.println("downloadFileFromS3 done from cache");
+                return hostSpecificTaskList;
             }
         }
-        finally {
-            f.close();
+        DownloadCheckpoint previous = journal.exists() ? DownloadCheckpoint.parse(readJournal(journal)) : null;
+        ObjectMetadata metadata = downloader.download(bucketName, remoteName, new File(localName), previous, new ParallelRangeDownloader.ProgressListener() {
+
+            private long lastHeartbeatTime = System.currentTimeMillis();
+
+            @Override
+            public void progress(long bytesTransferred, long totalBytes, DownloadCheckpoint checkpoint) {
+                writeJournal(journal, checkpoint.toString());
+                lastHeartbeatTime = heartbeat(lastHeartbeatTime, checkpoint.toHeartbeatDetails(bytesTransferred));
+            }
+        });
+        journal.delete();
+        if (objectCache != null) {
+            objectCache.put(bucketName, remoteName, metadata.getETag(), new File(localName));
         }
         // Return hostname file was downloaded to        
         System.out.println("downloadFileFromS3 done");
@@ -150,21 +292,26 @@ public class SimpleStoreActivitiesS3Impl implements SimpleStoreActivities {
         System.out.println("deleteLocalActivity begin fileName=" + fileName);
         File f = new File(fileName);
         f.delete();
+        new File(fileName + UPLOAD_JOURNAL_SUFFIX).delete();
+        new File(fileName + DOWNLOAD_JOURNAL_SUFFIX).delete();
+        ContentDigest.sidecar(f).delete();
 
         System.out.println("deleteLocalActivity done");
     }
 
     /**
-     * Heartbeat every 5 minutes. It is not a good idea to heartbeat too
+     * Heartbeat every minute. It is not a good idea to heartbeat too
      * frequently as each noteActivityProgress event ends up eating history
      * events count.
      * 
+     * @param details
+     *            Progress details recorded with the heartbeat
      * @return time of the last heartbeat
      */
-    private long heartbeat(long lastHeartbeatTime, int progress) {
+    private long heartbeat(long lastHeartbeatTime, String details) {
         if (System.currentTimeMillis() - lastHeartbeatTime > HEARTBEAT_INTERVAL) {
             ActivityExecutionContext context = contextProvider.getActivityExecutionContext();
-            context.recordActivityHeartbeat(Integer.toString((progress)));
+            context.recordActivityHeartbeat(details);
             lastHeartbeatTime = System.currentTimeMillis();
         }
         return lastHeartbeatTime;
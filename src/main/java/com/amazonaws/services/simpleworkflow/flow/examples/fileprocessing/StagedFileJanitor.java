@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
+import com.amazonaws.services.simpleworkflow.model.ExecutionTimeFilter;
+import com.amazonaws.services.simpleworkflow.model.ListOpenWorkflowExecutionsRequest;
+import com.amazonaws.services.simpleworkflow.model.WorkflowExecutionInfo;
+import com.amazonaws.services.simpleworkflow.model.WorkflowExecutionInfos;
+
+/**
+ * Removes staged files left behind by workflow runs that are no longer open.
+ * Staged files are deleted by the workflow itself once it is done with them,
+ * which never happens when the run times out or the host restarts in the
+ * middle of it.
+ * <p>
+ * Files in the local folder are grouped by the runId they are named after and
+ * the open executions of the domain are listed page by page. Files of runs
+ * missing from that list are deleted. Files younger than a minimum age are
+ * left alone, which covers runs started after the listing as well as the
+ * listing lagging behind new executions. Deletes are paced to a maximum
+ * number of bytes per second so the janitor does not compete with running
+ * transfers for the disk.
+ */
+public class StagedFileJanitor implements Runnable {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final AmazonSimpleWorkflow swfService;
+
+    private final String domain;
+
+    private final File localFolder;
+
+    private final long minAgeMillis;
+
+    private final long maxBytesPerSecond;
+
+    public StagedFileJanitor(AmazonSimpleWorkflow swfService, String domain, String localFolder, long minAgeMillis,
+            long maxBytesPerSecond) {
+        if (maxBytesPerSecond <= 0) {
+            throw new IllegalArgumentException("maxBytesPerSecond must be positive: " + maxBytesPerSecond);
+        }
+        this.swfService = swfService;
+        this.domain = domain;
+        this.localFolder = new File(localFolder);
+        this.minAgeMillis = minAgeMillis;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Map<String, List<File>> staged = indexStagedFiles(localFolder.listFiles(), System.currentTimeMillis()
+                    - minAgeMillis);
+            if (staged.isEmpty()) {
+                return;
+            }
+            staged.keySet().removeAll(listOpenRunIds());
+            if (!staged.isEmpty()) {
+                delete(staged);
+            }
+        }
+        catch (AmazonClientException e) {
+            // Nothing is deleted without a complete list of open runs
+            System.out.println("Could not list open executions: " + e.getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param cutoff
+     *            Files modified at or after this time are skipped
+     * @return staged files modified before the cutoff by the runId owning them
+     */
+    static Map<String, List<File>> indexStagedFiles(File[] files, long cutoff) {
+        Map<String, List<File>> staged = new LinkedHashMap<String, List<File>>();
+        if (files == null) {
+            return staged;
+        }
+        for (File file : files) {
+            // Folders such as the object cache are not staged files
+            int separator = file.getName().indexOf('_');
+            if (!file.isFile() || separator <= 0 || file.lastModified() >= cutoff) {
+                continue;
+            }
+            String runId = file.getName().substring(0, separator);
+            List<File> runFiles = staged.get(runId);
+            if (runFiles == null) {
+                runFiles = new ArrayList<File>();
+                staged.put(runId, runFiles);
+            }
+            runFiles.add(file);
+        }
+        return staged;
+    }
+
+    private Set<String> listOpenRunIds() {
+        Set<String> runIds = new HashSet<String>();
+        ListOpenWorkflowExecutionsRequest request = new ListOpenWorkflowExecutionsRequest().withDomain(domain)
+                .withStartTimeFilter(new ExecutionTimeFilter().withOldestDate(new Date(0)))
+                .withMaximumPageSize(PAGE_SIZE);
+        do {
+            WorkflowExecutionInfos page = swfService.listOpenWorkflowExecutions(request);
+            for (WorkflowExecutionInfo info : page.getExecutionInfos()) {
+                runIds.add(info.getExecution().getRunId());
+            }
+            request.setNextPageToken(page.getNextPageToken());
+        }
+        while (request.getNextPageToken() != null);
+        return runIds;
+    }
+
+    private void delete(Map<String, List<File>> orphans) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long deletedBytes = 0;
+        int deletedFiles = 0;
+        for (Map.Entry<String, List<File>> run : orphans.entrySet()) {
+            for (File file : run.getValue()) {
+                long length = file.length();
+                if (!file.delete()) {
+                    continue;
+                }
+                deletedBytes += length;
+                deletedFiles++;
+                long wait = deletedBytes * 1000 / maxBytesPerSecond - (System.currentTimeMillis() - start);
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+        }
+        System.out.println("Deleted " + deletedFiles + " staged files (" + deletedBytes + " bytes) of "
+                + orphans.size() + " closed runs");
+    }
+
+}
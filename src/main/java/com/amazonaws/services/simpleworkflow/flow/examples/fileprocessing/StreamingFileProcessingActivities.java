@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Activities;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrationOptions;
+import com.amazonaws.services.simpleworkflow.flow.annotations.ExponentialRetry;
+
+/**
+ * Contract for file processing activities that never stage the file on the
+ * local disk of the worker
+ */
+@Activities(version = "1.0")
+@ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 60, defaultTaskStartToCloseTimeoutSeconds = 3600)
+public interface StreamingFileProcessingActivities {
+
+    /**
+     * Downloads, zips and uploads the file in a single pass.
+     * 
+     * @param sourceBucketName
+     *          Name of S3 bucket that contains the file to process
+     * @param sourceFilename
+     *          Key of the file to process
+     * @param targetBucketName
+     *          Name of S3 bucket to upload the zip file to
+     * @param targetFilename
+     *          Key of the zip file
+     * @return Name of the task list of the box that processed the file
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
+    public String processFileStreaming(String sourceBucketName, String sourceFilename, String targetBucketName,
+            String targetFilename) throws Exception;
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContext;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProvider;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProviderImpl;
+
+/**
+ * This implementation of StreamingFileProcessingActivities pipes the S3 object
+ * through a {@link ZipOutputStream} straight into a multipart upload. Only a
+ * bounded number of part buffers is held in memory and nothing is written to
+ * the local disk.
+ */
+public class StreamingFileProcessingActivitiesZipImpl implements StreamingFileProcessingActivities {
+
+    private static final int HEARTBEAT_INTERVAL = 60000;
+
+    private static final int BUFFER = 64 * 1024;
+
+    private final ActivityExecutionContextProvider contextProvider = new ActivityExecutionContextProviderImpl();
+
+    private final AmazonS3 s3Client;
+
+    private final String hostSpecificTaskList;
+
+    private final int partSize;
+
+    private final int maxInFlightParts;
+
+    private final ExecutorService uploadExecutor;
+
+    public StreamingFileProcessingActivitiesZipImpl(AmazonS3 s3Client, String taskList, int partSize, int maxInFlightParts) {
+        this.s3Client = s3Client;
+        this.hostSpecificTaskList = taskList;
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.uploadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "streaming-upload");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public String processFileStreaming(String sourceBucketName, String sourceFilename, String targetBucketName,
+            String targetFilename) throws Exception {
+        System.out.println("processFileStreaming activity begin.  source=" + sourceBucketName + "/" + sourceFilename
+                + ", target=" + targetBucketName + "/" + targetFilename);
+        S3Object obj = s3Client.getObject(sourceBucketName, sourceFilename);
+        S3ObjectInputStream inputStream = obj.getObjectContent();
+        long totalSize = obj.getObjectMetadata().getContentLength();
+        S3MultipartOutputStream upload = null;
+        boolean completed = false;
+        try {
+            upload = new S3MultipartOutputStream(s3Client, targetBucketName, targetFilename,
+                    partSizeFor(partSize, totalSize), maxInFlightParts, uploadExecutor);
+            ZipOutputStream out = new ZipOutputStream(upload);
+            out.putNextEntry(new ZipEntry(new File(sourceFilename).getName()));
+            long totalRead = 0;
+            int read;
+            byte[] data = new byte[BUFFER];
+            long lastHeartbeatTime = System.currentTimeMillis();
+            while ((read = inputStream.read(data)) != -1) {
+                out.write(data, 0, read);
+                totalRead += read;
+                lastHeartbeatTime = heartbeat(lastHeartbeatTime, totalRead, totalSize);
+            }
+            // Closing the zip stream completes the multipart upload
+            out.close();
+            completed = true;
+        }
+        finally {
+            if (!completed) {
+                // Do not drain the rest of the object just to close the connection
+                inputStream.abort();
+                if (upload != null) {
+                    upload.abort();
+                }
+            }
+            else {
+                inputStream.close();
+            }
+        }
+        System.out.println("processFileStreaming done");
+        return hostSpecificTaskList;
+    }
+
+    /**
+     * Grows the part size so that the zip of the whole source fits in the
+     * parts S3 accepts, instead of failing after most of it was uploaded.
+     * Deflate expands incompressible data by far less than a percent.
+     */
+    static int partSizeFor(int partSize, long totalSize) {
+        long maximumZipSize = totalSize + totalSize / 100 + BUFFER;
+        long minimumPartSize = (maximumZipSize + S3MultipartOutputStream.MAXIMUM_PARTS - 1)
+                / S3MultipartOutputStream.MAXIMUM_PARTS;
+        return (int) Math.max(partSize, minimumPartSize);
+    }
+
+    /**
+     * Heartbeat every minute with the percentage of the source consumed so
+     * far.
+     * 
+     * @return time of the last heartbeat
+     */
+    private long heartbeat(long lastHeartbeatTime, long totalRead, long totalSize) {
+        if (System.currentTimeMillis() - lastHeartbeatTime > HEARTBEAT_INTERVAL) {
+            ActivityExecutionContext context = contextProvider.getActivityExecutionContext();
+            int progress = totalSize == 0 ? 100 : (int) (totalRead * 100 / totalSize);
+            context.recordActivityHeartbeat(Integer.toString(progress));
+            lastHeartbeatTime = System.currentTimeMillis();
+        }
+        return lastHeartbeatTime;
+    }
+
+}
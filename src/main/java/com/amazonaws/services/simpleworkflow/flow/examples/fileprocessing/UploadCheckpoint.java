@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Progress of a multipart upload: the upload id and the ETags of the parts S3
+ * has acknowledged. Serialized to a compact single line so that it fits in
+ * activity heartbeat details.
+ * <p>
+ * Format: <code>uploadId;partSize;fileLength;part:etag,part:etag,...</code>
+ */
+public class UploadCheckpoint {
+
+    /**
+     * Heartbeat details are limited to 2048 characters by SWF
+     */
+    static final int MAX_DETAILS_LENGTH = 2048;
+
+    private final String uploadId;
+
+    private final long partSize;
+
+    private final long fileLength;
+
+    private final SortedMap<Integer, String> completedParts = new TreeMap<Integer, String>();
+
+    public UploadCheckpoint(String uploadId, long partSize, long fileLength) {
+        this.uploadId = uploadId;
+        this.partSize = partSize;
+        this.fileLength = fileLength;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public int getPartCount() {
+        return (int) Math.max(1, (fileLength + partSize - 1) / partSize);
+    }
+
+    public synchronized void partCompleted(int partNumber, String eTag) {
+        completedParts.put(partNumber, eTag);
+    }
+
+    public synchronized SortedMap<Integer, String> getCompletedParts() {
+        return new TreeMap<Integer, String>(completedParts);
+    }
+
+    /**
+     * @return true if this checkpoint can be used to resume an upload of a
+     *         file with the given length in parts of the given size
+     */
+    public boolean matches(long partSize, long fileLength) {
+        return this.partSize == partSize && this.fileLength == fileLength;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(uploadId).append(';').append(partSize).append(';').append(fileLength).append(';');
+        boolean first = true;
+        for (Map.Entry<Integer, String> part : completedParts.entrySet()) {
+            if (!first) {
+                result.append(',');
+            }
+            result.append(part.getKey()).append(':').append(part.getValue());
+            first = false;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Same as {@link #toString()} but drops the part list when it does not
+     * fit into heartbeat details. The upload id alone is enough to resume as
+     * the parts can be listed from S3.
+     */
+    public String toHeartbeatDetails() {
+        String details = toString();
+        if (details.length() <= MAX_DETAILS_LENGTH) {
+            return details;
+        }
+        return uploadId + ";" + partSize + ";" + fileLength + ";";
+    }
+
+    /**
+     * @return parsed checkpoint or null if the value is not a checkpoint
+     */
+    public static UploadCheckpoint parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.trim().split(";", -1);
+        if (fields.length != 4 || fields[0].isEmpty()) {
+            return null;
+        }
+        try {
+            UploadCheckpoint checkpoint = new UploadCheckpoint(fields[0], Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]));
+            if (!fields[3].isEmpty()) {
+                for (String part : fields[3].split(",")) {
+                    int separator = part.indexOf(':');
+                    checkpoint.partCompleted(Integer.parseInt(part.substring(0, separator)), part.substring(separator + 1));
+                }
+            }
+            return checkpoint;
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+}
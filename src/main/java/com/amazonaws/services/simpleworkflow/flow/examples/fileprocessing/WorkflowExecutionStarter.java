@@ -14,7 +14,9 @@
  */
 package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
 
+import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
+import com.amazonaws.services.simpleworkflow.flow.StartWorkflowOptions;
 import com.amazonaws.services.simpleworkflow.flow.examples.common.ConfigHelper;
 import com.amazonaws.services.simpleworkflow.model.WorkflowExecution;
 
@@ -40,10 +42,55 @@ public class WorkflowExecutionStarter {
         String sourceFilename = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_SOURCEFILENAME_KEY);
         String targetBucketName = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_TARGETBUCKETNAME_KEY);
         String targetFilename = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_TARGETFILENAME_KEY);
+        FileProcessingOptions options = new FileProcessingOptions();
+        String mode = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_PROCESSINGMODE_KEY);
+        if (mode != null) {
+            options.setMode(ProcessingMode.valueOf(mode.trim()));
+        }
+        String compressionThreads = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_COMPRESSIONTHREADS_KEY);
+        if (compressionThreads != null) {
+            options.setCompressionThreads(Integer.parseInt(compressionThreads.trim()));
+        }
+        String compressionLevel = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_COMPRESSIONLEVEL_KEY);
+        if (compressionLevel != null) {
+            options.setCompressionLevel(Integer.parseInt(compressionLevel.trim()));
+        }
+        String splitThreshold = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_SPLITTHRESHOLD_MB_KEY);
+        if (splitThreshold != null) {
+            options.setSplitThresholdBytes(Long.parseLong(splitThreshold.trim()) * 1024 * 1024);
+        }
+        String segmentSize = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_SEGMENTSIZE_MB_KEY);
+        if (segmentSize != null) {
+            options.setSegmentSizeBytes(Long.parseLong(segmentSize.trim()) * 1024 * 1024);
+        }
+        String routeByHostLoad = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_ROUTEBYHOSTLOAD_KEY);
+        if (routeByHostLoad != null) {
+            options.setRouteByHostLoad(Boolean.parseBoolean(routeByHostLoad.trim()));
+        }
+        String segmentTimeout = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_SEGMENTTIMEOUT_SECONDS_KEY);
+        if (segmentTimeout != null) {
+            options.setSegmentTimeoutSeconds(Integer.parseInt(segmentTimeout.trim()));
+        }
+        String executionTimeout = configHelper.getValueFromConfig(FileProcessingConfigKeys.WORKFLOW_INPUT_EXECUTIONTIMEOUT_SECONDS_KEY);
+        if (executionTimeout != null) {
+            options.setExecutionTimeoutSeconds(Integer.parseInt(executionTimeout.trim()));
+        }
         
         FileProcessingWorkflowClientExternalFactory clientFactory = new FileProcessingWorkflowClientExternalFactoryImpl(swfService, domain);
         FileProcessingWorkflowClientExternal workflow = clientFactory.getClient();
-        workflow.processFile(sourceBucketName, sourceFilename, targetBucketName, targetFilename);
+        long executionTimeoutSeconds = options.getExecutionTimeoutSeconds();
+        if (options.getSplitThresholdBytes() > 0 && options.getMode() == ProcessingMode.STAGED) {
+            // The run cannot extend its own timeout once it sees how many segments the file has
+            AmazonS3 s3 = configHelper.createS3Client();
+            long contentLength = s3.getObjectMetadata(sourceBucketName, sourceFilename).getContentLength();
+            if (contentLength > options.getSplitThresholdBytes()) {
+                executionTimeoutSeconds = Math.max(executionTimeoutSeconds,
+                        options.computeSplitExecutionTimeoutSeconds(contentLength));
+            }
+        }
+        StartWorkflowOptions startOptions = new StartWorkflowOptions()
+                .withExecutionStartToCloseTimeoutSeconds(executionTimeoutSeconds);
+        workflow.processFile(sourceBucketName, sourceFilename, targetBucketName, targetFilename, options, startOptions);
 
         // WorkflowExecution is available after workflow creation 
         WorkflowExecution workflowExecution = workflow.getWorkflowExecution();
@@ -37,6 +37,7 @@ public class WorkflowHost {
 
         final WorkflowWorker worker = new WorkflowWorker(swfService, domain, DECISION_TASK_LIST);
         worker.addWorkflowImplementationType(FileProcessingWorkflowZipImpl.class);
+        worker.addWorkflowImplementationType(BatchFileProcessingWorkflowImpl.class);
         worker.start();
 
         System.out.println("Workflow Host Service Started...");
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Writes a zip archive whose entry data is produced by the caller. Unlike
+ * {@link java.util.zip.ZipOutputStream} it accepts data that is already
+ * deflated (for example by several threads) and stored entries whose CRC was
+ * computed up front.
+ * <p>
+ * Deflated entries are written with a data descriptor so their CRC and sizes
+ * are only needed once the data is written, which keeps the writer usable on
+ * streams that cannot seek. ZIP64 records are added only when a size, offset
+ * or the number of entries does not fit the classic format, the same way
+ * {@link java.util.zip.ZipOutputStream} does it.
+ */
+public class ZipStreamWriter implements Closeable {
+
+    public static final int STORED = 0;
+
+    public static final int DEFLATED = 8;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private static class Entry {
+
+        byte[] name;
+
+        int method;
+
+        int flags;
+
+        long dosTime;
+
+        long crc;
+
+        long compressedSize;
+
+        long size;
+
+        long offset;
+
+    }
+
+    private final CountingOutputStream out;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    private Entry current;
+
+    private long dataStart;
+
+    private boolean closed;
+
+    public ZipStreamWriter(OutputStream out) {
+        this.out = new CountingOutputStream(out);
+    }
+
+    /**
+     * Starts an entry whose raw deflate data (no zlib header) is written to
+     * the returned stream. Must be followed by
+     * {@link #endDeflatedEntry(long, long)}.
+     */
+    public OutputStream beginDeflatedEntry(String name, long time) throws IOException {
+        Entry entry = newEntry(name, time, DEFLATED);
+        entry.flags |= FLAG_DATA_DESCRIPTOR;
+        writeLocalHeader(entry);
+        return entryStream();
+    }
+
+    /**
+     * Completes the current deflated entry with the CRC32 and the size of the
+     * uncompressed data.
+     */
+    public void endDeflatedEntry(long crc, long size) throws IOException {
+        if (current == null || current.method != DEFLATED) {
+            throw new IllegalStateException("No deflated entry in progress");
+        }
+        current.crc = crc;
+        current.size = size;
+        current.compressedSize = out.getCount() - dataStart;
+        boolean zip64 = current.size >= ZIP64_MAGIC || current.compressedSize >= ZIP64_MAGIC;
+        writeInt(0x08074b50L);
+        writeInt(current.crc);
+        if (zip64) {
+            writeLong(current.compressedSize);
+            writeLong(current.size);
+        }
+        else {
+            writeInt(current.compressedSize);
+            writeInt(current.size);
+        }
+        entries.add(current);
+        current = null;
+    }
+
+    /**
+     * Counts entry data that is written to the destination by other means,
+     * for example when the archive is assembled from pieces stored apart.
+     */
+    public void skipEntryData(long count) {
+        if (current == null) {
+            throw new IllegalStateException("No entry in progress");
+        }
+        out.skip(count);
+    }
+
+    /**
+     * Starts an entry stored without compression. Exactly <code>size</code>
+     * bytes with the given CRC32 must be written to the returned stream
+     * before {@link #endStoredEntry()} is called.
+     */
+    public OutputStream beginStoredEntry(String name, long time, long crc, long size) throws IOException {
+        Entry entry = newEntry(name, time, STORED);
+        entry.crc = crc;
+        entry.size = size;
+        entry.compressedSize = size;
+        writeLocalHeader(entry);
+        return entryStream();
+    }
+
+    public void endStoredEntry() throws IOException {
+        if (current == null || current.method != STORED) {
+            throw new IllegalStateException("No stored entry in progress");
+        }
+        long written = out.getCount() - dataStart;
+        if (written != current.size) {
+            throw new IOException("Stored entry declared " + current.size + " bytes but " + written + " were written");
+        }
+        entries.add(current);
+        current = null;
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (current != null) {
+            throw new IllegalStateException("Entry in progress");
+        }
+        long centralDirectoryOffset = out.getCount();
+        for (Entry entry : entries) {
+            writeCentralDirectoryHeader(entry);
+        }
+        long centralDirectorySize = out.getCount() - centralDirectoryOffset;
+        writeEndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+        out.close();
+        closed = true;
+    }
+
+    private Entry newEntry(String name, long time, int method) {
+        if (current != null) {
+            throw new IllegalStateException("Entry in progress");
+        }
+        Entry entry = new Entry();
+        entry.name = name.getBytes(StandardCharsets.UTF_8);
+        if (entry.name.length != name.length()) {
+            entry.flags |= FLAG_UTF8;
+        }
+        entry.method = method;
+        entry.dosTime = toDosTime(time);
+        entry.offset = out.getCount();
+        current = entry;
+        return entry;
+    }
+
+    private OutputStream entryStream() {
+        dataStart = out.getCount();
+        // Closing the entry stream must not close the archive
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        boolean zip64 = entry.size >= ZIP64_MAGIC;
+        writeInt(0x04034b50L);
+        writeShort(zip64 ? 45 : 20);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            writeInt(0);
+            writeInt(0);
+            writeInt(0);
+        }
+        else {
+            writeInt(entry.crc);
+            writeInt(zip64 ? ZIP64_MAGIC : entry.compressedSize);
+            writeInt(zip64 ? ZIP64_MAGIC : entry.size);
+        }
+        writeShort(entry.name.length);
+        writeShort(zip64 ? 20 : 0);
+        out.write(entry.name);
+        if (zip64) {
+            writeShort(0x0001);
+            writeShort(16);
+            writeLong(entry.size);
+            writeLong(entry.compressedSize);
+        }
+    }
+
+    private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+        boolean sizeOverflow = entry.size >= ZIP64_MAGIC;
+        boolean compressedSizeOverflow = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetOverflow = entry.offset >= ZIP64_MAGIC;
+        int extraLength = (sizeOverflow ? 8 : 0) + (compressedSizeOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+        int version = zip64 ? 45 : 20;
+        writeInt(0x02014b50L);
+        writeShort(version);
+        writeShort(version);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(compressedSizeOverflow ? ZIP64_MAGIC : entry.compressedSize);
+        writeInt(sizeOverflow ? ZIP64_MAGIC : entry.size);
+        writeShort(entry.name.length);
+        writeShort(zip64 ? extraLength + 4 : 0);
+        writeShort(0); // comment length
+        writeShort(0); // disk number start
+        writeShort(0); // internal attributes
+        writeInt(0); // external attributes
+        writeInt(offsetOverflow ? ZIP64_MAGIC : entry.offset);
+        out.write(entry.name);
+        if (zip64) {
+            writeShort(0x0001);
+            writeShort(extraLength);
+            if (sizeOverflow) {
+                writeLong(entry.size);
+            }
+            if (compressedSizeOverflow) {
+                writeLong(entry.compressedSize);
+            }
+            if (offsetOverflow) {
+                writeLong(entry.offset);
+            }
+        }
+    }
+
+    private void writeEndOfCentralDirectory(long offset, long size) throws IOException {
+        int count = entries.size();
+        boolean zip64 = count >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64RecordOffset = out.getCount();
+            writeInt(0x06064b50L);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(size);
+            writeLong(offset);
+            // Locator
+            writeInt(0x07064b50L);
+            writeInt(0);
+            writeLong(zip64RecordOffset);
+            writeInt(1);
+        }
+        writeInt(0x06054b50L);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+        writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+        writeInt(Math.min(size, ZIP64_MAGIC));
+        writeInt(Math.min(offset, ZIP64_MAGIC));
+        writeShort(0);
+    }
+
+    /**
+     * Converts Java time to the MS-DOS date and time packed in a 32 bit value
+     */
+    static long toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xffff));
+        writeShort((int) ((value >>> 16) & 0xffff));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & 0xffffffffL);
+        writeInt(value >>> 32);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        void skip(long count) {
+            this.count += count;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+}
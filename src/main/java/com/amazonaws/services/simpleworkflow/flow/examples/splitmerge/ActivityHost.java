@@ -14,6 +14,7 @@
  */
 package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
@@ -38,7 +39,17 @@ public class ActivityHost {
         final ActivityWorker worker = new ActivityWorker(swfService, domain, ACTIVITIES_TASK_LIST);
 
         // Create activity implementations
-        AverageCalculatorActivitiesImpl avgCalcActivitiesImpl = new AverageCalculatorActivitiesImpl(s3Client);
+        String scanThreads = configHelper.getValueFromConfig(SplitMergeConfigKeys.SCAN_THREADS);
+        int threads = scanThreads == null ? 0 : Integer.parseInt(scanThreads.trim());
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        String subRangeSize = configHelper.getValueFromConfig(SplitMergeConfigKeys.SUB_RANGE_SIZE_MB);
+        long subRangeBytes = (subRangeSize == null ? 8 : Long.parseLong(subRangeSize.trim())) * 1024 * 1024;
+        String localDataFolder = configHelper.getValueFromConfig(SplitMergeConfigKeys.LOCAL_DATA_FOLDER);
+        AverageCalculatorActivitiesImpl avgCalcActivitiesImpl = new AverageCalculatorActivitiesImpl(s3Client,
+                createCache(configHelper), threads, subRangeBytes,
+                localDataFolder == null || localDataFolder.trim().isEmpty() ? null : new File(localDataFolder.trim()));
         worker.addActivitiesImplementation(avgCalcActivitiesImpl);
 
         worker.start();
@@ -70,4 +81,20 @@ public class ActivityHost {
 
     }
 
+    /**
+     * @return store of chunk results or null when no cache folder is
+     *         configured
+     */
+    private static ChunkResultCache createCache(ConfigHelper configHelper) {
+        String folder = configHelper.getValueFromConfig(SplitMergeConfigKeys.CACHE_FOLDER);
+        if (folder == null || folder.trim().isEmpty()) {
+            return null;
+        }
+        String maxEntries = configHelper.getValueFromConfig(SplitMergeConfigKeys.CACHE_MAX_ENTRIES);
+        ChunkResultCache cache = new ChunkResultCache(new File(folder.trim()),
+                maxEntries == null ? 100000 : Integer.parseInt(maxEntries.trim()));
+        System.out.println("Caching chunk results in " + folder.trim() + " (" + cache.getEntryCount() + " entries)");
+        return cache;
+    }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Statistics computed by a split-merge job and the parameters of those that
+ * need any
+ */
+public class AggregationOptions {
+
+    private List<AggregatorType> aggregators = new ArrayList<AggregatorType>();
+
+    private long histogramLowerBound;
+
+    private long histogramUpperBound = 1000000;
+
+    private int histogramBuckets = 10;
+
+    private double sketchRelativeAccuracy = 0.01;
+
+    private List<Double> quantiles = new ArrayList<Double>(Arrays.asList(0.5, 0.99));
+
+    /**
+     * @return empty aggregate holding the requested statistics
+     */
+    public PartialAggregate createAggregate() {
+        PartialAggregate aggregate = new PartialAggregate();
+        if (aggregators.contains(AggregatorType.MIN) || aggregators.contains(AggregatorType.MAX)) {
+            aggregate.setMinMax(new MinMaxAggregator());
+        }
+        if (aggregators.contains(AggregatorType.VARIANCE)) {
+            aggregate.setVariance(new VarianceAggregator());
+        }
+        if (aggregators.contains(AggregatorType.HISTOGRAM)) {
+            aggregate.setHistogram(new HistogramAggregator(histogramLowerBound, histogramUpperBound, histogramBuckets));
+        }
+        if (aggregators.contains(AggregatorType.QUANTILES)) {
+            aggregate.setQuantiles(new QuantileSketch(sketchRelativeAccuracy));
+        }
+        return aggregate;
+    }
+
+    public List<AggregatorType> getAggregators() {
+        return aggregators;
+    }
+
+    public void setAggregators(List<AggregatorType> aggregators) {
+        this.aggregators = aggregators;
+    }
+
+    public long getHistogramLowerBound() {
+        return histogramLowerBound;
+    }
+
+    public void setHistogramLowerBound(long histogramLowerBound) {
+        this.histogramLowerBound = histogramLowerBound;
+    }
+
+    public long getHistogramUpperBound() {
+        return histogramUpperBound;
+    }
+
+    public void setHistogramUpperBound(long histogramUpperBound) {
+        this.histogramUpperBound = histogramUpperBound;
+    }
+
+    public int getHistogramBuckets() {
+        return histogramBuckets;
+    }
+
+    public void setHistogramBuckets(int histogramBuckets) {
+        this.histogramBuckets = histogramBuckets;
+    }
+
+    public double getSketchRelativeAccuracy() {
+        return sketchRelativeAccuracy;
+    }
+
+    public void setSketchRelativeAccuracy(double sketchRelativeAccuracy) {
+        this.sketchRelativeAccuracy = sketchRelativeAccuracy;
+    }
+
+    /**
+     * @return quantiles reported from the sketch, 0.5 for the median
+     */
+    public List<Double> getQuantiles() {
+        return quantiles;
+    }
+
+    public void setQuantiles(List<Double> quantiles) {
+        this.quantiles = quantiles;
+    }
+
+}
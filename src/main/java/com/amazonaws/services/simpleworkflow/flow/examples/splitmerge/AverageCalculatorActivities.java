@@ -17,20 +17,51 @@ package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 import java.io.IOException;
 
 import com.amazonaws.services.simpleworkflow.flow.annotations.Activities;
-import com.amazonaws.services.simpleworkflow.flow.annotations.Activity;
 import com.amazonaws.services.simpleworkflow.flow.annotations.ActivityRegistrationOptions;
 import com.amazonaws.services.simpleworkflow.flow.annotations.ExponentialRetry;
 
-@Activities(version = "1.0")
+@Activities(version = "2.0")
 @ActivityRegistrationOptions(defaultTaskScheduleToStartTimeoutSeconds = 30, defaultTaskStartToCloseTimeoutSeconds = 30)
 public interface AverageCalculatorActivities {
 
-    @Activity(name = "computeDataSize")
-    int computeDataSizeForInputData(String bucketName, String filename);
+    long computeContentLength(String bucketName, String filename);
 
+    /**
+     * Aggregates the fixed size rows <code>startRow</code> (inclusive) to
+     * <code>endRow</code> (exclusive)
+     * 
+     * @param appendOnly
+     *            Whether the object only ever grows, so results cached for an
+     *            earlier version stay valid for the rows that existed then
+     */
     @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
-    int computeSumForChunk(String bucketName, String filename, int chunkNumber, int chunkSize) throws IOException;
+    PartialAggregate computeAggregateForRows(String bucketName, String filename, long startRow, long endRow,
+            AggregationOptions aggregation, boolean appendOnly) throws IOException;
 
-    void reportResult(double average);
+    /**
+     * Aggregates the rows starting between <code>start</code> (inclusive) and
+     * <code>end</code> (exclusive), reading past the end to finish the last
+     * one
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
+    PartialAggregate computeAggregateForRange(String bucketName, String filename, long start, long end,
+            AggregationOptions aggregation, boolean appendOnly) throws IOException;
+
+    /**
+     * @return bytes of values in a {@link BinaryFormat} input, read from its
+     *         header
+     */
+    long computeDataSizeForInputData(String bucketName, String filename) throws IOException;
+
+    /**
+     * Aggregates the rows of a {@link BinaryFormat} input whose values lie in
+     * units <code>start</code> (inclusive) to <code>end</code> (exclusive) of
+     * {@link SplitMode#BINARY}
+     */
+    @ExponentialRetry(initialRetryIntervalSeconds = 10, maximumAttempts = 10)
+    PartialAggregate computeAggregateForBinary(String bucketName, String filename, long start, long end,
+            AggregationOptions aggregation) throws IOException;
+
+    void reportResult(SplitMergeResult result);
     
 }
@@ -14,77 +14,639 @@
  */
 package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
 
+/**
+ * Scans chunks of the input object. A chunk larger than the sub-range size
+ * is halved until the parts are small enough, the parts are fetched and
+ * parsed concurrently on a {@link ForkJoinPool} and their aggregates merged,
+ * so one activity task keeps several cores and connections busy.
+ * <p>
+ * {@link BinaryFormat} inputs are read from a local copy through memory
+ * mapped buffers when the host has one, otherwise with ranged GETs.
+ */
 public class AverageCalculatorActivitiesImpl implements AverageCalculatorActivities {
 
-    private static final int ROW_SIZE = 7;
+    private static final int ROW_SIZE = SplitMode.FIXED_ROWS.getUnitSize();
+
+    /**
+     * Bytes read past the end of a range in one request to finish its last
+     * row, longer rows take further requests
+     */
+    private static final int ROW_LOOKAHEAD = 64 * 1024;
+
+    private static final int BINARY_UNIT = SplitMode.BINARY.getUnitSize();
+
+    /**
+     * Bytes of binary values read or mapped at once
+     */
+    private static final int BINARY_READ_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Bytes S3 transfers in about the time a GET takes to start
+     */
+    private static final long FOOTER_SKIP_BYTES = 1024 * 1024;
 
     private final AmazonS3 storage;
 
+    private final ThreadLocal<RowParser> parsers = new ThreadLocal<RowParser>() {
+
+        @Override
+        protected RowParser initialValue() {
+            return new RowParser();
+        }
+    };
+
+    private final ChunkResultCache cache;
+
+    private final ForkJoinPool scanPool;
+
+    private final long subRangeBytes;
+
+    private final File localDataFolder;
+
     public AverageCalculatorActivitiesImpl(AmazonS3 storage) {
+        this(storage, null, 1, Long.MAX_VALUE, null);
+    }
+
+    public AverageCalculatorActivitiesImpl(AmazonS3 storage, ChunkResultCache cache, int scanThreads, long subRangeBytes) {
+        this(storage, cache, scanThreads, subRangeBytes, null);
+    }
+
+    /**
+     * @param cache
+     *            Store of the aggregates of scanned chunks or null to always
+     *            scan
+     * @param scanThreads
+     *            Number of sub-ranges fetched and parsed at the same time,
+     *            shared by all activity tasks of the host. 1 scans every
+     *            chunk on the thread of its activity task.
+     * @param subRangeBytes
+     *            Size below which a chunk is not split further
+     * @param localDataFolder
+     *            Folder holding copies of binary inputs as
+     *            <code>bucket/key</code> or null to always read from S3
+     */
+    public AverageCalculatorActivitiesImpl(AmazonS3 storage, ChunkResultCache cache, int scanThreads,
+            long subRangeBytes, File localDataFolder) {
+        if (subRangeBytes < ROW_LOOKAHEAD) {
+            throw new IllegalArgumentException("subRangeBytes must be at least " + ROW_LOOKAHEAD + ": " + subRangeBytes);
+        }
         this.storage = storage;
+        this.cache = cache;
+        // The pool threads block on S3 reads, so they are also the number of concurrent requests
+        this.scanPool = scanThreads > 1 ? new ForkJoinPool(scanThreads) : null;
+        this.subRangeBytes = subRangeBytes;
+        this.localDataFolder = localDataFolder;
     }
 
     @Override
-    public int computeDataSizeForInputData(String bucketName, String filename) {
-        ObjectMetadata metadata = storage.getObjectMetadata(bucketName, filename);
-        long size = metadata.getContentLength();
-        return (int) size / ROW_SIZE;
+    public long computeContentLength(String bucketName, String filename) {
+        return storage.getObjectMetadata(bucketName, filename).getContentLength();
     }
 
     @Override
-    public int computeSumForChunk(String bucketName, String filename, int chunkNumber, int chunkSize) throws IOException {
-        int sum = 0;
-        int from = chunkNumber * chunkSize;
-        int to = from + chunkSize;
+    public PartialAggregate computeAggregateForRows(String bucketName, String filename, long startRow, long endRow,
+            AggregationOptions aggregation, boolean appendOnly) throws IOException {
+        ObjectMetadata metadata = null;
+        String cacheKey = null;
+        if (cache != null) {
+            metadata = storage.getObjectMetadata(bucketName, filename);
+            cacheKey = ChunkResultCache.key(bucketName, filename, appendOnly ? null : version(metadata), "rows",
+                    startRow, endRow, aggregation);
+            PartialAggregate cached = cache.get(cacheKey);
+            if (cached != null) {
+                System.out.printf("Cached sum from '%d' to '%d' is: '%d'\n", startRow + 1, endRow, cached.getSum());
+                return cached;
+            }
+        }
 
-        int offset = chunkNumber * chunkSize * ROW_SIZE;
-        int bytesToRead = chunkSize * ROW_SIZE;
+        ChunkScan chunk = new ChunkScan(bucketName, filename, aggregation, metadata, appendOnly, SplitMode.FIXED_ROWS);
+        PartialAggregate aggregate = scan(new ScanTask(chunk, startRow, endRow));
 
-        // Create a request to download content for computing the sum for this chunk
-        GetObjectRequest getRequest = new GetObjectRequest(bucketName, filename);
-        getRequest.setRange(offset, offset + bytesToRead - 1);
+        // The last row of an append only object may lack its newline and still be completed, so a chunk reaching
+        // the end of the object is not cached
+        if (cacheKey != null && (!appendOnly || endRow * ROW_SIZE < metadata.getContentLength())) {
+            cache.put(cacheKey, aggregate);
+        }
+        System.out.printf("Sum from '%d' to '%d' is: '%d'\n", startRow + 1, endRow, aggregate.getSum());
+        return aggregate;
+    }
+
+    @Override
+    public PartialAggregate computeAggregateForRange(String bucketName, String filename, long start, long end,
+            AggregationOptions aggregation, boolean appendOnly) throws IOException {
+        ObjectMetadata metadata = null;
+        String cacheKey = null;
+        if (cache != null) {
+            metadata = storage.getObjectMetadata(bucketName, filename);
+            cacheKey = ChunkResultCache.key(bucketName, filename, appendOnly ? null : version(metadata), "range",
+                    start, end, aggregation);
+            PartialAggregate cached = cache.get(cacheKey);
+            if (cached != null) {
+                System.out.printf("Cached sum of the %d rows starting in bytes '%d' to '%d' is: '%d'\n",
+                        cached.getCount(), start, end, cached.getSum());
+                return cached;
+            }
+        }
+
+        ChunkScan chunk = new ChunkScan(bucketName, filename, aggregation, metadata, appendOnly,
+                SplitMode.NEWLINE_ALIGNED);
+        PartialAggregate aggregate = scan(new ScanTask(chunk, start, end));
+
+        // A range ending with the object may gain rows or a longer last row by an append
+        if (cacheKey != null && (!appendOnly || !chunk.reachedEnd)) {
+            cache.put(cacheKey, aggregate);
+        }
+        System.out.printf("Sum of the %d rows starting in bytes '%d' to '%d' is: '%d'\n", aggregate.getCount(),
+                start, end, aggregate.getSum());
+        return aggregate;
+    }
+
+    @Override
+    public long computeDataSizeForInputData(String bucketName, String filename) throws IOException {
+        BinarySource source = openBinary(bucketName, filename);
+        try {
+            return source.header.dataSize();
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Not cached, a binary scan costs little more than the lookup once the
+     * footers cover the statistics
+     */
+    @Override
+    public PartialAggregate computeAggregateForBinary(String bucketName, String filename, long start, long end,
+            AggregationOptions aggregation) throws IOException {
+        BinarySource source = openBinary(bucketName, filename);
+        try {
+            ChunkScan chunk = new ChunkScan(bucketName, filename, aggregation, null, false, SplitMode.BINARY);
+            chunk.source = source;
+            BinaryFormat.Header header = source.header;
+            long endRow = endRow(header, end);
+            long first = header.rowOffset(Math.min(endRow, start * BINARY_UNIT / header.getValueWidth()));
+            // Up to the footer of the last block, a following block starts after it
+            source.prepare(first, header.rowOffset(endRow) + BinaryFormat.FOOTER_SIZE - first);
+            PartialAggregate aggregate = scan(new ScanTask(chunk, start, end));
+            System.out.printf("Sum of the %d binary rows in units '%d' to '%d' is: '%d'\n", aggregate.getCount(),
+                    start, end, aggregate.getSum());
+            return aggregate;
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    private PartialAggregate scan(ScanTask task) throws IOException {
+        try {
+            return scanPool == null ? task.invoke() : scanPool.invoke(task);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Parameters shared by the sub-ranges of a chunk
+     */
+    private static class ChunkScan {
+
+        final String bucketName;
+
+        final String filename;
+
+        final AggregationOptions aggregation;
+
+        final ObjectMetadata metadata;
+
+        final boolean appendOnly;
+
+        /**
+         * How the bounds of the chunk are counted
+         */
+        final SplitMode mode;
+
+        /**
+         * Input of a binary chunk
+         */
+        BinarySource source;
+
+        /**
+         * Set when a sub-range ran into the end of the object before the end
+         * of its last row
+         */
+        volatile boolean reachedEnd;
+
+        ChunkScan(String bucketName, String filename, AggregationOptions aggregation, ObjectMetadata metadata,
+                boolean appendOnly, SplitMode mode) {
+            this.bucketName = bucketName;
+            this.filename = filename;
+            this.aggregation = aggregation;
+            this.metadata = metadata;
+            this.appendOnly = appendOnly;
+            this.mode = mode;
+        }
+    }
+
+    /**
+     * Halves its part of the chunk until it is no larger than the sub-range
+     * size. Byte ranges can be cut anywhere as every part only owns the rows
+     * starting in it.
+     */
+    private class ScanTask extends RecursiveTask<PartialAggregate> {
+
+        private final ChunkScan chunk;
+
+        private final long start;
+
+        private final long end;
+
+        ScanTask(ChunkScan chunk, long start, long end) {
+            this.chunk = chunk;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected PartialAggregate compute() {
+            long bytes = (end - start) * chunk.mode.getUnitSize();
+            if (scanPool == null || bytes <= subRangeBytes) {
+                try {
+                    switch (chunk.mode) {
+                    case FIXED_ROWS:
+                        return scanRows(chunk, start, end);
+                    case BINARY:
+                        return scanBinary(chunk, start, end);
+                    default:
+                        return scanRange(chunk, start, end);
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            long middle = start + (end - start) / 2;
+            ScanTask first = new ScanTask(chunk, start, middle);
+            first.fork();
+            PartialAggregate aggregate = new ScanTask(chunk, middle, end).compute();
+            aggregate.merge(first.join());
+            return aggregate;
+        }
+    }
+
+    private PartialAggregate scanRows(ChunkScan chunk, long startRow, long endRow) throws IOException {
+        // The last row may lack its newline, S3 cuts the range at the end of the object
+        GetObjectRequest getRequest = new GetObjectRequest(chunk.bucketName, chunk.filename);
+        getRequest.setRange(startRow * ROW_SIZE, endRow * ROW_SIZE - 1);
 
         // Download content
-        S3Object obj = storage.getObject(getRequest);
+        S3Object obj = getObject(getRequest, chunk.metadata, chunk.appendOnly);
         InputStream inputStream = obj.getObjectContent();
-        InputStreamReader inputStreamReader = null;
-        BufferedReader reader = null;
+        RowParser parser = parsers.get();
+        parser.reset();
+        PartialAggregate aggregate = chunk.aggregation.createAggregate();
+        if (aggregate.needsValues()) {
+            parser.setValueListener(aggregate);
+        }
         try {
-            String line = null;
-            inputStreamReader = new InputStreamReader(inputStream);
-            reader = new BufferedReader(inputStreamReader);
-
             // Compute sum for downloaded content
-            while ((line = reader.readLine()) != null) {
-                sum += Integer.parseInt(line);
-            }
+            parser.parse(inputStream);
         }
         finally {
-            if (reader != null)
-                reader.close();
-            if (inputStreamReader != null)
-                inputStreamReader.close();
-            if (inputStream != null)
+            inputStream.close();
+        }
+        aggregate.setSum(parser.getSum());
+        aggregate.setCount(parser.getRows());
+        return aggregate;
+    }
+
+    private PartialAggregate scanRange(ChunkScan chunk, long start, long end) throws IOException {
+        RowParser parser = parsers.get();
+        parser.reset();
+        PartialAggregate aggregate = chunk.aggregation.createAggregate();
+        if (aggregate.needsValues()) {
+            parser.setValueListener(aggregate);
+        }
+        // The byte before the range tells whether the range starts with a new row
+        long position = start == 0 ? 0 : start - 1;
+        parser.beginRange(start > 0, end - position);
+        long length = end - position + ROW_LOOKAHEAD;
+        boolean complete = false;
+        while (!complete) {
+            GetObjectRequest getRequest = new GetObjectRequest(chunk.bucketName, chunk.filename);
+            getRequest.setRange(position, position + length - 1);
+            S3Object obj;
+            try {
+                obj = getObject(getRequest, chunk.metadata, chunk.appendOnly);
+            }
+            catch (AmazonServiceException e) {
+                if (e.getStatusCode() == 416) {
+                    // The previous read ended exactly at the end of the object
+                    parser.endOfInput();
+                    break;
+                }
+                throw e;
+            }
+            S3ObjectInputStream inputStream = obj.getObjectContent();
+            long readBefore = parser.getBytesRead();
+            try {
+                complete = parser.parseRange(inputStream);
+            }
+            finally {
+                if (complete) {
+                    // Do not drain the look ahead that was not needed
+                    inputStream.abort();
+                }
+                else {
+                    inputStream.close();
+                }
+            }
+            long received = parser.getBytesRead() - readBefore;
+            if (!complete && received < length) {
+                parser.endOfInput();
+                break;
+            }
+            position += received;
+            length = ROW_LOOKAHEAD;
+        }
+        if (!complete) {
+            chunk.reachedEnd = true;
+        }
+        aggregate.setSum(parser.getSum());
+        aggregate.setCount(parser.getRows());
+        return aggregate;
+    }
+
+    /**
+     * Adds up the rows of a binary input, taking the footer of every block
+     * the chunk covers completely when it holds all requested statistics
+     */
+    private PartialAggregate scanBinary(ChunkScan chunk, long start, long end) throws IOException {
+        BinaryFormat.Header header = chunk.source.header;
+        int width = header.getValueWidth();
+        long endRow = endRow(header, end);
+        long row = Math.min(endRow, start * BINARY_UNIT / width);
+        boolean useFooters = header.getBlockRows() > 0 && BinaryFormat.footersCover(chunk.aggregation);
+        long stride = (long) header.getBlockRows() * width + BinaryFormat.FOOTER_SIZE;
+        // Footers of consecutive blocks are read together, with the values between them, unless skipping the
+        // values saves more than a read costs
+        int footersPerRead = stride - BinaryFormat.FOOTER_SIZE > chunk.source.getSkipBytes() ? 1 : (int) Math.max(1,
+                BINARY_READ_SIZE / stride);
+        PartialAggregate aggregate = chunk.aggregation.createAggregate();
+        while (row < endRow) {
+            long blockEnd = header.blockEnd(row);
+            if (useFooters && header.isBlockStart(row) && blockEnd <= endRow) {
+                int footers = 1;
+                long lastBlock = row;
+                while (footers < footersPerRead && blockEnd < endRow && header.blockEnd(blockEnd) <= endRow) {
+                    lastBlock = blockEnd;
+                    blockEnd = header.blockEnd(blockEnd);
+                    footers++;
+                }
+                long first = header.footerOffset(row);
+                ByteBuffer buffer = chunk.source.read(first, (int) (header.footerOffset(lastBlock) - first
+                        + BinaryFormat.FOOTER_SIZE));
+                for (int i = 0; i < footers; i++) {
+                    buffer.position((int) (i * stride));
+                    BinaryFormat.addFooter(buffer, aggregate);
+                }
+                row = blockEnd;
+                continue;
+            }
+            long last = Math.min(endRow, row + BINARY_READ_SIZE / width);
+            if (useFooters) {
+                // The next block may be covered by its footer
+                last = Math.min(last, blockEnd);
+            }
+            long offset = header.rowOffset(row);
+            ByteBuffer buffer = chunk.source.read(offset, (int) (header.rowOffset(last - 1) + width - offset));
+            // Read across the footers between the blocks
+            while (row < last) {
+                long to = Math.min(last, header.blockEnd(row));
+                BinaryFormat.addValues(buffer, width, (int) (to - row), aggregate);
+                if (to < last) {
+                    buffer.position(buffer.position() + BinaryFormat.FOOTER_SIZE);
+                }
+                row = to;
+            }
+        }
+        return aggregate;
+    }
+
+    private static long endRow(BinaryFormat.Header header, long end) {
+        return Math.min(header.getRowCount(), end * BINARY_UNIT / header.getValueWidth());
+    }
+
+    private BinarySource openBinary(String bucketName, String filename) throws IOException {
+        if (localDataFolder != null) {
+            File file = new File(new File(localDataFolder, bucketName), filename);
+            if (file.isFile()) {
+                return new MappedBinarySource(file);
+            }
+        }
+        return new S3BinarySource(bucketName, filename);
+    }
+
+    /**
+     * Bytes of a binary input and its header
+     */
+    private abstract static class BinarySource {
+
+        BinaryFormat.Header header;
+
+        /**
+         * @return little-endian buffer holding <code>length</code> bytes
+         *         starting at <code>offset</code>
+         */
+        abstract ByteBuffer read(long offset, int length) throws IOException;
+
+        /**
+         * Called once before the scan of a chunk with the bytes it may read
+         */
+        void prepare(long offset, long length) throws IOException {
+        }
+
+        /**
+         * @return the number of bytes worth skipping with a separate read
+         */
+        abstract long getSkipBytes();
+
+        void close() throws IOException {
+        }
+
+    }
+
+    private static class MappedBinarySource extends BinarySource {
+
+        private final RandomAccessFile file;
+
+        /**
+         * Bytes of the chunk, mapped once, its position and limit never change
+         */
+        private ByteBuffer chunk;
+
+        private long chunkOffset;
+
+        MappedBinarySource(File path) throws IOException {
+            file = new RandomAccessFile(path, "r");
+            try {
+                header = BinaryFormat.Header.read(read(0, BinaryFormat.HEADER_SIZE));
+            }
+            catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        @Override
+        ByteBuffer read(long offset, int length) throws IOException {
+            if (chunk != null && offset >= chunkOffset && offset + length <= chunkOffset + chunk.limit()) {
+                ByteBuffer slice = chunk.duplicate();
+                slice.position((int) (offset - chunkOffset));
+                slice.limit(slice.position() + length);
+                return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (offset + length > file.length()) {
+                throw new IOException("Binary input ends before byte " + (offset + length));
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        void prepare(long offset, long length) throws IOException {
+            length = Math.min(length, file.length() - offset);
+            if (length > 0 && length <= Integer.MAX_VALUE) {
+                chunk = file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+                chunkOffset = offset;
+            }
+        }
+
+        @Override
+        long getSkipBytes() {
+            // Reads of the mapped chunk cost nothing
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        void close() throws IOException {
+            // The mapped buffers stay valid after the channel is closed
+            file.close();
+        }
+
+    }
+
+    /**
+     * Reads with the ETag seen with the header, so all reads of a scan see
+     * the same version of the object
+     */
+    private class S3BinarySource extends BinarySource {
+
+        private final String bucketName;
+
+        private final String filename;
+
+        private final String eTag;
+
+        S3BinarySource(String bucketName, String filename) throws IOException {
+            this.bucketName = bucketName;
+            this.filename = filename;
+            GetObjectRequest getRequest = new GetObjectRequest(bucketName, filename);
+            getRequest.setRange(0, BinaryFormat.HEADER_SIZE - 1);
+            S3Object obj = storage.getObject(getRequest);
+            eTag = obj.getObjectMetadata().getETag();
+            header = BinaryFormat.Header.read(readFully(obj, BinaryFormat.HEADER_SIZE));
+        }
+
+        @Override
+        long getSkipBytes() {
+            return FOOTER_SKIP_BYTES;
+        }
+
+        @Override
+        ByteBuffer read(long offset, int length) throws IOException {
+            GetObjectRequest getRequest = new GetObjectRequest(bucketName, filename);
+            getRequest.setRange(offset, offset + length - 1);
+            if (eTag != null) {
+                getRequest.withMatchingETagConstraint(eTag);
+            }
+            S3Object obj = storage.getObject(getRequest);
+            if (obj == null) {
+                // The constraint did not match
+                throw new IOException("s3://" + bucketName + "/" + filename + " changed during the scan");
+            }
+            return readFully(obj, length);
+        }
+
+        private ByteBuffer readFully(S3Object obj, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            InputStream inputStream = obj.getObjectContent();
+            try {
+                int position = 0;
+                int read;
+                while (position < length && (read = inputStream.read(bytes, position, length - position)) != -1) {
+                    position += read;
+                }
+                if (position < length) {
+                    throw new IOException("Short read of " + length + " bytes from s3://" + bucketName + "/"
+                            + filename);
+                }
+            }
+            finally {
                 inputStream.close();
+            }
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
         }
 
-        System.out.printf("Sum from '%d' to '%d' is: '%d'\n", from + 1, to, sum);
-        return sum;
+    }
+
+    /**
+     * Pins the read to the version the cache entry is keyed by
+     */
+    private S3Object getObject(GetObjectRequest getRequest, ObjectMetadata metadata, boolean appendOnly)
+            throws IOException {
+        if (metadata == null || appendOnly || metadata.getETag() == null) {
+            return storage.getObject(getRequest);
+        }
+        getRequest.withMatchingETagConstraint(metadata.getETag());
+        S3Object obj = storage.getObject(getRequest);
+        if (obj == null) {
+            // The constraint did not match
+            throw new IOException("s3://" + getRequest.getBucketName() + "/" + getRequest.getKey()
+                    + " changed during the scan");
+        }
+        return obj;
+    }
+
+    private static String version(ObjectMetadata metadata) {
+        if (metadata.getETag() != null) {
+            return metadata.getETag();
+        }
+        return String.valueOf(metadata.getLastModified().getTime());
     }
 
     @Override
-    public void reportResult(double average) {
-        System.out.printf("Average is: %6.2f.\n", average);
+    public void reportResult(SplitMergeResult result) {
+        System.out.printf("Average is: %6.2f.\n", result.getMean());
+        System.out.println("Statistics: " + result);
     }
 
 }
@@ -15,15 +15,23 @@
 package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 
 import com.amazonaws.services.simpleworkflow.flow.annotations.Execute;
+import com.amazonaws.services.simpleworkflow.flow.annotations.GetState;
 import com.amazonaws.services.simpleworkflow.flow.annotations.Workflow;
 import com.amazonaws.services.simpleworkflow.flow.annotations.WorkflowRegistrationOptions;
 
 @Workflow
 @WorkflowRegistrationOptions(
-        defaultExecutionStartToCloseTimeoutSeconds = 300,
+        defaultExecutionStartToCloseTimeoutSeconds = 3600,
         defaultTaskStartToCloseTimeoutSeconds = 10)
 public interface AverageCalculatorWorkflow {
 
-    @Execute(name = "SplitMergeWorkflowExample", version = "1.0")
-    void average(String bucketName, String fileName, final int numberOfWorkers);
+    @Execute(name = "SplitMergeWorkflowExample", version = "2.0")
+    void average(String bucketName, String fileName, final int numberOfWorkers, SplitMergeOptions options);
+
+    /**
+     * @return mean estimated from the chunks scanned so far when the job
+     *         runs with a sample, null otherwise
+     */
+    @GetState
+    SplitMergeEstimate getEstimate();
 }
@@ -17,12 +17,20 @@ package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 import com.amazonaws.services.simpleworkflow.flow.core.Promise;
 
 public class AverageCalculatorWorkflowImpl implements AverageCalculatorWorkflow {
+
+    private PartitionedAverageCalculator calculator;
     
     @Override
-	public void average(String bucketName, String fileName, int numberOfWorkers) {
-        PartitionedAverageCalculator calculator = new PartitionedAverageCalculatorImpl(numberOfWorkers, bucketName);
-        Promise<Double> result = calculator.computeAverage(fileName);        
+	public void average(String bucketName, String fileName, int numberOfWorkers, SplitMergeOptions options) {
+        calculator = new PartitionedAverageCalculatorImpl(numberOfWorkers, bucketName,
+                options == null ? new SplitMergeOptions() : options);
+        Promise<SplitMergeResult> result = calculator.computeStatistics(fileName);        
         calculator.reportResult(result);		
 	}
 
+    @Override
+    public SplitMergeEstimate getEstimate() {
+        return calculator == null ? null : calculator.getEstimate();
+    }
+
 }
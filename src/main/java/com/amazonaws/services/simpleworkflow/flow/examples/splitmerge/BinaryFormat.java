@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.EnumSet;
+
+/**
+ * Binary input of the split-merge sample, which needs no parsing. All numbers
+ * are little-endian.
+ * 
+ * <pre>
+ * header  "SMB1", value width (1 byte, 4 or 8), 3 reserved bytes,
+ *         rows per block (int32, 0 for no blocks), 4 reserved bytes,
+ *         row count (int64)
+ * values  int32 or int64 per row
+ * </pre>
+ * 
+ * With blocks, every <code>rowsPerBlock</code> values, and the values of the
+ * last shorter block, are followed by a footer with the min, max, sum and
+ * count of the block as int64. A scan that only needs those statistics reads
+ * the footers of the blocks it covers completely instead of their values.
+ */
+public class BinaryFormat {
+
+    public static final int HEADER_SIZE = 24;
+
+    public static final int FOOTER_SIZE = 32;
+
+    private static final int MAGIC = 0x31424d53;
+
+    private static final EnumSet<AggregatorType> FOOTER_STATISTICS = EnumSet.of(AggregatorType.SUM,
+            AggregatorType.COUNT, AggregatorType.MIN, AggregatorType.MAX);
+
+    /**
+     * Layout of a binary input
+     */
+    public static class Header {
+
+        private final int valueWidth;
+
+        private final int blockRows;
+
+        private final long rowCount;
+
+        public Header(int valueWidth, int blockRows, long rowCount) {
+            if (valueWidth != 4 && valueWidth != 8) {
+                throw new IllegalArgumentException("valueWidth must be 4 or 8: " + valueWidth);
+            }
+            if (blockRows < 0 || rowCount < 0) {
+                throw new IllegalArgumentException("Negative block size or row count: " + blockRows + ", " + rowCount);
+            }
+            this.valueWidth = valueWidth;
+            this.blockRows = blockRows;
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * Reads the header at the position of the buffer
+         */
+        public static Header read(ByteBuffer buffer) throws IOException {
+            ByteBuffer header = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a split-merge binary input");
+            }
+            try {
+                return new Header(header.get(4), header.getInt(8), header.getLong(16));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt split-merge binary header: " + e.getMessage());
+            }
+        }
+
+        void write(OutputStream out) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.put(4, (byte) valueWidth);
+            header.putInt(8, blockRows);
+            header.putLong(16, rowCount);
+            out.write(header.array());
+        }
+
+        public int getValueWidth() {
+            return valueWidth;
+        }
+
+        public int getBlockRows() {
+            return blockRows;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return offset of the value of the row in the input
+         */
+        public long rowOffset(long row) {
+            if (blockRows == 0) {
+                return HEADER_SIZE + row * valueWidth;
+            }
+            long block = row / blockRows;
+            return HEADER_SIZE + block * ((long) blockRows * valueWidth + FOOTER_SIZE) + (row - block * blockRows)
+                    * valueWidth;
+        }
+
+        /**
+         * @return row after the last one of the block holding the row
+         */
+        public long blockEnd(long row) {
+            if (blockRows == 0) {
+                return rowCount;
+            }
+            return Math.min(rowCount, (row / blockRows + 1) * blockRows);
+        }
+
+        public boolean isBlockStart(long row) {
+            return blockRows > 0 && row % blockRows == 0;
+        }
+
+        /**
+         * @return offset of the footer of the block holding the row
+         */
+        public long footerOffset(long row) {
+            long end = blockEnd(row);
+            return rowOffset(end - 1) + valueWidth;
+        }
+
+        /**
+         * @return bytes of values, leaving out the header and the footers
+         */
+        public long dataSize() {
+            return rowCount * valueWidth;
+        }
+
+    }
+
+    /**
+     * @return whether block footers hold all of the requested statistics
+     */
+    public static boolean footersCover(AggregationOptions aggregation) {
+        return FOOTER_STATISTICS.containsAll(aggregation.getAggregators());
+    }
+
+    /**
+     * Adds <code>count</code> values starting at the position of the buffer
+     * to the aggregate and moves the position past them
+     */
+    public static void addValues(ByteBuffer buffer, int valueWidth, int count, PartialAggregate aggregate) {
+        ByteBuffer values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        long sum = 0;
+        if (valueWidth == 8) {
+            LongBuffer longs = values.asLongBuffer();
+            if (aggregate.needsValues()) {
+                for (int i = 0; i < count; i++) {
+                    long value = longs.get(i);
+                    sum += value;
+                    aggregate.value(value);
+                }
+            }
+            else {
+                for (int i = 0; i < count; i++) {
+                    sum += longs.get(i);
+                }
+            }
+        }
+        else {
+            IntBuffer ints = values.asIntBuffer();
+            if (aggregate.needsValues()) {
+                for (int i = 0; i < count; i++) {
+                    int value = ints.get(i);
+                    sum += value;
+                    aggregate.value(value);
+                }
+            }
+            else {
+                for (int i = 0; i < count; i++) {
+                    sum += ints.get(i);
+                }
+            }
+        }
+        aggregate.setSum(aggregate.getSum() + sum);
+        aggregate.setCount(aggregate.getCount() + count);
+        buffer.position(buffer.position() + count * valueWidth);
+    }
+
+    /**
+     * Adds the block described by the footer at the position of the buffer
+     * to the aggregate
+     */
+    public static void addFooter(ByteBuffer buffer, PartialAggregate aggregate) {
+        ByteBuffer footer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        long count = footer.getLong(24);
+        aggregate.setSum(aggregate.getSum() + footer.getLong(16));
+        aggregate.setCount(aggregate.getCount() + count);
+        if (aggregate.getMinMax() != null && count > 0) {
+            MinMaxAggregator block = new MinMaxAggregator();
+            block.setMin(footer.getLong(0));
+            block.setMax(footer.getLong(8));
+            aggregate.getMinMax().merge(block);
+        }
+        buffer.position(buffer.position() + FOOTER_SIZE);
+    }
+
+    /**
+     * Writes a binary input, for example to convert a text input. Exactly
+     * the number of rows declared in the header must be added.
+     */
+    public static class Writer implements Closeable {
+
+        private final OutputStream out;
+
+        private final Header header;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        private long rows;
+
+        private long blockMin = Long.MAX_VALUE;
+
+        private long blockMax = Long.MIN_VALUE;
+
+        private long blockSum;
+
+        private long blockCount;
+
+        public Writer(OutputStream out, Header header) throws IOException {
+            this.out = out;
+            this.header = header;
+            header.write(out);
+        }
+
+        public void add(long value) throws IOException {
+            if (rows == header.getRowCount()) {
+                throw new IllegalStateException("Header declares " + header.getRowCount() + " rows");
+            }
+            // Room for the value and the footer it may complete
+            if (buffer.remaining() < 8 + FOOTER_SIZE) {
+                flush();
+            }
+            if (header.getValueWidth() == 4) {
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Value does not fit in 32 bits: " + value);
+                }
+                buffer.putInt((int) value);
+            }
+            else {
+                buffer.putLong(value);
+            }
+            rows++;
+            blockMin = Math.min(blockMin, value);
+            blockMax = Math.max(blockMax, value);
+            blockSum += value;
+            blockCount++;
+            if (blockCount == header.getBlockRows()) {
+                writeFooter();
+            }
+        }
+
+        private void writeFooter() {
+            buffer.putLong(blockMin).putLong(blockMax).putLong(blockSum).putLong(blockCount);
+            blockMin = Long.MAX_VALUE;
+            blockMax = Long.MIN_VALUE;
+            blockSum = 0;
+            blockCount = 0;
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        /**
+         * Writes the footer of the last block and closes the stream
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (rows != header.getRowCount()) {
+                    throw new IOException("Header declares " + header.getRowCount() + " rows but " + rows
+                            + " were written");
+                }
+                if (header.getBlockRows() > 0 && blockCount > 0) {
+                    if (buffer.remaining() < FOOTER_SIZE) {
+                        flush();
+                    }
+                    writeFooter();
+                }
+                flush();
+            }
+            finally {
+                out.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.simpleworkflow.flow.DataConverter;
+import com.amazonaws.services.simpleworkflow.flow.DataConverterException;
+import com.amazonaws.services.simpleworkflow.flow.JsonDataConverter;
+
+/**
+ * Disk store of the partial aggregates computed by an activity host, so a
+ * job over an input that did not change, or only grew, does not scan the
+ * same bytes again. Entries are keyed by the object, its version, the range
+ * and the requested statistics, and hold the aggregate as JSON.
+ * <p>
+ * For inputs that are only ever appended to, the version can be left out of
+ * the key. Ranges before the old end of the object then keep hitting after
+ * an append, which turns a periodic job over a growing object into a scan of
+ * the new bytes plus the last range. Replacing such an object with different
+ * content returns stale results.
+ * <p>
+ * Once the store holds more than <code>maxEntries</code>, the least recently
+ * used tenth of the entries is deleted.
+ */
+public class ChunkResultCache {
+
+    private static final String SUFFIX = ".json";
+
+    private final File directory;
+
+    private final int maxEntries;
+
+    private final DataConverter converter = new JsonDataConverter();
+
+    private final AtomicInteger entryCount;
+
+    public ChunkResultCache(File directory, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                // Left by a host that stopped while writing an entry
+                if (file.getName().endsWith(".tmp")) {
+                    file.delete();
+                }
+            }
+        }
+        this.entryCount = new AtomicInteger(listEntries().length);
+    }
+
+    /**
+     * @param version
+     *            ETag or modification time of the object, null when the
+     *            object is append only
+     * @param scan
+     *            How the range is scanned, ranges scanned differently never
+     *            share an entry
+     */
+    public static String key(String bucketName, String key, String version, String scan, long start, long end,
+            AggregationOptions aggregation) {
+        StringBuilder identity = new StringBuilder();
+        identity.append(bucketName).append('\n').append(key).append('\n');
+        identity.append(version == null ? "append-only" : "version " + version).append('\n');
+        identity.append(scan).append(' ').append(start).append(' ').append(end).append('\n');
+        // Quantiles to report do not change the aggregate
+        identity.append(aggregation.getAggregators()).append(' ').append(aggregation.getHistogramLowerBound());
+        identity.append(' ').append(aggregation.getHistogramUpperBound()).append(' ');
+        identity.append(aggregation.getHistogramBuckets()).append(' ').append(aggregation.getSketchRelativeAccuracy());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(identity.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return cached aggregate or null on a miss
+     */
+    public PartialAggregate get(String key) {
+        File entry = new File(directory, key + SUFFIX);
+        try {
+            String json = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+            PartialAggregate aggregate = converter.fromData(json, PartialAggregate.class);
+            entry.setLastModified(System.currentTimeMillis());
+            return aggregate;
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        catch (IOException e) {
+            System.out.println("Could not read cached aggregate " + entry + ": " + e.getMessage());
+            return null;
+        }
+        catch (DataConverterException e) {
+            // Left by an incompatible version of the sample
+            entry.delete();
+            return null;
+        }
+    }
+
+    public void put(String key, PartialAggregate aggregate) throws IOException {
+        File entry = new File(directory, key + SUFFIX);
+        File temp = Files.createTempFile(directory.toPath(), key + ".", ".tmp").toFile();
+        Files.write(temp.toPath(), converter.toData(aggregate).getBytes(StandardCharsets.UTF_8));
+        boolean existed = entry.exists();
+        Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (!existed && entryCount.incrementAndGet() > maxEntries) {
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        File[] entries = listEntries();
+        if (entries.length <= maxEntries) {
+            entryCount.set(entries.length);
+            return;
+        }
+        Arrays.sort(entries, new Comparator<File>() {
+
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        int keep = maxEntries - maxEntries / 10;
+        int deleted = 0;
+        for (int i = 0; i < entries.length - keep; i++) {
+            if (entries[i].delete()) {
+                deleted++;
+            }
+        }
+        entryCount.set(entries.length - deleted);
+    }
+
+    private File[] listEntries() {
+        File[] entries = directory.listFiles();
+        if (entries == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File entry : entries) {
+            if (entry.getName().endsWith(SUFFIX)) {
+                entries[count++] = entry;
+            }
+        }
+        return Arrays.copyOf(entries, count);
+    }
+
+    public int getEntryCount() {
+        return entryCount.get();
+    }
+
+}
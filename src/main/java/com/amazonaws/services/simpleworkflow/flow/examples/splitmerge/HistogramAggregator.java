@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.Arrays;
+
+/**
+ * Counts of values in equal width buckets between a lower (inclusive) and an
+ * upper (exclusive) bound, with values outside of them counted separately.
+ * Only histograms with the same bounds and buckets can be merged.
+ */
+public class HistogramAggregator implements ValueAggregator<HistogramAggregator> {
+
+    private long lowerBound;
+
+    private long upperBound;
+
+    private long[] counts;
+
+    private long underflow;
+
+    private long overflow;
+
+    public HistogramAggregator() {
+    }
+
+    public HistogramAggregator(long lowerBound, long upperBound, int buckets) {
+        if (upperBound <= lowerBound) {
+            throw new IllegalArgumentException("upperBound must be above lowerBound: " + lowerBound + " to "
+                    + upperBound);
+        }
+        if (buckets < 1) {
+            throw new IllegalArgumentException("buckets must be positive: " + buckets);
+        }
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.counts = new long[buckets];
+    }
+
+    @Override
+    public void add(long value) {
+        if (value < lowerBound) {
+            underflow++;
+        }
+        else if (value >= upperBound) {
+            overflow++;
+        }
+        else {
+            // Doubles keep the product from overflowing for wide bounds
+            int bucket = (int) ((double) (value - lowerBound) * counts.length / ((double) upperBound - lowerBound));
+            counts[Math.min(bucket, counts.length - 1)]++;
+        }
+    }
+
+    @Override
+    public void merge(HistogramAggregator other) {
+        if (lowerBound != other.lowerBound || upperBound != other.upperBound || counts.length != other.counts.length) {
+            throw new IllegalArgumentException("Histograms of " + lowerBound + " to " + upperBound + " in "
+                    + counts.length + " buckets and of " + other.lowerBound + " to " + other.upperBound + " in "
+                    + other.counts.length + " buckets cannot be merged");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        underflow += other.underflow;
+        overflow += other.overflow;
+    }
+
+    public long getLowerBound() {
+        return lowerBound;
+    }
+
+    public void setLowerBound(long lowerBound) {
+        this.lowerBound = lowerBound;
+    }
+
+    public long getUpperBound() {
+        return upperBound;
+    }
+
+    public void setUpperBound(long upperBound) {
+        this.upperBound = upperBound;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    public void setCounts(long[] counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * @return number of values below the lower bound
+     */
+    public long getUnderflow() {
+        return underflow;
+    }
+
+    public void setUnderflow(long underflow) {
+        this.underflow = underflow;
+    }
+
+    /**
+     * @return number of values at or above the upper bound
+     */
+    public long getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(long overflow) {
+        this.overflow = overflow;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + lowerBound + ", " + upperBound + ") " + Arrays.toString(counts) + " below: " + underflow
+                + " above: " + overflow;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+/**
+ * Statistics of the rows of one range, merged by combining them. The sum and
+ * the count are always present, the other statistics only when requested
+ * through {@link AggregationOptions}.
+ */
+public class PartialAggregate implements RowParser.ValueListener {
+
+    private long sum;
+
+    private long count;
+
+    private MinMaxAggregator minMax;
+
+    private VarianceAggregator variance;
+
+    private HistogramAggregator histogram;
+
+    private QuantileSketch quantiles;
+
+    private long speculativeBackups;
+
+    private long backupWins;
+
+    public PartialAggregate() {
+    }
+
+    public PartialAggregate(long sum, long count) {
+        this.sum = sum;
+        this.count = count;
+    }
+
+    /**
+     * @return whether any statistic needs the value of every row rather than
+     *         just the sum and the count
+     */
+    public boolean needsValues() {
+        return minMax != null || variance != null || histogram != null || quantiles != null;
+    }
+
+    /**
+     * Feeds a row to the statistics other than the sum and the count, which
+     * the parser computes itself
+     */
+    @Override
+    public void value(long value) {
+        if (minMax != null) {
+            minMax.add(value);
+        }
+        if (variance != null) {
+            variance.add(value);
+        }
+        if (histogram != null) {
+            histogram.add(value);
+        }
+        if (quantiles != null) {
+            quantiles.add(value);
+        }
+    }
+
+    public void merge(PartialAggregate other) {
+        sum += other.sum;
+        count += other.count;
+        speculativeBackups += other.speculativeBackups;
+        backupWins += other.backupWins;
+        if (other.count == 0) {
+            return;
+        }
+        if (minMax != null) {
+            minMax.merge(required(other.minMax, "min and max"));
+        }
+        if (variance != null) {
+            variance.merge(required(other.variance, "variance"));
+        }
+        if (histogram != null) {
+            histogram.merge(required(other.histogram, "histogram"));
+        }
+        if (quantiles != null) {
+            quantiles.merge(required(other.quantiles, "quantiles"));
+        }
+    }
+
+    private static <T> T required(T statistic, String name) {
+        if (statistic == null) {
+            throw new IllegalArgumentException("Partial aggregate without " + name + " cannot be merged");
+        }
+        return statistic;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public void setSum(long sum) {
+        this.sum = sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public MinMaxAggregator getMinMax() {
+        return minMax;
+    }
+
+    public void setMinMax(MinMaxAggregator minMax) {
+        this.minMax = minMax;
+    }
+
+    public VarianceAggregator getVariance() {
+        return variance;
+    }
+
+    public void setVariance(VarianceAggregator variance) {
+        this.variance = variance;
+    }
+
+    public HistogramAggregator getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(HistogramAggregator histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * @return number of backup activities started for slow partitions of
+     *         the rows
+     */
+    public long getSpeculativeBackups() {
+        return speculativeBackups;
+    }
+
+    public void setSpeculativeBackups(long speculativeBackups) {
+        this.speculativeBackups = speculativeBackups;
+    }
+
+    /**
+     * @return number of partitions whose backup completed first
+     */
+    public long getBackupWins() {
+        return backupWins;
+    }
+
+    public void setBackupWins(long backupWins) {
+        this.backupWins = backupWins;
+    }
+
+    public QuantileSketch getQuantiles() {
+        return quantiles;
+    }
+
+    public void setQuantiles(QuantileSketch quantiles) {
+        this.quantiles = quantiles;
+    }
+
+}
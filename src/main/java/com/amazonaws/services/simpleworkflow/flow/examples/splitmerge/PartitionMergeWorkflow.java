@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Execute;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Workflow;
+import com.amazonaws.services.simpleworkflow.flow.annotations.WorkflowRegistrationOptions;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+
+/**
+ * Child execution of {@link AverageCalculatorWorkflow} merging a contiguous
+ * group of partitions. Partitions are passed by their position in the plan
+ * instead of by value to keep the input small.
+ */
+@Workflow
+@WorkflowRegistrationOptions(
+        defaultExecutionStartToCloseTimeoutSeconds = 3600,
+        defaultTaskStartToCloseTimeoutSeconds = 10)
+public interface PartitionMergeWorkflow {
+
+    @Execute(name = "SplitMergePartitionMerge", version = "1.0")
+    Promise<PartialAggregate> merge(String bucketName, String fileName, long contentLength, int firstPartition,
+            int endPartition, int numberOfWorkers, SplitMergeOptions options);
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how an input object is divided into activities. The number of
+ * partitions follows from the size of the object and the target size of a
+ * partition, bounded by <code>maxPartitions</code> as every activity adds
+ * events to the workflow history. Partitions are scheduled in waves of at
+ * most <code>maxConcurrentPartitions</code>, so a large object does not put
+ * all of its activities in the task list at once.
+ * <p>
+ * Partition boundaries are expressed in units of the split mode, rows for
+ * {@link SplitMode#FIXED_ROWS}, bytes for {@link SplitMode#NEWLINE_ALIGNED}
+ * and 8 bytes of values for {@link SplitMode#BINARY}. Together the partitions cover every unit
+ * of the object, a shorter trailing row included. With a target size the
+ * boundaries fall on multiples of it, so when the object grows only its last
+ * partition changes and new ones are added after it.
+ */
+public class PartitionPlanner {
+
+    /**
+     * Units <code>start</code> (inclusive) to <code>end</code> (exclusive) of
+     * the input
+     */
+    public static class Partition {
+
+        private final long start;
+
+        private final long end;
+
+        Partition(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+    }
+
+    private final long targetPartitionBytes;
+
+    private final int maxPartitions;
+
+    private final int maxConcurrentPartitions;
+
+    /**
+     * @param targetPartitionBytes
+     *            Bytes of input an activity should process, 0 to always use
+     *            <code>maxPartitions</code> partitions
+     * @param maxConcurrentPartitions
+     *            Partitions in a wave, 0 to schedule all of them at once
+     */
+    public PartitionPlanner(long targetPartitionBytes, int maxPartitions, int maxConcurrentPartitions) {
+        if (targetPartitionBytes < 0) {
+            throw new IllegalArgumentException("targetPartitionBytes must not be negative: " + targetPartitionBytes);
+        }
+        if (maxPartitions < 1) {
+            throw new IllegalArgumentException("maxPartitions must be positive: " + maxPartitions);
+        }
+        if (maxConcurrentPartitions < 0) {
+            throw new IllegalArgumentException("maxConcurrentPartitions must not be negative: "
+                    + maxConcurrentPartitions);
+        }
+        this.targetPartitionBytes = targetPartitionBytes;
+        this.maxPartitions = maxPartitions;
+        this.maxConcurrentPartitions = maxConcurrentPartitions;
+    }
+
+    /**
+     * @param unitSize
+     *            Bytes in a unit of the split mode
+     */
+    public List<Partition> plan(long contentLength, int unitSize) {
+        long units = ceilDiv(contentLength, unitSize);
+        List<Partition> partitions = new ArrayList<Partition>();
+        if (units == 0) {
+            return partitions;
+        }
+        long unitsPerPartition = Math.max(1, targetPartitionBytes / unitSize);
+        if (targetPartitionBytes == 0 || ceilDiv(units, unitsPerPartition) > maxPartitions) {
+            unitsPerPartition = ceilDiv(units, maxPartitions);
+        }
+        for (long start = 0; start < units; start += unitsPerPartition) {
+            partitions.add(new Partition(start, Math.min(units, start + unitsPerPartition)));
+        }
+        return partitions;
+    }
+
+    /**
+     * @return number of partitions scheduled together out of
+     *         <code>partitionCount</code>
+     */
+    public int getWaveSize(int partitionCount) {
+        if (maxConcurrentPartitions == 0) {
+            return partitionCount;
+        }
+        return Math.min(maxConcurrentPartitions, partitionCount);
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+}
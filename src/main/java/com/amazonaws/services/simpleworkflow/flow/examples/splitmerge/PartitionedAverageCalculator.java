@@ -18,8 +18,16 @@ import com.amazonaws.services.simpleworkflow.flow.core.Promise;
 
 public interface PartitionedAverageCalculator {
 
-    public abstract Promise<Double> computeAverage(String inputFile);
+    public abstract Promise<SplitMergeResult> computeStatistics(String inputFile);
 
-    public abstract void reportResult(Promise<Double> result);
+    public abstract Promise<PartialAggregate> computeAggregate(String inputFile, long contentLength,
+            int firstPartition, int endPartition);
+
+    public abstract void reportResult(Promise<SplitMergeResult> result);
+
+    /**
+     * @return current estimate of an approximate job, null otherwise
+     */
+    public abstract SplitMergeEstimate getEstimate();
 
 }
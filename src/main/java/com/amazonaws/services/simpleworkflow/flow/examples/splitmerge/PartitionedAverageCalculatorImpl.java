@@ -15,11 +15,18 @@
 package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
+import com.amazonaws.services.simpleworkflow.flow.ActivitySchedulingOptions;
+import com.amazonaws.services.simpleworkflow.flow.DecisionContext;
+import com.amazonaws.services.simpleworkflow.flow.DecisionContextProviderImpl;
+import com.amazonaws.services.simpleworkflow.flow.StartWorkflowOptions;
 import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
 import com.amazonaws.services.simpleworkflow.flow.annotations.Wait;
 import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.examples.splitmerge.PartitionPlanner.Partition;
 
 public class PartitionedAverageCalculatorImpl implements PartitionedAverageCalculator {
 
@@ -29,43 +36,251 @@ public class PartitionedAverageCalculatorImpl implements PartitionedAverageCalcu
     
     private final String bucketName;
 
+    private final SplitMergeOptions options;
+
+    private final PartitionPlanner planner;
+
+    private final PartitionMergeWorkflowClientFactory mergeClientFactory = new PartitionMergeWorkflowClientFactoryImpl();
+
+    private final DecisionContext decisionContext = new DecisionContextProviderImpl().getDecisionContext();
+
+    /**
+     * Estimate of an approximate job, null otherwise
+     */
+    private ProgressiveEstimate estimate;
+
     public PartitionedAverageCalculatorImpl(int numberOfWorkers, String bucketName) {
+        this(numberOfWorkers, bucketName, new SplitMergeOptions());
+    }
+
+    public PartitionedAverageCalculatorImpl(int numberOfWorkers, String bucketName, SplitMergeOptions options) {
         this.numberOfWorkers = numberOfWorkers;
         this.bucketName = bucketName;
+        this.options = options;
+        if (options.getMergeFanOut() < 0 || options.getMergeFanOut() == 1) {
+            throw new IllegalArgumentException("mergeFanOut must be 0 or at least 2: " + options.getMergeFanOut());
+        }
+        // Without a target size the input is split evenly between the workers
+        int maxPartitions = options.getRangeSizeBytes() > 0 ? options.getMaxPartitions() : numberOfWorkers;
+        this.planner = new PartitionPlanner(options.getRangeSizeBytes(), maxPartitions,
+                options.getMaxConcurrentPartitions());
     }
 
     @Override
-    public Promise<Double> computeAverage(String inputFile) {
-        Promise<Integer> dataSize = client.computeDataSizeForInputData(bucketName, inputFile);
-        return computeAverageDistributed(inputFile, dataSize);
+    public Promise<SplitMergeResult> computeStatistics(String inputFile) {
+        // Binary inputs are planned on their values, leaving out the header and the block footers
+        Promise<Long> contentLength = options.getSplitMode() == SplitMode.BINARY ? client.computeDataSizeForInputData(
+                bucketName, inputFile) : client.computeContentLength(bucketName, inputFile);
+        return computeDistributed(inputFile, contentLength);
     }
 
     @Asynchronous
-    private Promise<Double> computeAverageDistributed(String inputFile, Promise<Integer> dataSize) {
-        int chunkSize = dataSize.get() / numberOfWorkers;
-
-        // Create an array list to hold the result returned by each worker
-        List<Promise<Integer>> results = new ArrayList<Promise<Integer>>();
-        for (int chunkNumber = 0; chunkNumber < numberOfWorkers; chunkNumber++) {
-            // Splitting computation for each chunk as separate activity
-            results.add(client.computeSumForChunk(bucketName, inputFile, chunkNumber, chunkSize));
+    private Promise<SplitMergeResult> computeDistributed(String inputFile, Promise<Long> contentLength) {
+        int partitionCount = planPartitions(contentLength.get()).size();
+        Promise<PartialAggregate> total;
+        if (options.getSampleChunks() > 0) {
+            total = computeApproximately(inputFile, contentLength.get(), partitionCount);
+        }
+        else {
+            total = computeAggregate(inputFile, contentLength.get(), 0, partitionCount);
         }
-        // Merge phase
-        return mergeSumAndComputeAverage(results, dataSize.get());
+        return toResult(total);
     }
-    
+
+    /**
+     * Scans the chunks in a random order, starting with a wave of
+     * <code>sampleChunks</code>, and refines the estimate after every wave.
+     * Stops scheduling waves once the estimate is within the target error.
+     */
+    private Promise<PartialAggregate> computeApproximately(String inputFile, long contentLength, int partitionCount) {
+        List<Partition> partitions = planPartitions(contentLength);
+        List<Partition> chunks = groupPartitions(0, partitionCount);
+        // Seeded by the run, so every replay of the decider shuffles the same way
+        long seed = options.getSampleSeed() != 0 ? options.getSampleSeed()
+                : decisionContext.getWorkflowContext().getWorkflowExecution().getRunId().hashCode();
+        Collections.shuffle(chunks, new Random(seed));
+        estimate = new ProgressiveEstimate(chunks.size(), options.getConfidence(), options.getTargetRelativeError());
+        int sampleEnd = Math.min(chunks.size(), options.getSampleChunks());
+        Promise<PartialAggregate> sample = computeWaves(inputFile, contentLength, partitions, chunks, 0, sampleEnd,
+                planner.getWaveSize(sampleEnd), Promise.asPromise(options.getAggregation().createAggregate()));
+        return computeWaves(inputFile, contentLength, partitions, chunks, sampleEnd, chunks.size(),
+                planner.getWaveSize(chunks.size()), sample);
+    }
+
+    @Override
+    public SplitMergeEstimate getEstimate() {
+        return estimate == null ? null : estimate.toEstimate();
+    }
+
+    /**
+     * Merges the partitions directly when there are at most as many as the
+     * merge fan out, otherwise through child executions that each take a
+     * contiguous group of them, so no history grows past the fan out.
+     */
+    @Override
+    public Promise<PartialAggregate> computeAggregate(String inputFile, long contentLength, int firstPartition,
+            int endPartition) {
+        List<Partition> partitions = planPartitions(contentLength);
+        List<Partition> groups = groupPartitions(firstPartition, endPartition);
+        return computeWaves(inputFile, contentLength, partitions, groups, 0, groups.size(),
+                planner.getWaveSize(groups.size()), Promise.asPromise(options.getAggregation().createAggregate()));
+    }
+
+    /**
+     * @return ranges of partitions processed by one activity or child
+     *         execution each
+     */
+    private List<Partition> groupPartitions(int firstPartition, int endPartition) {
+        int count = endPartition - firstPartition;
+        int fanOut = options.getMergeFanOut();
+        int groupSize = fanOut > 0 && count > fanOut ? (count + fanOut - 1) / fanOut : 1;
+        List<Partition> groups = new ArrayList<Partition>();
+        for (int start = firstPartition; start < endPartition; start += groupSize) {
+            groups.add(new Partition(start, Math.min(endPartition, start + groupSize)));
+        }
+        return groups;
+    }
+
+    /**
+     * The plan only depends on the options, so child executions arrive at the
+     * same partitions as their parent
+     */
+    private List<Partition> planPartitions(long contentLength) {
+        return planner.plan(contentLength, options.getSplitMode().getUnitSize());
+    }
+
+    /**
+     * Schedules the wave of groups starting at <code>groups[first]</code>
+     * once the previous waves are merged into <code>total</code>
+     */
     @Asynchronous
-    private Promise<Double> mergeSumAndComputeAverage(@Wait List<Promise<Integer>> results, int dataSize){
-    	int totalSum = 0;
-    	for(Promise<Integer> workerSum: results){
-    	    totalSum += workerSum.get();
-    	}
-        return Promise.asPromise((double) totalSum / (double) dataSize);
+    private Promise<PartialAggregate> computeWaves(final String inputFile, long contentLength, List<Partition> partitions,
+            List<Partition> groups, int first, int end, int waveSize, Promise<PartialAggregate> total) {
+        if (first >= end || (estimate != null && estimate.isWithinTarget())) {
+            return total;
+        }
+        int last = Math.min(end, first + waveSize);
+        final ActivitySchedulingOptions scheduling = partitionScheduling(last - first);
+        List<Partition> wave = new ArrayList<Partition>();
+        for (Partition group : groups.subList(first, last)) {
+            if (group.getEnd() - group.getStart() == 1) {
+                wave.add(partitions.get((int) group.getStart()));
+            }
+        }
+        // Only activities are speculated, not child executions
+        if (options.getSpeculationSlowdown() > 0 && wave.size() == last - first) {
+            SpeculativeWave speculativeWave = new SpeculativeWave(new SpeculativeWave.PartitionScheduler() {
+
+                @Override
+                public Promise<PartialAggregate> schedule(Partition partition) {
+                    return computePartition(inputFile, partition, scheduling);
+                }
+            }, decisionContext.getWorkflowClock(), options);
+            List<Promise<PartialAggregate>> results = speculativeWave.start(wave);
+            Promise<PartialAggregate> merged = mergeSpeculativeWave(results, total, speculativeWave);
+            return computeWaves(inputFile, contentLength, partitions, groups, last, end, waveSize, merged);
+        }
+        List<Promise<PartialAggregate>> results = new ArrayList<Promise<PartialAggregate>>();
+        for (Partition group : groups.subList(first, last)) {
+            if (group.getEnd() - group.getStart() == 1) {
+                // Splitting computation for each partition as separate activity
+                results.add(computePartition(inputFile, partitions.get((int) group.getStart()), scheduling));
+            }
+            else {
+                PartitionMergeWorkflowClient child = mergeClientFactory.getClient();
+                StartWorkflowOptions childOptions = new StartWorkflowOptions()
+                        .withExecutionStartToCloseTimeoutSeconds((long) options.getExecutionTimeoutSeconds());
+                results.add(child.merge(bucketName, inputFile, contentLength, (int) group.getStart(),
+                        (int) group.getEnd(), numberOfWorkers, options, childOptions));
+            }
+        }
+        // Merge phase of the wave
+        Promise<PartialAggregate> merged = mergeAggregates(results, total);
+        return computeWaves(inputFile, contentLength, partitions, groups, last, end, waveSize, merged);
     }
-    
+
+    /**
+     * The activities of a wave are queued at once, so the last ones wait for
+     * the workers to get through as many partitions each as the wave has per
+     * worker
+     */
+    private ActivitySchedulingOptions partitionScheduling(int waveActivities) {
+        long rounds = (waveActivities + numberOfWorkers - 1) / Math.max(1, numberOfWorkers);
+        long timeout = options.getPartitionTimeoutSeconds();
+        return new ActivitySchedulingOptions().withScheduleToStartTimeoutSeconds(Math.max(1, rounds) * timeout)
+                .withStartToCloseTimeoutSeconds(timeout);
+    }
+
+    private Promise<PartialAggregate> computePartition(String inputFile, Partition partition,
+            ActivitySchedulingOptions scheduling) {
+        if (options.getSplitMode() == SplitMode.BINARY) {
+            return client.computeAggregateForBinary(bucketName, inputFile, partition.getStart(), partition.getEnd(),
+                    options.getAggregation(), scheduling);
+        }
+        if (options.getSplitMode() == SplitMode.NEWLINE_ALIGNED) {
+            // Ranges are cut at arbitrary bytes, every worker aligns its own to the rows
+            return client.computeAggregateForRange(bucketName, inputFile, partition.getStart(), partition.getEnd(),
+                    options.getAggregation(), options.isAppendOnly(), scheduling);
+        }
+        return client.computeAggregateForRows(bucketName, inputFile, partition.getStart(), partition.getEnd(),
+                options.getAggregation(), options.isAppendOnly(), scheduling);
+    }
+
+    @Asynchronous
+    private Promise<PartialAggregate> mergeAggregates(@Wait List<Promise<PartialAggregate>> results,
+            Promise<PartialAggregate> total) {
+        PartialAggregate merged = options.getAggregation().createAggregate();
+        merged.merge(total.get());
+        for (Promise<PartialAggregate> partial : results) {
+            merged.merge(partial.get());
+        }
+        addToEstimate(results);
+        return Promise.asPromise(merged);
+    }
+
+    /**
+     * Also records the use of backups, which is final once every partition
+     * of the wave has a result
+     */
+    @Asynchronous
+    private Promise<PartialAggregate> mergeSpeculativeWave(@Wait List<Promise<PartialAggregate>> results,
+            Promise<PartialAggregate> total, SpeculativeWave wave) {
+        PartialAggregate merged = options.getAggregation().createAggregate();
+        merged.merge(total.get());
+        for (Promise<PartialAggregate> partial : results) {
+            merged.merge(partial.get());
+        }
+        merged.setSpeculativeBackups(merged.getSpeculativeBackups() + wave.getBackups());
+        merged.setBackupWins(merged.getBackupWins() + wave.getBackupWins());
+        addToEstimate(results);
+        return Promise.asPromise(merged);
+    }
+
+    /**
+     * Adds a completed wave, so the estimate always covers a prefix of the
+     * shuffled chunks
+     */
+    private void addToEstimate(List<Promise<PartialAggregate>> results) {
+        if (estimate == null) {
+            return;
+        }
+        for (Promise<PartialAggregate> partial : results) {
+            estimate.add(partial.get());
+        }
+    }
+
+    @Asynchronous
+    private Promise<SplitMergeResult> toResult(Promise<PartialAggregate> total) {
+        SplitMergeResult result = SplitMergeResult.fromAggregate(total.get(), options.getAggregation());
+        if (estimate != null) {
+            result.setEstimate(estimate.toEstimate());
+        }
+        return Promise.asPromise(result);
+    }
+
     @Override
     @Asynchronous
-    public void reportResult(Promise<Double> result){
+    public void reportResult(Promise<SplitMergeResult> result){
     	client.reportResult(result);
     }
     
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estimates the mean of the input from a simple random sample of its chunks.
+ * Chunks hold different numbers of rows, so the mean is the ratio of the
+ * sampled sums to the sampled counts, and its variance is the usual
+ * linearized variance of a ratio estimator with the finite population
+ * correction. The interval uses the normal approximation, which is rough
+ * for the first few chunks.
+ * <p>
+ * The estimate is only unbiased if the chunks are added in a random order
+ * that does not depend on how long they take, which is why the decider adds
+ * whole waves of a shuffled plan rather than chunks as they complete.
+ */
+public class ProgressiveEstimate {
+
+    private final int totalChunks;
+
+    private final double confidence;
+
+    private final double z;
+
+    private final double targetRelativeError;
+
+    private final List<Long> sums = new ArrayList<Long>();
+
+    private final List<Long> counts = new ArrayList<Long>();
+
+    private long sum;
+
+    private long count;
+
+    /**
+     * @param confidence
+     *            Probability that the interval holds the mean, for example
+     *            0.95
+     * @param targetRelativeError
+     *            Margin of error relative to the mean that is good enough, 0
+     *            to never stop early
+     */
+    public ProgressiveEstimate(int totalChunks, double confidence, double targetRelativeError) {
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("confidence must be between 0 and 1: " + confidence);
+        }
+        if (targetRelativeError < 0) {
+            throw new IllegalArgumentException("targetRelativeError must not be negative: " + targetRelativeError);
+        }
+        this.totalChunks = totalChunks;
+        this.confidence = confidence;
+        this.z = normalQuantile(0.5 + confidence / 2);
+        this.targetRelativeError = targetRelativeError;
+    }
+
+    public void add(PartialAggregate chunk) {
+        sums.add(chunk.getSum());
+        counts.add(chunk.getCount());
+        sum += chunk.getSum();
+        count += chunk.getCount();
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    public double marginOfError() {
+        int n = sums.size();
+        if (n >= totalChunks) {
+            return 0;
+        }
+        if (n < 2 || count == 0) {
+            return Double.NaN;
+        }
+        double mean = mean();
+        double squaredResiduals = 0;
+        for (int i = 0; i < n; i++) {
+            double residual = sums.get(i) - mean * counts.get(i);
+            squaredResiduals += residual * residual;
+        }
+        double averageCount = (double) count / n;
+        double variance = (1 - (double) n / totalChunks) * squaredResiduals / (n - 1)
+                / (n * averageCount * averageCount);
+        return z * Math.sqrt(variance);
+    }
+
+    /**
+     * @return whether the margin of error is within the target
+     */
+    public boolean isWithinTarget() {
+        if (targetRelativeError == 0) {
+            return false;
+        }
+        double margin = marginOfError();
+        return !Double.isNaN(margin) && margin <= targetRelativeError * Math.abs(mean());
+    }
+
+    public int getCompletedChunks() {
+        return sums.size();
+    }
+
+    public SplitMergeEstimate toEstimate() {
+        SplitMergeEstimate estimate = new SplitMergeEstimate();
+        estimate.setMean(mean());
+        estimate.setMarginOfError(marginOfError());
+        estimate.setConfidence(confidence);
+        estimate.setCompletedChunks(sums.size());
+        estimate.setTotalChunks(totalChunks);
+        estimate.setCount(count);
+        return estimate;
+    }
+
+    /**
+     * Inverse of the standard normal distribution function, Acklam's
+     * rational approximation with a relative error below 1.2e-9
+     */
+    static double normalQuantile(double p) {
+        final double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+        final double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01 };
+        final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+        final double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00 };
+        double low = 0.02425;
+        if (p < low) {
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+                    / ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+        }
+        if (p > 1 - low) {
+            return -normalQuantile(1 - p);
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+                / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+    }
+
+}
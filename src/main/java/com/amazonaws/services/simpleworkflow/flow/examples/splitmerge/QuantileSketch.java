@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch in the style of DDSketch. Values are counted in
+ * buckets whose bounds grow geometrically by a factor of
+ * <code>(1 + a) / (1 - a)</code>, so any quantile is estimated within the
+ * relative accuracy <code>a</code> of the true value. Sketches with the same
+ * accuracy merge exactly by adding their bucket counts.
+ * <p>
+ * Rows hold integers, so the smallest non zero magnitude is 1 and the
+ * buckets of a sign start at index 0. About 2200 buckets cover every
+ * <code>long</code> at 1% accuracy. Only the span of buckets between the
+ * lowest and the highest one used is kept, which keeps the JSON of a sketch
+ * well under the size limit of an activity result for typical data.
+ */
+public class QuantileSketch implements ValueAggregator<QuantileSketch> {
+
+    /**
+     * Counts of the buckets <code>offset</code> to
+     * <code>offset + counts.length - 1</code>
+     */
+    public static class Buckets {
+
+        private int offset;
+
+        private long[] counts = new long[0];
+
+        void increment(int index, long count) {
+            if (counts.length == 0) {
+                offset = index;
+                counts = new long[1];
+            }
+            else if (index < offset) {
+                long[] grown = new long[counts.length + offset - index];
+                System.arraycopy(counts, 0, grown, offset - index, counts.length);
+                counts = grown;
+                offset = index;
+            }
+            else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, index - offset + 1);
+            }
+            counts[index - offset] += count;
+        }
+
+        void merge(Buckets other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    increment(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public void setOffset(int offset) {
+            this.offset = offset;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+
+        public void setCounts(long[] counts) {
+            this.counts = counts;
+        }
+
+    }
+
+    private double relativeAccuracy;
+
+    private long count;
+
+    private long zeroCount;
+
+    private Buckets positive = new Buckets();
+
+    private Buckets negative = new Buckets();
+
+    private transient double logGamma;
+
+    public QuantileSketch() {
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    @Override
+    public void add(long value) {
+        count++;
+        if (value > 0) {
+            positive.increment(index(value), 1);
+        }
+        else if (value < 0) {
+            // Negated as a double as -Long.MIN_VALUE does not fit a long
+            negative.increment(index(-(double) value), 1);
+        }
+        else {
+            zeroCount++;
+        }
+    }
+
+    @Override
+    public void merge(QuantileSketch other) {
+        if (relativeAccuracy != other.relativeAccuracy) {
+            throw new IllegalArgumentException("Sketches of accuracy " + relativeAccuracy + " and "
+                    + other.relativeAccuracy + " cannot be merged");
+        }
+        count += other.count;
+        zeroCount += other.zeroCount;
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+    }
+
+    /**
+     * @param quantile
+     *            Between 0 and 1, 0.5 for the median
+     * @return estimate of the value at the quantile, NaN when there were no
+     *         values
+     */
+    public double quantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+        long[] counts = negative.counts;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            seen += counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        counts = positive.counts;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + counts.length - 1);
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma());
+    }
+
+    /**
+     * @return value of the bucket with the least relative error to all the
+     *         values it holds
+     */
+    private double value(int index) {
+        double gamma = Math.exp(logGamma());
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private double logGamma() {
+        if (logGamma == 0) {
+            logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+        }
+        return logGamma;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public void setRelativeAccuracy(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getZeroCount() {
+        return zeroCount;
+    }
+
+    public void setZeroCount(long zeroCount) {
+        this.zeroCount = zeroCount;
+    }
+
+    public Buckets getPositive() {
+        return positive;
+    }
+
+    public void setPositive(Buckets positive) {
+        this.positive = positive;
+    }
+
+    public Buckets getNegative() {
+        return negative;
+    }
+
+    public void setNegative(Buckets negative) {
+        this.negative = negative;
+    }
+
+}
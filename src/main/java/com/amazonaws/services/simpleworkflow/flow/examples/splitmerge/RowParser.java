@@ -0,0 +1,253 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sums rows holding one decimal integer each, scanning the raw bytes of the
+ * stream. Digits are accumulated straight into the running value, so no
+ * reader, line or boxed number is created per row, and the buffer is reused
+ * across calls. A parser is not thread safe; keep one per thread.
+ * <p>
+ * Rows end with '\n' and an optional '\r' before it. Empty rows are skipped
+ * and a row may start with '-'. Anything else fails with a
+ * {@link NumberFormatException} like {@link Integer#parseInt(String)} would.
+ * <p>
+ * A byte range of a larger input is parsed with {@link #beginRange},
+ * {@link #parseRange} and {@link #endOfInput}. The rows of a range are the
+ * rows whose first byte is inside it, so ranges can be cut anywhere and
+ * every row is counted by exactly one of them.
+ * <p>
+ * Statistics beyond the sum are computed in the same scan by a
+ * {@link ValueListener} that receives the value of every row.
+ */
+public class RowParser {
+
+    /**
+     * Receives the value of every row counted by the parser
+     */
+    public interface ValueListener {
+
+        void value(long value);
+
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] buffer;
+
+    private ValueListener listener;
+
+    private long sum;
+
+    private long rows;
+
+    private long bytesRead;
+
+    private long rangeLength;
+
+    private long consumed;
+
+    private boolean skipping;
+
+    private long value;
+
+    private boolean negative;
+
+    private boolean digits;
+
+    private boolean sign;
+
+    public RowParser() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public RowParser(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Clears the sum, the row count and the listener of the previous input
+     */
+    public void reset() {
+        sum = 0;
+        rows = 0;
+        bytesRead = 0;
+        listener = null;
+    }
+
+    /**
+     * @param listener
+     *            Listener of the rows parsed until the next {@link #reset()}
+     *            or null
+     */
+    public void setValueListener(ValueListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds the rows of the stream to the sum. The stream is read to its end
+     * but not closed. The last row does not need a line break.
+     */
+    public void parse(InputStream in) throws IOException {
+        beginRange(false, Long.MAX_VALUE);
+        parseRange(in);
+        endOfInput();
+    }
+
+    /**
+     * Starts parsing a range. Input following the range must be passed to
+     * {@link #parseRange} as well, so the last row of the range can be read to
+     * its end.
+     * 
+     * @param afterRowStart
+     *            Whether the input starts with the last byte before the range
+     *            rather than at the start of the input. The row that byte
+     *            belongs to is skipped unless the byte ends it.
+     * @param length
+     *            Number of bytes of the input up to the end of the range
+     */
+    public void beginRange(boolean afterRowStart, long length) {
+        rangeLength = length;
+        consumed = 0;
+        skipping = afterRowStart;
+        value = 0;
+        negative = false;
+        digits = false;
+        sign = false;
+    }
+
+    /**
+     * Adds the rows of the range found in the stream to the sum. The stream is
+     * read until the last row of the range ends or the stream ends, and is
+     * not closed.
+     * 
+     * @return true if the range is complete, false if the stream ended first
+     *         and the next bytes of the input are needed
+     */
+    public boolean parseRange(InputStream in) throws IOException {
+        // Locals keep the scan loop free of field accesses
+        long value = this.value;
+        boolean negative = this.negative;
+        boolean digits = this.digits;
+        boolean sign = this.sign;
+        boolean skipping = this.skipping;
+        ValueListener listener = this.listener;
+        try {
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                bytesRead += read;
+                long limit = rangeLength - consumed;
+                int inRange = limit >= read ? read : (int) Math.max(0, limit);
+                int i = 0;
+                while (i < read) {
+                    if (i >= inRange && (skipping || !(digits || sign))) {
+                        // The next row starts after the range
+                        consumed += i;
+                        return true;
+                    }
+                    if (skipping) {
+                        skipping = buffer[i++] != '\n';
+                        continue;
+                    }
+                    // Rows inside the range are scanned without boundary checks,
+                    // the last row is finished past the range byte by byte
+                    int stop = i < inRange ? inRange : i + 1;
+                    for (; i < stop; i++) {
+                        int b = buffer[i];
+                        if (b >= '0' && b <= '9') {
+                            value = value * 10 + (b - '0');
+                            digits = true;
+                        }
+                        else if (b == '\n') {
+                            if (digits) {
+                                long row = negative ? -value : value;
+                                sum += row;
+                                rows++;
+                                if (listener != null) {
+                                    listener.value(row);
+                                }
+                            }
+                            else if (sign) {
+                                throw new NumberFormatException("Row " + (rows + 1) + " has no digits");
+                            }
+                            value = 0;
+                            negative = false;
+                            digits = false;
+                            sign = false;
+                        }
+                        else if (b == '-' && !digits && !sign) {
+                            negative = true;
+                            sign = true;
+                        }
+                        else if (b != '\r') {
+                            throw new NumberFormatException("Unexpected character " + (char) (b & 0xff) + " in row "
+                                    + (rows + 1));
+                        }
+                    }
+                }
+                consumed += read;
+            }
+            return consumed >= rangeLength && (skipping || !(digits || sign));
+        }
+        finally {
+            this.value = value;
+            this.negative = negative;
+            this.digits = digits;
+            this.sign = sign;
+            this.skipping = skipping;
+        }
+    }
+
+    /**
+     * Completes a last row that has no line break at the end of the input
+     */
+    public void endOfInput() {
+        if (!skipping && digits) {
+            long row = negative ? -value : value;
+            sum += row;
+            rows++;
+            if (listener != null) {
+                listener.value(row);
+            }
+        }
+        else if (!skipping && sign) {
+            throw new NumberFormatException("Row " + (rows + 1) + " has no digits");
+        }
+        value = 0;
+        negative = false;
+        digits = false;
+        sign = false;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return number of bytes read from the streams since the last
+     *         {@link #reset()}
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+}
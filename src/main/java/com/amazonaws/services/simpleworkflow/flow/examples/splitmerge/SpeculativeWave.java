@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import com.amazonaws.services.simpleworkflow.flow.WorkflowClock;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.core.OrPromise;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.core.Settable;
+import com.amazonaws.services.simpleworkflow.flow.core.TryCatch;
+import com.amazonaws.services.simpleworkflow.flow.examples.splitmerge.PartitionPlanner.Partition;
+
+/**
+ * Runs a wave of partitions with speculative backups for stragglers. Once
+ * the configured fraction of the wave has completed, and then at every check
+ * interval while a running partition has no backup, every partition that
+ * has been running longer than the median duration of the completed ones
+ * times the configured slowdown gets a duplicate activity. Whichever of the
+ * two completes first provides the result and the other one is cancelled,
+ * the same way {@code PickFirstBranchWorkflowImpl} picks the first branch.
+ * <p>
+ * The activities do not heartbeat, so cancelling one releases the decider
+ * and not the worker running it. Durations are measured with the workflow
+ * clock and are therefore the same on every replay.
+ */
+public class SpeculativeWave {
+
+    /**
+     * Schedules the activity computing a partition
+     */
+    public interface PartitionScheduler {
+
+        Promise<PartialAggregate> schedule(Partition partition);
+
+    }
+
+    private final PartitionScheduler scheduler;
+
+    private final WorkflowClock clock;
+
+    private final double completedFraction;
+
+    private final double slowdown;
+
+    private final int checkIntervalSeconds;
+
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    private int completed;
+
+    /**
+     * Set once the fraction of the wave has completed
+     */
+    private boolean checked;
+
+    /**
+     * Scope of the pending timer of the next check, if any
+     */
+    private TryCatch check;
+
+    private int backups;
+
+    private int backupWins;
+
+    public SpeculativeWave(PartitionScheduler scheduler, WorkflowClock clock, SplitMergeOptions options) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.completedFraction = options.getSpeculationCompletedFraction();
+        this.slowdown = options.getSpeculationSlowdown();
+        this.checkIntervalSeconds = options.getSpeculationCheckIntervalSeconds();
+    }
+
+    /**
+     * @return results in the order of the partitions
+     */
+    public List<Promise<PartialAggregate>> start(List<Partition> partitions) {
+        List<Promise<PartialAggregate>> results = new ArrayList<Promise<PartialAggregate>>();
+        for (Partition partition : partitions) {
+            Task task = new Task(partition);
+            tasks.add(task);
+            results.add(task.result);
+        }
+        return results;
+    }
+
+    /**
+     * Called whenever a partition completes. The first completion that
+     * reaches the fraction checks for stragglers right away, later ones only
+     * keep the periodic check armed while it can still find one.
+     */
+    private void onCompleted() {
+        if (completed < Math.ceil(completedFraction * tasks.size())) {
+            return;
+        }
+        if (!checked) {
+            checked = true;
+            startBackupsForStragglers();
+        }
+        updateCheck();
+    }
+
+    /**
+     * Arms the next check while a running partition has no backup yet and
+     * cancels the pending one otherwise, so that no timer outlives the wave
+     */
+    private void updateCheck() {
+        boolean candidates = false;
+        for (Task task : tasks) {
+            if (!task.result.isReady() && task.backup == null) {
+                candidates = true;
+                break;
+            }
+        }
+        if (!candidates) {
+            if (check != null) {
+                check.cancel(null);
+                check = null;
+            }
+        }
+        else if (check == null) {
+            check = new TryCatch() {
+
+                @Override
+                protected void doTry() throws Throwable {
+                    checkForStragglers(clock.createTimer(checkIntervalSeconds));
+                }
+
+                @Override
+                protected void doCatch(Throwable e) throws Throwable {
+                    if (!(e instanceof CancellationException)) {
+                        throw e;
+                    }
+                }
+            };
+        }
+    }
+
+    @Asynchronous
+    private void checkForStragglers(Promise<Void> timer) {
+        check = null;
+        startBackupsForStragglers();
+        updateCheck();
+    }
+
+    private void startBackupsForStragglers() {
+        List<Long> durations = new ArrayList<Long>(completed);
+        for (Task task : tasks) {
+            if (task.result.isReady()) {
+                durations.add(task.durationMillis);
+            }
+        }
+        Collections.sort(durations);
+        long median = durations.get(durations.size() / 2);
+        long now = clock.currentTimeMillis();
+        for (Task task : tasks) {
+            if (!task.result.isReady() && task.backup == null && now - task.startMillis > slowdown * median) {
+                task.startBackup();
+            }
+        }
+    }
+
+    public int getBackups() {
+        return backups;
+    }
+
+    public int getBackupWins() {
+        return backupWins;
+    }
+
+    private class Task {
+
+        private final Partition partition;
+
+        private final Settable<PartialAggregate> result = new Settable<PartialAggregate>();
+
+        private final Settable<PartialAggregate> primaryResult = new Settable<PartialAggregate>();
+
+        /**
+         * Never becomes ready unless a backup is started
+         */
+        private final Settable<PartialAggregate> backupResult = new Settable<PartialAggregate>();
+
+        private final long startMillis;
+
+        private long durationMillis;
+
+        private final TryCatch primary;
+
+        private TryCatch backup;
+
+        Task(Partition partition) {
+            this.partition = partition;
+            this.startMillis = clock.currentTimeMillis();
+            primary = attempt(primaryResult);
+            pickFirst(new OrPromise(primaryResult, backupResult));
+        }
+
+        void startBackup() {
+            backups++;
+            backup = attempt(backupResult);
+        }
+
+        private TryCatch attempt(final Settable<PartialAggregate> attemptResult) {
+            return new TryCatch() {
+
+                @Override
+                protected void doTry() throws Throwable {
+                    attemptResult.chain(scheduler.schedule(partition));
+                }
+
+                @Override
+                protected void doCatch(Throwable e) throws Throwable {
+                    if (!(e instanceof CancellationException)) {
+                        throw e;
+                    }
+                }
+            };
+        }
+
+        @Asynchronous
+        private void pickFirst(OrPromise first) {
+            durationMillis = clock.currentTimeMillis() - startMillis;
+            completed++;
+            if (primaryResult.isReady()) {
+                result.set(primaryResult.get());
+                if (backup != null) {
+                    backup.cancel(null);
+                }
+            }
+            else {
+                result.set(backupResult.get());
+                backupWins++;
+                primary.cancel(null);
+            }
+            onCompleted();
+        }
+
+    }
+
+}
@@ -19,5 +19,30 @@ public class SplitMergeConfigKeys {
     static final String S3_BUCKET_NAME = "SplitMerge.Input.BucketName";
     static final String S3_INPUT_FILENAME = "SplitMerge.Input.FileName";
     static final String NUMBER_OF_WORKERS = "SplitMerge.Input.NumberOfWorkers";
+    static final String SPLIT_MODE = "SplitMerge.Input.SplitMode";
+    static final String RANGE_SIZE_MB = "SplitMerge.Input.RangeSizeMB";
+    static final String MAX_PARTITIONS = "SplitMerge.Input.MaxPartitions";
+    static final String MAX_CONCURRENT_PARTITIONS = "SplitMerge.Input.MaxConcurrentPartitions";
+    static final String MERGE_FAN_OUT = "SplitMerge.Input.MergeFanOut";
+    static final String AGGREGATORS = "SplitMerge.Input.Aggregators";
+    static final String HISTOGRAM_LOWER_BOUND = "SplitMerge.Input.HistogramLowerBound";
+    static final String HISTOGRAM_UPPER_BOUND = "SplitMerge.Input.HistogramUpperBound";
+    static final String HISTOGRAM_BUCKETS = "SplitMerge.Input.HistogramBuckets";
+    static final String SKETCH_RELATIVE_ACCURACY = "SplitMerge.Input.SketchRelativeAccuracy";
+    static final String QUANTILES = "SplitMerge.Input.Quantiles";
+    static final String APPEND_ONLY = "SplitMerge.Input.AppendOnly";
+    static final String SPECULATION_SLOWDOWN = "SplitMerge.Input.SpeculationSlowdown";
+    static final String SPECULATION_COMPLETED_FRACTION = "SplitMerge.Input.SpeculationCompletedFraction";
+    static final String SPECULATION_CHECK_SECONDS = "SplitMerge.Input.SpeculationCheckSeconds";
+    static final String SAMPLE_CHUNKS = "SplitMerge.Input.SampleChunks";
+    static final String TARGET_RELATIVE_ERROR = "SplitMerge.Input.TargetRelativeError";
+    static final String CONFIDENCE = "SplitMerge.Input.Confidence";
+    static final String PARTITION_TIMEOUT_SECONDS = "SplitMerge.Input.PartitionTimeoutSeconds";
+    static final String EXECUTION_TIMEOUT_SECONDS = "SplitMerge.Input.ExecutionTimeoutSeconds";
+    static final String CACHE_FOLDER = "SplitMerge.Activity.Worker.CacheFolder";
+    static final String CACHE_MAX_ENTRIES = "SplitMerge.Activity.Worker.CacheMaxEntries";
+    static final String SCAN_THREADS = "SplitMerge.Activity.Worker.ScanThreads";
+    static final String SUB_RANGE_SIZE_MB = "SplitMerge.Activity.Worker.SubRangeSizeMB";
+    static final String LOCAL_DATA_FOLDER = "SplitMerge.Activity.Worker.LocalDataFolder";
     
 }
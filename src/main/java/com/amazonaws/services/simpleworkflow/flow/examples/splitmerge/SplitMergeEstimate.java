@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+/**
+ * Mean of the input estimated from the chunks scanned so far, published
+ * while an approximate split-merge job runs. A chunk is a partition, or a
+ * group of them when the merge goes through child executions.
+ */
+public class SplitMergeEstimate {
+
+    private double mean = Double.NaN;
+
+    private double marginOfError = Double.NaN;
+
+    private double confidence;
+
+    private int completedChunks;
+
+    private int totalChunks;
+
+    private long count;
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    /**
+     * @return half width of the confidence interval of the mean, 0 once every
+     *         chunk is scanned and NaN before two chunks are
+     */
+    public double getMarginOfError() {
+        return marginOfError;
+    }
+
+    public void setMarginOfError(double marginOfError) {
+        this.marginOfError = marginOfError;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public int getCompletedChunks() {
+        return completedChunks;
+    }
+
+    public void setCompletedChunks(int completedChunks) {
+        this.completedChunks = completedChunks;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public void setTotalChunks(int totalChunks) {
+        this.totalChunks = totalChunks;
+    }
+
+    /**
+     * @return rows in the scanned chunks
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return "mean: " + mean + " +/- " + marginOfError + " at " + confidence + " confidence from " + completedChunks
+                + " of " + totalChunks + " chunks";
+    }
+
+}
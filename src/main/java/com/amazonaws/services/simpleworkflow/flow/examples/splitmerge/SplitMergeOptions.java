@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+/**
+ * Per execution options of {@link AverageCalculatorWorkflow}
+ */
+public class SplitMergeOptions {
+
+    private SplitMode splitMode = SplitMode.FIXED_ROWS;
+
+    private long rangeSizeBytes;
+
+    private int maxPartitions = 2000;
+
+    private int maxConcurrentPartitions = 100;
+
+    private int mergeFanOut;
+
+    private AggregationOptions aggregation = new AggregationOptions();
+
+    private boolean appendOnly;
+
+    private double speculationSlowdown;
+
+    private double speculationCompletedFraction = 0.75;
+
+    private int speculationCheckIntervalSeconds = 5;
+
+    private int sampleChunks;
+
+    private double targetRelativeError;
+
+    private double confidence = 0.95;
+
+    private long sampleSeed;
+
+    private int partitionTimeoutSeconds = 300;
+
+    private int executionTimeoutSeconds = 3600;
+
+    public SplitMode getSplitMode() {
+        return splitMode;
+    }
+
+    public void setSplitMode(SplitMode splitMode) {
+        this.splitMode = splitMode;
+    }
+
+    public long getRangeSizeBytes() {
+        return rangeSizeBytes;
+    }
+
+    /**
+     * Bytes of input an activity should process, 0 makes one range per
+     * worker
+     */
+    public void setRangeSizeBytes(long rangeSizeBytes) {
+        this.rangeSizeBytes = rangeSizeBytes;
+    }
+
+    public int getMaxPartitions() {
+        return maxPartitions;
+    }
+
+    /**
+     * Upper bound of the number of activities of an execution, larger ranges
+     * are used when the range size would need more
+     */
+    public void setMaxPartitions(int maxPartitions) {
+        this.maxPartitions = maxPartitions;
+    }
+
+    public int getMaxConcurrentPartitions() {
+        return maxConcurrentPartitions;
+    }
+
+    /**
+     * Activities scheduled in one wave, 0 to schedule all of them at once
+     */
+    public void setMaxConcurrentPartitions(int maxConcurrentPartitions) {
+        this.maxConcurrentPartitions = maxConcurrentPartitions;
+    }
+
+    public int getMergeFanOut() {
+        return mergeFanOut;
+    }
+
+    /**
+     * Activities or child executions an execution merges itself, larger
+     * inputs are merged as a tree of child executions. 0 merges every
+     * partition in the parent execution.
+     */
+    public void setMergeFanOut(int mergeFanOut) {
+        this.mergeFanOut = mergeFanOut;
+    }
+
+    public AggregationOptions getAggregation() {
+        return aggregation;
+    }
+
+    public void setAggregation(AggregationOptions aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    public boolean isAppendOnly() {
+        return appendOnly;
+    }
+
+    /**
+     * Declares that the input only ever grows, which lets activity hosts
+     * reuse the cached aggregates of the ranges that existed before an append.
+     * Needs a target range size, so the ranges stay where they were as the
+     * input grows.
+     */
+    public void setAppendOnly(boolean appendOnly) {
+        this.appendOnly = appendOnly;
+    }
+
+    public double getSpeculationSlowdown() {
+        return speculationSlowdown;
+    }
+
+    /**
+     * Multiple of the median duration of the completed partitions of a wave
+     * after which a running partition gets a backup activity, 0 to never
+     * start backups
+     */
+    public void setSpeculationSlowdown(double speculationSlowdown) {
+        this.speculationSlowdown = speculationSlowdown;
+    }
+
+    public double getSpeculationCompletedFraction() {
+        return speculationCompletedFraction;
+    }
+
+    /**
+     * Fraction of a wave that must be complete before backups are considered
+     */
+    public void setSpeculationCompletedFraction(double speculationCompletedFraction) {
+        this.speculationCompletedFraction = speculationCompletedFraction;
+    }
+
+    public int getSpeculationCheckIntervalSeconds() {
+        return speculationCheckIntervalSeconds;
+    }
+
+    public void setSpeculationCheckIntervalSeconds(int speculationCheckIntervalSeconds) {
+        this.speculationCheckIntervalSeconds = speculationCheckIntervalSeconds;
+    }
+
+    public int getSampleChunks() {
+        return sampleChunks;
+    }
+
+    /**
+     * Chunks in the random sample scanned first by an approximate job, 0
+     * for an exact job that scans the chunks in order
+     */
+    public void setSampleChunks(int sampleChunks) {
+        this.sampleChunks = sampleChunks;
+    }
+
+    public double getTargetRelativeError() {
+        return targetRelativeError;
+    }
+
+    /**
+     * Margin of error relative to the mean at which an approximate job stops
+     * scanning, 0 to scan every chunk
+     */
+    public void setTargetRelativeError(double targetRelativeError) {
+        this.targetRelativeError = targetRelativeError;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Confidence level of the margin of error
+     */
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public long getSampleSeed() {
+        return sampleSeed;
+    }
+
+    /**
+     * Seed of the order of the chunks, 0 to derive it from the run
+     */
+    public void setSampleSeed(long sampleSeed) {
+        this.sampleSeed = sampleSeed;
+    }
+
+    public int getPartitionTimeoutSeconds() {
+        return partitionTimeoutSeconds;
+    }
+
+    /**
+     * Time an activity has to scan its partition. Activities wait in the task
+     * list for as many partitions per worker as their wave has.
+     */
+    public void setPartitionTimeoutSeconds(int partitionTimeoutSeconds) {
+        this.partitionTimeoutSeconds = partitionTimeoutSeconds;
+    }
+
+    public int getExecutionTimeoutSeconds() {
+        return executionTimeoutSeconds;
+    }
+
+    /**
+     * Time the whole job has to complete, also given to every child
+     * execution merging a group of partitions
+     */
+    public void setExecutionTimeoutSeconds(int executionTimeoutSeconds) {
+        this.executionTimeoutSeconds = executionTimeoutSeconds;
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Statistics reported at the end of a split-merge job. Statistics that were
+ * not requested are null.
+ */
+public class SplitMergeResult {
+
+    private long count;
+
+    private long sum;
+
+    private double mean = Double.NaN;
+
+    private Long min;
+
+    private Long max;
+
+    private Double variance;
+
+    private Double standardDeviation;
+
+    private HistogramAggregator histogram;
+
+    private Map<String, Double> quantiles;
+
+    private long speculativeBackups;
+
+    private long backupWins;
+
+    private SplitMergeEstimate estimate;
+
+    /**
+     * Derives the reported statistics from the merged aggregate of every
+     * partition
+     */
+    public static SplitMergeResult fromAggregate(PartialAggregate aggregate, AggregationOptions aggregation) {
+        SplitMergeResult result = new SplitMergeResult();
+        result.count = aggregate.getCount();
+        result.sum = aggregate.getSum();
+        result.speculativeBackups = aggregate.getSpeculativeBackups();
+        result.backupWins = aggregate.getBackupWins();
+        if (aggregate.getCount() > 0) {
+            result.mean = (double) aggregate.getSum() / (double) aggregate.getCount();
+        }
+        if (aggregate.getMinMax() != null && aggregate.getCount() > 0) {
+            if (aggregation.getAggregators().contains(AggregatorType.MIN)) {
+                result.min = aggregate.getMinMax().getMin();
+            }
+            if (aggregation.getAggregators().contains(AggregatorType.MAX)) {
+                result.max = aggregate.getMinMax().getMax();
+            }
+        }
+        if (aggregate.getVariance() != null) {
+            result.variance = aggregate.getVariance().sampleVariance();
+            result.standardDeviation = Math.sqrt(result.variance);
+        }
+        result.histogram = aggregate.getHistogram();
+        if (aggregate.getQuantiles() != null) {
+            result.quantiles = new LinkedHashMap<String, Double>();
+            for (double quantile : aggregation.getQuantiles()) {
+                result.quantiles.put(quantileName(quantile), aggregate.getQuantiles().quantile(quantile));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return name like p50 or p99.9
+     */
+    static String quantileName(double quantile) {
+        String percent = Double.toString(quantile * 100);
+        if (percent.endsWith(".0")) {
+            percent = percent.substring(0, percent.length() - 2);
+        }
+        return "p" + percent;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public void setSum(long sum) {
+        this.sum = sum;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public Long getMin() {
+        return min;
+    }
+
+    public void setMin(Long min) {
+        this.min = min;
+    }
+
+    public Long getMax() {
+        return max;
+    }
+
+    public void setMax(Long max) {
+        this.max = max;
+    }
+
+    /**
+     * @return sample variance
+     */
+    public Double getVariance() {
+        return variance;
+    }
+
+    public void setVariance(Double variance) {
+        this.variance = variance;
+    }
+
+    public Double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    public void setStandardDeviation(Double standardDeviation) {
+        this.standardDeviation = standardDeviation;
+    }
+
+    public HistogramAggregator getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(HistogramAggregator histogram) {
+        this.histogram = histogram;
+    }
+
+    public Map<String, Double> getQuantiles() {
+        return quantiles;
+    }
+
+    public void setQuantiles(Map<String, Double> quantiles) {
+        this.quantiles = quantiles;
+    }
+
+    /**
+     * @return number of backup activities started for slow partitions
+     */
+    public long getSpeculativeBackups() {
+        return speculativeBackups;
+    }
+
+    public void setSpeculativeBackups(long speculativeBackups) {
+        this.speculativeBackups = speculativeBackups;
+    }
+
+    /**
+     * @return number of partitions whose backup completed first
+     */
+    public long getBackupWins() {
+        return backupWins;
+    }
+
+    public void setBackupWins(long backupWins) {
+        this.backupWins = backupWins;
+    }
+
+    /**
+     * @return accuracy of the statistics of an approximate job, which cover
+     *         the scanned chunks only, or null for an exact job
+     */
+    public SplitMergeEstimate getEstimate() {
+        return estimate;
+    }
+
+    public void setEstimate(SplitMergeEstimate estimate) {
+        this.estimate = estimate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("count: ").append(count).append(", sum: ").append(sum).append(", mean: ").append(mean);
+        if (min != null) {
+            result.append(", min: ").append(min);
+        }
+        if (max != null) {
+            result.append(", max: ").append(max);
+        }
+        if (variance != null) {
+            result.append(", variance: ").append(variance).append(", standard deviation: ").append(standardDeviation);
+        }
+        if (quantiles != null) {
+            for (Map.Entry<String, Double> quantile : quantiles.entrySet()) {
+                result.append(", ").append(quantile.getKey()).append(": ").append(quantile.getValue());
+            }
+        }
+        if (histogram != null) {
+            result.append(", histogram: ").append(histogram);
+        }
+        if (estimate != null) {
+            result.append(", estimate: ").append(estimate);
+        }
+        if (speculativeBackups > 0) {
+            result.append(", speculative backups: ").append(speculativeBackups).append(" (").append(backupWins)
+                    .append(" finished first)");
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+/**
+ * How the input file is divided between the workers
+ */
+public enum SplitMode {
+
+    /**
+     * Every row is exactly 7 bytes, so chunks are counted in rows
+     */
+    FIXED_ROWS(7),
+
+    /**
+     * Rows of any length. The file is cut into byte ranges and every range
+     * takes the rows that start inside it.
+     */
+    NEWLINE_ALIGNED(1),
+
+    /**
+     * {@link BinaryFormat} input. Chunks are counted in 8 bytes of values,
+     * which is a whole number of rows of either value width.
+     */
+    BINARY(8);
+
+    private final int unitSize;
+
+    private SplitMode(int unitSize) {
+        this.unitSize = unitSize;
+    }
+
+    /**
+     * @return bytes of the smallest piece a chunk boundary can fall on
+     */
+    public int getUnitSize() {
+        return unitSize;
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+/**
+ * Statistic computed in a single scan that can be combined with the same
+ * statistic of other rows. Aggregators travel between activities and the
+ * decider as JSON, so they are beans and their derived values are exposed
+ * through methods that are not getters.
+ */
+public interface ValueAggregator<T extends ValueAggregator<T>> {
+
+    void add(long value);
+
+    /**
+     * Adds the rows seen by the other aggregator to this one
+     */
+    void merge(T other);
+
+}
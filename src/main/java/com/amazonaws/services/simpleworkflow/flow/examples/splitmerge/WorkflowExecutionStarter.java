@@ -15,6 +15,7 @@
 package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
 
 import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
+import com.amazonaws.services.simpleworkflow.flow.StartWorkflowOptions;
 import com.amazonaws.services.simpleworkflow.flow.examples.common.ConfigHelper;
 import com.amazonaws.services.simpleworkflow.model.WorkflowExecution;
 
@@ -36,10 +37,70 @@ public class WorkflowExecutionStarter {
         String fileName = configHelper.getValueFromConfig(SplitMergeConfigKeys.S3_INPUT_FILENAME);
         String val = configHelper.getValueFromConfig(SplitMergeConfigKeys.NUMBER_OF_WORKERS);
         int numberOfWorkers = Integer.parseInt(val);
+        SplitMergeOptions options = new SplitMergeOptions();
+        String splitMode = configHelper.getValueFromConfig(SplitMergeConfigKeys.SPLIT_MODE);
+        if (splitMode != null) {
+            options.setSplitMode(SplitMode.valueOf(splitMode.trim()));
+        }
+        String rangeSize = configHelper.getValueFromConfig(SplitMergeConfigKeys.RANGE_SIZE_MB);
+        if (rangeSize != null) {
+            options.setRangeSizeBytes(Long.parseLong(rangeSize.trim()) * 1024 * 1024);
+        }
+        String maxPartitions = configHelper.getValueFromConfig(SplitMergeConfigKeys.MAX_PARTITIONS);
+        if (maxPartitions != null) {
+            options.setMaxPartitions(Integer.parseInt(maxPartitions.trim()));
+        }
+        String maxConcurrentPartitions = configHelper.getValueFromConfig(SplitMergeConfigKeys.MAX_CONCURRENT_PARTITIONS);
+        if (maxConcurrentPartitions != null) {
+            options.setMaxConcurrentPartitions(Integer.parseInt(maxConcurrentPartitions.trim()));
+        }
+        String mergeFanOut = configHelper.getValueFromConfig(SplitMergeConfigKeys.MERGE_FAN_OUT);
+        if (mergeFanOut != null) {
+            options.setMergeFanOut(Integer.parseInt(mergeFanOut.trim()));
+        }
+        options.setAggregation(createAggregationOptions(configHelper));
+        String appendOnly = configHelper.getValueFromConfig(SplitMergeConfigKeys.APPEND_ONLY);
+        if (appendOnly != null) {
+            options.setAppendOnly(Boolean.parseBoolean(appendOnly.trim()));
+        }
+        String slowdown = configHelper.getValueFromConfig(SplitMergeConfigKeys.SPECULATION_SLOWDOWN);
+        if (slowdown != null) {
+            options.setSpeculationSlowdown(Double.parseDouble(slowdown.trim()));
+        }
+        String completedFraction = configHelper.getValueFromConfig(SplitMergeConfigKeys.SPECULATION_COMPLETED_FRACTION);
+        if (completedFraction != null) {
+            options.setSpeculationCompletedFraction(Double.parseDouble(completedFraction.trim()));
+        }
+        String checkSeconds = configHelper.getValueFromConfig(SplitMergeConfigKeys.SPECULATION_CHECK_SECONDS);
+        if (checkSeconds != null) {
+            options.setSpeculationCheckIntervalSeconds(Integer.parseInt(checkSeconds.trim()));
+        }
+        String sampleChunks = configHelper.getValueFromConfig(SplitMergeConfigKeys.SAMPLE_CHUNKS);
+        if (sampleChunks != null) {
+            options.setSampleChunks(Integer.parseInt(sampleChunks.trim()));
+        }
+        String targetRelativeError = configHelper.getValueFromConfig(SplitMergeConfigKeys.TARGET_RELATIVE_ERROR);
+        if (targetRelativeError != null) {
+            options.setTargetRelativeError(Double.parseDouble(targetRelativeError.trim()));
+        }
+        String confidence = configHelper.getValueFromConfig(SplitMergeConfigKeys.CONFIDENCE);
+        if (confidence != null) {
+            options.setConfidence(Double.parseDouble(confidence.trim()));
+        }
+        String partitionTimeout = configHelper.getValueFromConfig(SplitMergeConfigKeys.PARTITION_TIMEOUT_SECONDS);
+        if (partitionTimeout != null) {
+            options.setPartitionTimeoutSeconds(Integer.parseInt(partitionTimeout.trim()));
+        }
+        String executionTimeout = configHelper.getValueFromConfig(SplitMergeConfigKeys.EXECUTION_TIMEOUT_SECONDS);
+        if (executionTimeout != null) {
+            options.setExecutionTimeoutSeconds(Integer.parseInt(executionTimeout.trim()));
+        }
         
         AverageCalculatorWorkflowClientExternalFactory clientFactory = new AverageCalculatorWorkflowClientExternalFactoryImpl(swfService, domain);
         AverageCalculatorWorkflowClientExternal workflow = clientFactory.getClient();
-        workflow.average(bucketName, fileName, numberOfWorkers);
+        StartWorkflowOptions startOptions = new StartWorkflowOptions()
+                .withExecutionStartToCloseTimeoutSeconds((long) options.getExecutionTimeoutSeconds());
+        workflow.average(bucketName, fileName, numberOfWorkers, options, startOptions);
 
         // WorkflowExecution is available after workflow creation 
         WorkflowExecution workflowExecution = workflow.getWorkflowExecution();
@@ -47,5 +108,41 @@ public class WorkflowExecutionStarter {
                 + "\" and runId=\"" + workflowExecution.getRunId() + "\"");
 
         System.exit(0);
-    }    
+    }
+
+    private static AggregationOptions createAggregationOptions(ConfigHelper configHelper) {
+        AggregationOptions aggregation = new AggregationOptions();
+        String aggregators = configHelper.getValueFromConfig(SplitMergeConfigKeys.AGGREGATORS);
+        if (aggregators != null) {
+            for (String aggregator : aggregators.split(",")) {
+                if (!aggregator.trim().isEmpty()) {
+                    aggregation.getAggregators().add(AggregatorType.valueOf(aggregator.trim()));
+                }
+            }
+        }
+        String lowerBound = configHelper.getValueFromConfig(SplitMergeConfigKeys.HISTOGRAM_LOWER_BOUND);
+        if (lowerBound != null) {
+            aggregation.setHistogramLowerBound(Long.parseLong(lowerBound.trim()));
+        }
+        String upperBound = configHelper.getValueFromConfig(SplitMergeConfigKeys.HISTOGRAM_UPPER_BOUND);
+        if (upperBound != null) {
+            aggregation.setHistogramUpperBound(Long.parseLong(upperBound.trim()));
+        }
+        String buckets = configHelper.getValueFromConfig(SplitMergeConfigKeys.HISTOGRAM_BUCKETS);
+        if (buckets != null) {
+            aggregation.setHistogramBuckets(Integer.parseInt(buckets.trim()));
+        }
+        String accuracy = configHelper.getValueFromConfig(SplitMergeConfigKeys.SKETCH_RELATIVE_ACCURACY);
+        if (accuracy != null) {
+            aggregation.setSketchRelativeAccuracy(Double.parseDouble(accuracy.trim()));
+        }
+        String quantiles = configHelper.getValueFromConfig(SplitMergeConfigKeys.QUANTILES);
+        if (quantiles != null) {
+            aggregation.getQuantiles().clear();
+            for (String quantile : quantiles.split(",")) {
+                aggregation.getQuantiles().add(Double.parseDouble(quantile.trim()));
+            }
+        }
+        return aggregation;
+    }
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ public class WorkflowHost {
 
         final WorkflowWorker worker = new WorkflowWorker(swfService, domain, DECISION_TASK_LIST);
         worker.addWorkflowImplementationType(AverageCalculatorWorkflowImpl.class);
+        worker.addWorkflowImplementationType(PartitionMergeWorkflowImpl.class);
         worker.start();
 
         System.out.println("Workflow Host Service Started...");
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProvider;
+import com.amazonaws.services.simpleworkflow.flow.ActivityExecutionContextProviderImpl;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.core.TryCatchFinally;
+import com.amazonaws.services.simpleworkflow.flow.junit.FlowBlockJUnit4ClassRunner;
+import com.amazonaws.services.simpleworkflow.flow.junit.WorkflowTest;
+
+@RunWith(FlowBlockJUnit4ClassRunner.class)
+public class BatchFileProcessingWorkflowTest {
+
+    private static final String HOST_TASK_LIST = "host1";
+
+    private static final int FILES = 7;
+
+    private final class TestSimpleStoreActivities implements SimpleStoreActivities {
+
+        private final ActivityExecutionContextProvider contextProvider = new ActivityExecutionContextProviderImpl();
+
+        private final List<String> downloaded = new ArrayList<String>();
+
+        private final Set<String> uploaded = new HashSet<String>();
+
+        private final List<String> deleted = new ArrayList<String>();
+
+        private final Set<String> runIds = new HashSet<String>();
+
+        @Override
+        public boolean upload(String bucketName, String localName, String targetName) {
+            uploaded.add(targetName);
+            return true;
+        }
+
+        @Override
+        public String download(String bucketName, String remoteName, String localName) {
+            downloaded.add(remoteName);
+            runIds.add(contextProvider.getActivityExecutionContext().getWorkflowExecution().getRunId());
+            return HOST_TASK_LIST;
+        }
+
+        @Override
+        public String downloadRouted(String bucketName, String remoteName, String localName) {
+            return download(bucketName, remoteName, localName);
+        }
+
+        @Override
+        public void deleteLocalFile(String fileName) {
+            deleted.add(fileName);
+        }
+    }
+
+    private final class TestFileProcessingActivities implements FileProcessingActivities {
+
+        /**
+         * Name of the source that fails to zip, null when all succeed
+         */
+        private String failing;
+
+        @Override
+        public void processFile(String inputFileName, String outputFileName) throws Exception {
+            if (failing != null && inputFileName.endsWith("_" + failing)) {
+                throw new IOException("Corrupt input " + failing);
+            }
+        }
+
+        @Override
+        public void processFileParallel(String inputFileName, String outputFileName, int threads,
+                int compressionLevel) throws Exception {
+            processFile(inputFileName, outputFileName);
+        }
+
+        @Override
+        public void processFiles(List<String> inputFileNames, String outputFileName, int threads,
+                int compressionLevel) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Manifest of <code>FILES</code> entries, read in pages of the requested
+     * size
+     */
+    private final class TestBatchManifestActivities implements BatchManifestActivities {
+
+        private final List<Long> offsets = new ArrayList<Long>();
+
+        @Override
+        public ManifestPage readManifest(String bucketName, String key, long offset, int maxEntries) {
+            offsets.add(offset);
+            ManifestPage page = new ManifestPage();
+            long end = Math.min(FILES, offset + maxEntries);
+            for (long i = offset; i < end; i++) {
+                page.getEntries().add(new ManifestEntry("source", "file" + i + ".txt", "target", "file" + i + ".zip"));
+            }
+            page.setNextOffset(end);
+            page.setLast(end == FILES);
+            return page;
+        }
+    }
+
+    @Rule
+    public WorkflowTest workflowTest = new WorkflowTest();
+
+    private final BatchFileProcessingWorkflowClientFactory workflowFactory = new BatchFileProcessingWorkflowClientFactoryImpl();
+
+    private TestSimpleStoreActivities store;
+
+    private TestFileProcessingActivities processor;
+
+    private TestBatchManifestActivities manifest;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new TestSimpleStoreActivities();
+        processor = new TestFileProcessingActivities();
+        manifest = new TestBatchManifestActivities();
+        // Downloads go to their own task list, the manifest to the common one, the rest to the host that
+        // downloaded the file
+        workflowTest.addActivitiesImplementation(SimpleStoreActivities.DOWNLOAD_TASK_LIST, store);
+        workflowTest.addActivitiesImplementation(manifest);
+        workflowTest.addActivitiesImplementation(HOST_TASK_LIST, store);
+        workflowTest.addActivitiesImplementation(HOST_TASK_LIST, processor);
+        workflowTest.addWorkflowImplementationType(BatchFileProcessingWorkflowImpl.class);
+    }
+
+    @Test
+    public void processesEveryFileOfTheManifest() {
+        Promise<Void> done = workflowFactory.getClient().processBatch("bucket", "manifest", options(), null);
+        assertProcessed(done, FILES);
+    }
+
+    @Test
+    public void failedFileDoesNotStopTheBatch() {
+        processor.failing = "file3.txt";
+        Promise<Void> done = workflowFactory.getClient().processBatch("bucket", "manifest", options(), null);
+        assertProcessed(done, FILES - 1);
+        assertNotUploaded(done, "file3.zip");
+    }
+
+    @Test(timeout = 2000)
+    public void continuesAsNewUntilTheManifestIsDone() {
+        workflowTest.setClockAccelerationCoefficient(3600);
+        final BatchFileProcessingOptions options = options();
+        options.setContinueAsNewAfterFiles(3);
+        workflowTest.getDecisionContext().getWorkflowClock().createTimer(3600);
+        // A daemon gets cancelled once the above timer fires, after the runs are done
+        new TryCatchFinally(true) {
+
+            private Throwable failure;
+
+            @Override
+            protected void doTry() throws Throwable {
+                workflowFactory.getClient().processBatch("bucket", "manifest", options, null);
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                failure = e;
+                throw e;
+            }
+
+            @Override
+            protected void doFinally() throws Throwable {
+                // Skip assertions as their failure masks original exception
+                if (failure == null || failure instanceof CancellationException) {
+                    Assert.assertEquals(FILES, store.uploaded.size());
+                    Assert.assertEquals(FILES, store.downloaded.size());
+                    Assert.assertEquals(3, store.runIds.size());
+                }
+            }
+        };
+    }
+
+    private BatchFileProcessingOptions options() {
+        BatchFileProcessingOptions options = new BatchFileProcessingOptions();
+        options.setMaxInFlight(2);
+        options.setManifestPageSize(3);
+        return options;
+    }
+
+    @Asynchronous
+    private void assertProcessed(Promise<Void> done, int uploads) {
+        Assert.assertEquals(FILES, store.downloaded.size());
+        Assert.assertEquals(FILES, new HashSet<String>(store.downloaded).size());
+        Assert.assertEquals(uploads, store.uploaded.size());
+        // Source and target of every file, failed ones included
+        Assert.assertEquals(2 * FILES, store.deleted.size());
+        Assert.assertEquals(Arrays.asList(0L, 3L, 6L), manifest.offsets);
+    }
+
+    @Asynchronous
+    private void assertNotUploaded(Promise<Void> done, String targetFilename) {
+        Assert.assertFalse(store.uploaded.contains(targetFilename));
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchManifestActivitiesS3ImplTest {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+
+    private final BatchManifestActivitiesS3Impl activities = new BatchManifestActivitiesS3Impl(s3.client());
+
+    @Test
+    public void pagesResumeWhereThePreviousPageEnded() throws IOException {
+        StringBuilder manifest = new StringBuilder("# source\tkey\ttarget\tkey\n");
+        for (int i = 0; i < 7; i++) {
+            manifest.append("in\tfile-").append(i).append("\tout\tfile-").append(i).append(".zip\n");
+            if (i == 3) {
+                manifest.append("\n");
+            }
+        }
+        s3.put("bucket", "manifest", manifest.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<String> keys = new ArrayList<String>();
+        long offset = 0;
+        int pages = 0;
+        ManifestPage page;
+        do {
+            page = activities.readManifest("bucket", "manifest", offset, 3);
+            for (ManifestEntry entry : page.getEntries()) {
+                keys.add(entry.getSourceFilename());
+                Assert.assertEquals(entry.getSourceFilename() + ".zip", entry.getTargetFilename());
+            }
+            offset = page.getNextOffset();
+            pages++;
+        }
+        while (!page.isLast());
+
+        Assert.assertEquals(7, keys.size());
+        Assert.assertEquals("file-0", keys.get(0));
+        Assert.assertEquals("file-6", keys.get(6));
+        Assert.assertEquals(3, pages);
+    }
+
+    @Test
+    public void pagesOfLongKeysStayUnderTheResultLimit() throws IOException {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            name.append('x');
+        }
+        StringBuilder manifest = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            manifest.append("in\t").append(name).append(i).append("\tout\t").append(name).append(i).append(".zip\n");
+        }
+        s3.put("bucket", "manifest", manifest.toString().getBytes(StandardCharsets.UTF_8));
+
+        int entries = 0;
+        int pages = 0;
+        long offset = 0;
+        ManifestPage page;
+        do {
+            page = activities.readManifest("bucket", "manifest", offset, 100);
+            int pageBytes = 0;
+            for (ManifestEntry entry : page.getEntries()) {
+                Assert.assertEquals(name.toString() + entries, entry.getSourceFilename());
+                pageBytes += entry.getSourceFilename().length() + entry.getTargetFilename().length();
+                entries++;
+            }
+            Assert.assertTrue(pageBytes < BatchManifestActivitiesS3Impl.MAX_PAGE_BYTES);
+            offset = page.getNextOffset();
+            pages++;
+        }
+        while (!page.isLast());
+
+        Assert.assertEquals(100, entries);
+        Assert.assertTrue(pages > 1);
+    }
+
+    @Test
+    public void skipsMalformedLines() {
+        Assert.assertNull(BatchManifestActivitiesS3Impl.parseLine("only\ttwo", "manifest"));
+        Assert.assertNull(BatchManifestActivitiesS3Impl.parseLine("   ", "manifest"));
+        Assert.assertEquals("b", BatchManifestActivitiesS3Impl.parseLine("a\tb\tc\td\r", "manifest").getSourceFilename());
+    }
+
+}
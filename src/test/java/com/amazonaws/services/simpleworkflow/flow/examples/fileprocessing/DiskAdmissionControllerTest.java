@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiskAdmissionControllerTest {
+
+    private final DiskAdmissionController controller = new DiskAdmissionController(null, "unused", null, 1000, 5000);
+
+    @Test
+    public void pausesWhenALimitIsCrossed() {
+        Assert.assertFalse(controller.shouldPause(false, 1000, 5000));
+        Assert.assertTrue(controller.shouldPause(false, 999, 0));
+        Assert.assertTrue(controller.shouldPause(false, 10000, 5001));
+    }
+
+    @Test
+    public void resumesOnlyPastTheMargin() {
+        Assert.assertTrue(controller.shouldPause(true, 1050, 0));
+        Assert.assertTrue(controller.shouldPause(true, 10000, 4600));
+        Assert.assertFalse(controller.shouldPause(true, 1100, 4500));
+    }
+
+}
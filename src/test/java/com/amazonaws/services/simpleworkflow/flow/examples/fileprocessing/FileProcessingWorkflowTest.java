@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.core.TryCatchFinally;
+import com.amazonaws.services.simpleworkflow.flow.junit.FlowBlockJUnit4ClassRunner;
+import com.amazonaws.services.simpleworkflow.flow.junit.WorkflowTest;
+
+/**
+ * Runs the split mode against the segment activities over an in-memory S3 and
+ * the staged mode against activities that do no I/O
+ */
+@RunWith(FlowBlockJUnit4ClassRunner.class)
+public class FileProcessingWorkflowTest {
+
+    private static final int SEGMENT_SIZE = 100000;
+
+    private static final String HOST_TASK_LIST = "host1";
+
+    /**
+     * Finds every target already holding the content of the file
+     */
+    private static final class UnchangedStore implements SimpleStoreActivities {
+
+        @Override
+        public boolean upload(String bucketName, String localName, String targetName) {
+            return false;
+        }
+
+        @Override
+        public String download(String bucketName, String remoteName, String localName) {
+            return HOST_TASK_LIST;
+        }
+
+        @Override
+        public String downloadRouted(String bucketName, String remoteName, String localName) {
+            return HOST_TASK_LIST;
+        }
+
+        @Override
+        public void deleteLocalFile(String fileName) {
+        }
+    }
+
+    private static final class NoopProcessor implements FileProcessingActivities {
+
+        @Override
+        public void processFile(String inputFileName, String outputFileName) {
+        }
+
+        @Override
+        public void processFileParallel(String inputFileName, String outputFileName, int threads,
+                int compressionLevel) {
+        }
+
+        @Override
+        public void processFiles(List<String> inputFileNames, String outputFileName, int threads,
+                int compressionLevel) {
+        }
+    }
+
+    /**
+     * Loses the second segment on every attempt
+     */
+    private static final class FailingSegmentActivities implements SegmentedFileProcessingActivities {
+
+        private final SegmentedFileProcessingActivities delegate;
+
+        FailingSegmentActivities(SegmentedFileProcessingActivities delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long getContentLength(String bucketName, String key) {
+            return delegate.getContentLength(bucketName, key);
+        }
+
+        @Override
+        public SegmentResult compressSegment(String sourceBucketName, String sourceFilename, long start, long end,
+                String targetBucketName, String segmentKey, String entryName, long entryTime, boolean last,
+                int compressionLevel) throws Exception {
+            if (start == SEGMENT_SIZE) {
+                throw new IOException("Segment lost");
+            }
+            return delegate.compressSegment(sourceBucketName, sourceFilename, start, end, targetBucketName,
+                    segmentKey, entryName, entryTime, last, compressionLevel);
+        }
+
+        @Override
+        public void composeArchive(String targetBucketName, String targetFilename, String segmentPrefix,
+                int segmentCount, String entryName, long entryTime, long crc, long size, long compressedSize)
+                throws Exception {
+            delegate.composeArchive(targetBucketName, targetFilename, segmentPrefix, segmentCount, entryName,
+                    entryTime, crc, size, compressedSize);
+        }
+
+        @Override
+        public void deleteSegments(String targetBucketName, String segmentPrefix) {
+            delegate.deleteSegments(targetBucketName, segmentPrefix);
+        }
+    }
+
+    @Rule
+    public WorkflowTest workflowTest = new WorkflowTest();
+
+    private final FileProcessingWorkflowClientFactory workflowFactory = new FileProcessingWorkflowClientFactoryImpl();
+
+    private InMemoryS3 s3;
+
+    private byte[] data;
+
+    @Before
+    public void setUp() throws Exception {
+        s3 = new InMemoryS3();
+        Random random = new Random(3);
+        data = new byte[250000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        s3.put("source", "data.txt", data);
+        workflowTest.addWorkflowImplementationType(FileProcessingWorkflowZipImpl.class);
+    }
+
+    @Test
+    public void splitFileIsComposedIntoOneArchive() throws IOException {
+        workflowTest.addActivitiesImplementation(segmentActivities());
+        Promise<Void> done = workflowFactory.getClient().processFile("source", "data.txt", "target", "data.zip",
+                splitOptions());
+        assertComposed(done);
+    }
+
+    @Test
+    public void failedSegmentDeletesTheOthers() {
+        // Lets the retries of the lost segment run out
+        workflowTest.setClockAccelerationCoefficient(100000);
+        workflowTest.addActivitiesImplementation(new FailingSegmentActivities(segmentActivities()));
+        new TryCatchFinally() {
+
+            private Throwable failure;
+
+            @Override
+            protected void doTry() throws Throwable {
+                workflowFactory.getClient().processFile("source", "data.txt", "target", "data.zip", splitOptions());
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                failure = e;
+            }
+
+            @Override
+            protected void doFinally() throws Throwable {
+                Assert.assertNotNull(failure);
+                Assert.assertNull(s3.get("target", "data.zip"));
+                Assert.assertEquals(0, s3.count("target", "data.zip.segments/"));
+            }
+        };
+    }
+
+    @Test
+    public void skippedUploadIsReportedAsUnchanged() {
+        workflowTest.addActivitiesImplementation(SimpleStoreActivities.DOWNLOAD_TASK_LIST, new UnchangedStore());
+        workflowTest.addActivitiesImplementation(HOST_TASK_LIST, new UnchangedStore());
+        workflowTest.addActivitiesImplementation(HOST_TASK_LIST, new NoopProcessor());
+        final FileProcessingWorkflowZipImpl workflow = new FileProcessingWorkflowZipImpl();
+        new TryCatchFinally() {
+
+            private Throwable failure;
+
+            @Override
+            protected void doTry() throws Throwable {
+                workflow.processFile("source", "data.txt", "target", "data.zip", new FileProcessingOptions());
+            }
+
+            @Override
+            protected void doCatch(Throwable e) throws Throwable {
+                failure = e;
+                throw e;
+            }
+
+            @Override
+            protected void doFinally() throws Throwable {
+                // Skip assertions as their failure masks original exception
+                if (failure == null) {
+                    Assert.assertEquals("Unchanged", workflow.getState());
+                }
+            }
+        };
+    }
+
+    private SegmentedFileProcessingActivities segmentActivities() {
+        return new SegmentedFileProcessingActivitiesZipImpl(s3.client(), 2, S3MultipartOutputStream.MINIMUM_PART_SIZE,
+                2);
+    }
+
+    private FileProcessingOptions splitOptions() {
+        FileProcessingOptions options = new FileProcessingOptions();
+        options.setSplitThresholdBytes(SEGMENT_SIZE);
+        options.setSegmentSizeBytes(SEGMENT_SIZE);
+        return options;
+    }
+
+    @Asynchronous
+    private void assertComposed(Promise<Void> done) throws IOException {
+        File zipFile = File.createTempFile("split", ".zip");
+        try {
+            FileOutputStream out = new FileOutputStream(zipFile);
+            try {
+                out.write(s3.get("target", "data.zip"));
+            }
+            finally {
+                out.close();
+            }
+            ZipFile zip = new ZipFile(zipFile);
+            try {
+                Assert.assertArrayEquals(data, readFully(zip.getInputStream(zip.getEntry("data.txt"))));
+            }
+            finally {
+                zip.close();
+            }
+        }
+        finally {
+            zipFile.delete();
+        }
+        Assert.assertEquals(0, s3.count("target", "data.zip.segments/"));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HostRoutingActivitiesImplTest {
+
+    private static final long NOW = 1000000;
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private final HostRoutingActivitiesImpl router = new HostRoutingActivitiesImpl(null, "bucket", "hosts/", 90000);
+
+    @Test
+    public void prefersLeastLoadedHost() {
+        List<HostLoadReport> reports = Arrays.asList(report("busy", NOW, 50 * GB, 3), report("idle", NOW, 50 * GB, 0));
+        Assert.assertEquals("idle", router.choose(reports, "entry", GB, NOW).getHostName());
+    }
+
+    @Test
+    public void prefersHostCachingTheFile() {
+        List<HostLoadReport> reports = Arrays.asList(report("idle", NOW, 50 * GB, 0),
+                report("cached", NOW, 50 * GB, 2, "entry"));
+        Assert.assertEquals("cached", router.choose(reports, "entry", GB, NOW).getHostName());
+    }
+
+    @Test
+    public void skipsStaleAndFullHosts() {
+        List<HostLoadReport> reports = Arrays.asList(report("stale", NOW - 100000, 50 * GB, 0),
+                report("full", NOW, GB, 0), report("busy", NOW, 50 * GB, 5));
+        Assert.assertEquals("busy", router.choose(reports, "entry", GB, NOW).getHostName());
+        Assert.assertNull(router.choose(Collections.<HostLoadReport> emptyList(), "entry", GB, NOW));
+    }
+
+    @Test
+    public void skipsHostsNotAcceptingWork() {
+        HostLoadReport paused = new HostLoadReport("paused", NOW, 50 * GB, 100 * GB, 0,
+                Collections.singleton("entry"), false);
+        List<HostLoadReport> reports = Arrays.asList(paused, report("busy", NOW, 50 * GB, 5));
+        Assert.assertEquals("busy", router.choose(reports, "entry", GB, NOW).getHostName());
+        Assert.assertFalse(HostLoadReport.parse(paused.toString()).isAcceptingWork());
+    }
+
+    @Test
+    public void readsReportsAcrossTruncatedListings() {
+        InMemoryS3 s3 = new InMemoryS3();
+        s3.listingPageSize = 2;
+        s3.put("source", "file", new byte[1024]);
+        long now = System.currentTimeMillis();
+        s3.put("bucket", "hosts/a", report("a", now, 50 * GB, 4).toString().getBytes(StandardCharsets.UTF_8));
+        s3.put("bucket", "hosts/b", report("b", now, 50 * GB, 3).toString().getBytes(StandardCharsets.UTF_8));
+        s3.put("bucket", "hosts/c", report("c", now, 50 * GB, 0).toString().getBytes(StandardCharsets.UTF_8));
+        HostRoutingActivitiesImpl s3Router = new HostRoutingActivitiesImpl(s3.client(), "bucket", "hosts/", 90000);
+        Assert.assertEquals("c", s3Router.chooseHost("source", "file"));
+    }
+
+    @Test
+    public void unconfiguredRoutingUsesCommonTaskList() {
+        HostRoutingActivitiesImpl unconfigured = new HostRoutingActivitiesImpl(null, null, "hosts/", 90000);
+        Assert.assertNull(unconfigured.chooseHost("source", "file"));
+    }
+
+    @Test
+    public void reportRoundTrips() {
+        HostLoadReport report = report("host-1", NOW, 50 * GB, 2, "a", "b");
+        HostLoadReport parsed = HostLoadReport.parse(report.toString());
+        Assert.assertEquals("host-1", parsed.getHostName());
+        Assert.assertEquals(NOW, parsed.getTimestamp());
+        Assert.assertEquals(2, parsed.getInFlightTasks());
+        Assert.assertEquals(report.getCachedEntries(), parsed.getCachedEntries());
+        Assert.assertTrue(parsed.isAcceptingWork());
+        Assert.assertNull(HostLoadReport.parse("garbage"));
+    }
+
+    private static HostLoadReport report(String host, long timestamp, long usableDiskBytes, int inFlightTasks,
+            String... cachedEntries) {
+        Set<String> entries = new LinkedHashSet<String>(Arrays.asList(cachedEntries));
+        return new HostLoadReport(host, timestamp, usableDiskBytes, 100 * GB, inFlightTasks, entries, true);
+    }
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpGet;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * Local stand-in for S3 used by the transfer tests. Only the calls made by the
+ * transfer engines are implemented, anything else fails the test.
+ */
+class InMemoryS3 implements InvocationHandler {
+
+    private final SortedMap<String, byte[]> objects = new TreeMap<String, byte[]>();
+
+    private final Map<String, Map<String, String>> userMetadata = new HashMap<String, Map<String, String>>();
+
+    private final Map<String, InitiateMultipartUploadRequest> uploads = new HashMap<String, InitiateMultipartUploadRequest>();
+
+    private final Map<String, SortedMap<Integer, byte[]>> uploadParts = new HashMap<String, SortedMap<Integer, byte[]>>();
+
+    final AtomicInteger rangedGets = new AtomicInteger();
+
+    /**
+     * Number of single PUTs and part uploads
+     */
+    final AtomicInteger writes = new AtomicInteger();
+
+    /**
+     * Numbers of the parts uploaded, in the order they arrived
+     */
+    final List<Integer> uploadedPartNumbers = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * Maximum number of keys returned by a listing
+     */
+    int listingPageSize = 1000;
+
+    /**
+     * Number of the part whose uploads fail, 0 lets every part through
+     */
+    volatile int failingPartNumber;
+
+    AmazonS3 client() {
+        return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[] { AmazonS3.class }, this);
+    }
+
+    synchronized void put(String bucketName, String key, byte[] content) {
+        objects.put(bucketName + "/" + key, content);
+        userMetadata.remove(bucketName + "/" + key);
+    }
+
+    synchronized byte[] get(String bucketName, String key) {
+        return objects.get(bucketName + "/" + key);
+    }
+
+    synchronized void delete(String bucketName, String key) {
+        objects.remove(bucketName + "/" + key);
+        userMetadata.remove(bucketName + "/" + key);
+    }
+
+    /**
+     * @return number of objects whose key starts with the prefix
+     */
+    synchronized int count(String bucketName, String prefix) {
+        String from = bucketName + "/" + prefix;
+        int count = 0;
+        for (String key : objects.tailMap(from).keySet()) {
+            if (!key.startsWith(from)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of multipart uploads neither completed nor aborted
+     */
+    synchronized int openUploads() {
+        return uploadParts.size();
+    }
+
+    static String eTag(byte[] content) {
+        return Integer.toHexString(Arrays.hashCode(content));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.equals("getObjectMetadata") && args.length == 2) {
+            return getObjectMetadata((String) args[0], (String) args[1]);
+        }
+        if (name.equals("getObject") && args.length == 1 && args[0] instanceof GetObjectRequest) {
+            return getObject((GetObjectRequest) args[0]);
+        }
+        if (name.equals("getObject") && args.length == 2) {
+            return getObject(new GetObjectRequest((String) args[0], (String) args[1]));
+        }
+        if (name.equals("listObjects") && args.length == 1 && args[0] instanceof ListObjectsRequest) {
+            return listObjects((ListObjectsRequest) args[0]);
+        }
+        if (name.equals("deleteObject") && args.length == 2) {
+            delete((String) args[0], (String) args[1]);
+            return null;
+        }
+        if (name.equals("putObject") && args.length == 1 && args[0] instanceof PutObjectRequest) {
+            putObject((PutObjectRequest) args[0]);
+            return null;
+        }
+        if (name.equals("initiateMultipartUpload")) {
+            return initiateMultipartUpload((InitiateMultipartUploadRequest) args[0]);
+        }
+        if (name.equals("uploadPart")) {
+            return uploadPart((UploadPartRequest) args[0]);
+        }
+        if (name.equals("listParts")) {
+            return listParts((ListPartsRequest) args[0]);
+        }
+        if (name.equals("completeMultipartUpload")) {
+            completeMultipartUpload((CompleteMultipartUploadRequest) args[0]);
+            return null;
+        }
+        if (name.equals("abortMultipartUpload")) {
+            abortMultipartUpload((AbortMultipartUploadRequest) args[0]);
+            return null;
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    private synchronized ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        byte[] content = get(bucketName, key);
+        if (content == null) {
+            AmazonS3Exception e = new AmazonS3Exception("Not Found");
+            e.setStatusCode(404);
+            throw e;
+        }
+        ObjectMetadata metadata = metadata(content);
+        Map<String, String> user = userMetadata.get(bucketName + "/" + key);
+        if (user != null) {
+            metadata.setUserMetadata(user);
+        }
+        return metadata;
+    }
+
+    /**
+     * Like S3 without a delimiter, truncated listings carry no next marker
+     */
+    private synchronized ObjectListing listObjects(ListObjectsRequest request) {
+        String bucketPrefix = request.getBucketName() + "/";
+        String from = bucketPrefix + (request.getMarker() == null ? "" : request.getMarker() + "\0");
+        ObjectListing listing = new ObjectListing();
+        listing.setBucketName(request.getBucketName());
+        for (Map.Entry<String, byte[]> object : objects.tailMap(from).entrySet()) {
+            String key = object.getKey();
+            if (!key.startsWith(bucketPrefix)) {
+                break;
+            }
+            key = key.substring(bucketPrefix.length());
+            if (request.getPrefix() != null && !key.startsWith(request.getPrefix())) {
+                continue;
+            }
+            if (listing.getObjectSummaries().size() == listingPageSize) {
+                listing.setTruncated(true);
+                break;
+            }
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(key);
+            summary.setSize(object.getValue().length);
+            listing.getObjectSummaries().add(summary);
+        }
+        return listing;
+    }
+
+    private void putObject(PutObjectRequest request) throws IOException {
+        writes.incrementAndGet();
+        byte[] content = Files.readAllBytes(request.getFile().toPath());
+        synchronized (this) {
+            put(request.getBucketName(), request.getKey(), content);
+            if (request.getMetadata() != null) {
+                userMetadata.put(request.getBucketName() + "/" + request.getKey(), request.getMetadata()
+                        .getUserMetadata());
+            }
+        }
+    }
+
+    private synchronized InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = Integer.toString(uploads.size() + 1);
+        uploads.put(uploadId, request);
+        uploadParts.put(uploadId, new TreeMap<Integer, byte[]>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    private UploadPartResult uploadPart(UploadPartRequest request) throws IOException {
+        writes.incrementAndGet();
+        if (request.getPartNumber() == failingPartNumber) {
+            throw new AmazonS3Exception("Part " + failingPartNumber + " failed");
+        }
+        byte[] data = new byte[(int) request.getPartSize()];
+        if (request.getFile() != null) {
+            RandomAccessFile file = new RandomAccessFile(request.getFile(), "r");
+            try {
+                file.seek(request.getFileOffset());
+                file.readFully(data);
+            }
+            finally {
+                file.close();
+            }
+        }
+        else {
+            DataInputStream in = new DataInputStream(request.getInputStream());
+            in.readFully(data);
+        }
+        synchronized (this) {
+            uploadParts.get(request.getUploadId()).put(request.getPartNumber(), data);
+        }
+        uploadedPartNumbers.add(request.getPartNumber());
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(eTag(data));
+        return result;
+    }
+
+    private synchronized PartListing listParts(ListPartsRequest request) {
+        SortedMap<Integer, byte[]> parts = uploadParts.get(request.getUploadId());
+        if (parts == null) {
+            AmazonS3Exception e = new AmazonS3Exception("NoSuchUpload");
+            e.setStatusCode(404);
+            throw e;
+        }
+        PartListing listing = new PartListing();
+        for (Map.Entry<Integer, byte[]> part : parts.entrySet()) {
+            PartSummary summary = new PartSummary();
+            summary.setPartNumber(part.getKey());
+            summary.setSize(part.getValue().length);
+            summary.setETag(eTag(part.getValue()));
+            listing.getParts().add(summary);
+        }
+        return listing;
+    }
+
+    private synchronized void completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        InitiateMultipartUploadRequest upload = uploads.get(request.getUploadId());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (PartETag part : request.getPartETags()) {
+            byte[] data = uploadParts.get(request.getUploadId()).get(part.getPartNumber());
+            content.write(data, 0, data.length);
+        }
+        put(upload.getBucketName(), upload.getKey(), content.toByteArray());
+        if (upload.getObjectMetadata() != null) {
+            userMetadata.put(upload.getBucketName() + "/" + upload.getKey(), upload.getObjectMetadata()
+                    .getUserMetadata());
+        }
+        uploadParts.remove(request.getUploadId());
+    }
+
+    private synchronized void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        uploadParts.remove(request.getUploadId());
+    }
+
+    private S3Object getObject(GetObjectRequest request) {
+        byte[] content = get(request.getBucketName(), request.getKey());
+        if (!request.getMatchingETagConstraints().isEmpty()
+                && !request.getMatchingETagConstraints().contains(eTag(content))) {
+            return null;
+        }
+        int from = 0;
+        int to = content.length - 1;
+        long[] range = request.getRange();
+        if (range != null) {
+            rangedGets.incrementAndGet();
+            from = (int) range[0];
+            to = (int) Math.min(range[1], content.length - 1);
+        }
+        S3Object obj = new S3Object();
+        obj.setBucketName(request.getBucketName());
+        obj.setKey(request.getKey());
+        obj.setObjectMetadata(metadata(content));
+        obj.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(content, from, to - from + 1), new HttpGet()));
+        return obj;
+    }
+
+    private static ObjectMetadata metadata(byte[] content) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(content.length);
+        metadata.setHeader("ETag", eTag(content));
+        return metadata;
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compares the stream based local file handling the zip activity used to have
+ * with {@link LocalFileIO}. Not run as part of the tests as the large files
+ * take minutes; run it with the test classpath:
+ * 
+ * <pre>
+ * java LocalFileIOBenchmark [sizeMB ...]
+ * </pre>
+ * 
+ * Sizes default to 1, 100 and 2048 MB. Files are created in java.io.tmpdir,
+ * so make sure it has room for three times the largest size. Each
+ * measurement is the best of a few runs after a warm up run, which keeps the
+ * page cache warm for both paths alike.
+ */
+public class LocalFileIOBenchmark {
+
+    private static final int RUNS = 3;
+
+    private static final int OLD_BUFFER = 1024;
+
+    public static void main(String[] args) throws IOException {
+        long[] sizes = args.length == 0 ? new long[] { 1, 100, 2048 } : new long[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Long.parseLong(args[i]);
+        }
+        LocalFileIO io = new LocalFileIO();
+        System.out.printf("%10s %14s %14s %14s %14s%n", "size MB", "zip streams", "zip nio", "copy streams",
+                "copy transferTo");
+        for (long sizeMB : sizes) {
+            File source = createInput(sizeMB * 1024 * 1024);
+            File target = File.createTempFile("benchmark", ".out");
+            try {
+                long zipOld = best(new ZipWithStreams(source, target));
+                long zipNew = best(new ZipWithLocalFileIO(io, source, target));
+                long copyOld = best(new CopyWithStreams(source, target));
+                long copyNew = best(new CopyWithTransferTo(source, target));
+                System.out.printf("%10d %12dms %12dms %12dms %12dms%n", sizeMB, zipOld, zipNew, copyOld, copyNew);
+            }
+            finally {
+                source.delete();
+                target.delete();
+            }
+        }
+    }
+
+    private interface Task {
+
+        void run() throws IOException;
+
+    }
+
+    private static long best(Task task) throws IOException {
+        task.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1000000);
+        }
+        return best;
+    }
+
+    /**
+     * Half random, half repetitive data so that deflate does real work
+     */
+    private static File createInput(long size) throws IOException {
+        File file = File.createTempFile("benchmark", ".in");
+        Random random = new Random(size);
+        byte[] block = new byte[1024 * 1024];
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                for (int i = 0; i < block.length; i += 2) {
+                    block[i] = (byte) ('a' + i % 16);
+                }
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * The zip loop of the activity before {@link LocalFileIO}
+     */
+    private static class ZipWithStreams implements Task {
+
+        private final File source;
+
+        private final File target;
+
+        ZipWithStreams(File source, File target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public void run() throws IOException {
+            ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+            BufferedInputStream origin = new BufferedInputStream(new FileInputStream(source), OLD_BUFFER);
+            try {
+                byte data[] = new byte[OLD_BUFFER];
+                out.putNextEntry(new ZipEntry(source.getName()));
+                int count;
+                while ((count = origin.read(data, 0, OLD_BUFFER)) != -1) {
+                    out.write(data, 0, count);
+                }
+            }
+            finally {
+                origin.close();
+                out.close();
+            }
+        }
+    }
+
+    private static class ZipWithLocalFileIO implements Task {
+
+        private final LocalFileIO io;
+
+        private final File source;
+
+        private final File target;
+
+        ZipWithLocalFileIO(LocalFileIO io, File source, File target) {
+            this.io = io;
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public void run() throws IOException {
+            ZipOutputStream out = new ZipOutputStream(io.openOutput(target));
+            InputStream origin = io.openInput(source);
+            try {
+                byte data[] = new byte[io.getBufferSize()];
+                out.putNextEntry(new ZipEntry(source.getName()));
+                int count;
+                while ((count = origin.read(data, 0, data.length)) != -1) {
+                    out.write(data, 0, count);
+                }
+            }
+            finally {
+                origin.close();
+                out.close();
+            }
+        }
+    }
+
+    private static class CopyWithStreams implements Task {
+
+        private final File source;
+
+        private final File target;
+
+        CopyWithStreams(File source, File target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public void run() throws IOException {
+            InputStream in = new BufferedInputStream(new FileInputStream(source), OLD_BUFFER);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+            try {
+                byte data[] = new byte[OLD_BUFFER];
+                int count;
+                while ((count = in.read(data)) != -1) {
+                    out.write(data, 0, count);
+                }
+            }
+            finally {
+                in.close();
+                out.close();
+            }
+        }
+    }
+
+    private static class CopyWithTransferTo implements Task {
+
+        private final File source;
+
+        private final File target;
+
+        CopyWithTransferTo(File source, File target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public void run() throws IOException {
+            Files.deleteIfExists(target.toPath());
+            LocalFileIO.copy(source, target);
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalFileIOTest {
+
+    private File source;
+
+    private File target;
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        source = File.createTempFile("localio", ".in");
+        target = File.createTempFile("localio", ".out");
+        content = new byte[300 * 1024 + 5];
+        new Random(7).nextBytes(content);
+        Files.write(source.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        source.delete();
+        target.delete();
+    }
+
+    @Test
+    public void readsThroughChannel() throws IOException {
+        Assert.assertArrayEquals(content, readAll(new LocalFileIO(4096, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void readsThroughMapping() throws IOException {
+        Assert.assertArrayEquals(content, readAll(new LocalFileIO(4096, 0)));
+    }
+
+    @Test
+    public void writesThroughChannel() throws IOException {
+        OutputStream out = new LocalFileIO(1000, 0).openOutput(target);
+        try {
+            out.write(content, 0, 10);
+            out.write(content[10]);
+            out.write(content, 11, content.length - 11);
+        }
+        finally {
+            out.close();
+        }
+        Assert.assertTrue(Arrays.equals(content, Files.readAllBytes(target.toPath())));
+    }
+
+    @Test
+    public void copiesWithTransferTo() throws IOException {
+        Assert.assertEquals(content.length, LocalFileIO.copy(source, target));
+        Assert.assertTrue(Arrays.equals(content, Files.readAllBytes(target.toPath())));
+    }
+
+    private byte[] readAll(LocalFileIO io) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        InputStream in = io.openInput(source);
+        try {
+            byte[] buffer = new byte[777];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                result.write(buffer, 0, count);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return result.toByteArray();
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalObjectCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void hitsOnlyForSameETag() throws IOException {
+        LocalObjectCache cache = new LocalObjectCache(new File(directory, "cache"), 1024);
+        cache.put("bucket", "key", "etag-1", createFile("downloaded", 100));
+
+        File destination = new File(directory, "destination");
+        Assert.assertTrue(cache.get("bucket", "key", "etag-1", destination));
+        Assert.assertEquals(100, destination.length());
+        Assert.assertFalse(cache.get("bucket", "key", "etag-2", new File(directory, "other")));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        LocalObjectCache cache = new LocalObjectCache(new File(directory, "cache"), 250);
+        cache.put("bucket", "a", "etag", createFile("a", 100));
+        cache.put("bucket", "b", "etag", createFile("b", 100));
+        Assert.assertTrue(cache.get("bucket", "a", "etag", new File(directory, "a2")));
+        cache.put("bucket", "c", "etag", createFile("c", 100));
+
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(200, cache.getSizeBytes());
+        Assert.assertFalse(cache.get("bucket", "b", "etag", new File(directory, "b2")));
+        Assert.assertTrue(cache.get("bucket", "a", "etag", new File(directory, "a3")));
+    }
+
+    @Test
+    public void reloadsEntriesOfPreviousRun() throws IOException {
+        new LocalObjectCache(new File(directory, "cache"), 1024).put("bucket", "key", "etag", createFile("key", 10));
+
+        LocalObjectCache reloaded = new LocalObjectCache(new File(directory, "cache"), 1024);
+        Assert.assertEquals(1, reloaded.getEntryCount());
+        Assert.assertTrue(reloaded.get("bucket", "key", "etag", new File(directory, "reloaded")));
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File file = new File(directory, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[size]);
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelArchiveBuilderTest {
+
+    private final List<File> files = new ArrayList<File>();
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void storesIncompressibleAndDeflatesTheRest() throws IOException {
+        byte[] random = new byte[200 * 1024];
+        new Random(3).nextBytes(random);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 200 * 1024) {
+            text.append("The quick brown fox jumps over the lazy dog ").append(text.length()).append('\n');
+        }
+        byte[] small = "tiny".getBytes(StandardCharsets.UTF_8);
+        File randomFile = createFile(random);
+        File textFile = createFile(text.toString().getBytes(StandardCharsets.UTF_8));
+        File smallFile = createFile(small);
+        File archive = createFile(new byte[0]);
+
+        ParallelArchiveBuilder builder = new ParallelArchiveBuilder(pool, -1, new LocalFileIO(8192, Long.MAX_VALUE));
+        List<ParallelArchiveBuilder.Entry> entries = builder.build(Arrays.asList(randomFile, textFile, smallFile),
+                Arrays.asList("photo.jpg", "notes.txt", "tiny.txt"), archive);
+
+        Assert.assertEquals(ZipStreamWriter.STORED, entries.get(0).getMethod());
+        Assert.assertEquals(ZipStreamWriter.DEFLATED, entries.get(1).getMethod());
+        Assert.assertEquals(ZipStreamWriter.DEFLATED, entries.get(2).getMethod());
+        ZipFile zip = new ZipFile(archive);
+        try {
+            Assert.assertEquals(ZipEntry.STORED, zip.getEntry("photo.jpg").getMethod());
+            Assert.assertArrayEquals(random, read(zip, "photo.jpg"));
+            Assert.assertArrayEquals(text.toString().getBytes(StandardCharsets.UTF_8), read(zip, "notes.txt"));
+            Assert.assertArrayEquals(small, read(zip, "tiny.txt"));
+        }
+        finally {
+            zip.close();
+        }
+        Assert.assertFalse(new File(archive.getPath() + ".1.deflate").exists());
+    }
+
+    @Test
+    public void failedBuildLeavesNoTemporaryFiles() throws IOException {
+        byte[] random = new byte[2 * 1024 * 1024];
+        new Random(7).nextBytes(random);
+        File missing = createFile(new byte[0]);
+        missing.delete();
+        List<File> inputs = new ArrayList<File>();
+        List<String> names = new ArrayList<String>();
+        inputs.add(missing);
+        names.add("missing.bin");
+        for (int i = 0; i < 6; i++) {
+            inputs.add(createFile(random));
+            names.add("random" + i + ".bin");
+        }
+        File archive = createFile(new byte[0]);
+
+        ParallelArchiveBuilder builder = new ParallelArchiveBuilder(pool, -1, new LocalFileIO(8192, Long.MAX_VALUE));
+        try {
+            builder.build(inputs, names, archive);
+            Assert.fail("missing input must fail the build");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            Assert.assertFalse(new File(archive.getPath() + "." + i + ".deflate").exists());
+        }
+    }
+
+    @Test
+    public void entropyTellsTextFromNoise() throws IOException {
+        byte[] random = new byte[100 * 1024];
+        new Random(5).nextBytes(random);
+        byte[] zeros = new byte[100 * 1024];
+        Assert.assertTrue(ParallelArchiveBuilder.sampleEntropy(createFile(random)) > 7.9);
+        Assert.assertEquals(0.0, ParallelArchiveBuilder.sampleEntropy(createFile(zeros)), 0.0);
+    }
+
+    private File createFile(byte[] content) throws IOException {
+        File file = File.createTempFile("archive", ".bin");
+        files.add(file);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream in = zip.getInputStream(zip.getEntry(name));
+        try {
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                content.write(buffer, 0, count);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return content.toByteArray();
+    }
+
+}
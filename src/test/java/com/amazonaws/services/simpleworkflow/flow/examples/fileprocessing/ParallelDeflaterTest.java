@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelDeflaterTest {
+
+    private ForkJoinPool pool;
+
+    private File zipFile;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(4);
+        zipFile = File.createTempFile("parallel", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        zipFile.delete();
+    }
+
+    @Test
+    public void producesEntryReadableByZipFileAndZipInputStream() throws IOException {
+        byte[] data = compressibleData(1000 * 1000);
+        writeZip(data);
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            ZipEntry entry = zip.getEntry("data.txt");
+            Assert.assertEquals(data.length, entry.getSize());
+            Assert.assertEquals(crc(data), entry.getCrc());
+            Assert.assertArrayEquals(data, readFully(zip.getInputStream(entry)));
+        }
+        finally {
+            zip.close();
+        }
+
+        ZipInputStream in = new ZipInputStream(new FileInputStream(zipFile));
+        try {
+            Assert.assertEquals("data.txt", in.getNextEntry().getName());
+            Assert.assertArrayEquals(data, readFully(in));
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void compressesEmptyInput() throws IOException {
+        writeZip(new byte[0]);
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            Assert.assertEquals(0, readFully(zip.getInputStream(zip.getEntry("data.txt"))).length);
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private void writeZip(byte[] data) throws IOException {
+        ZipStreamWriter writer = new ZipStreamWriter(new FileOutputStream(zipFile));
+        OutputStream entry = writer.beginDeflatedEntry("data.txt", System.currentTimeMillis());
+        ParallelDeflater.Result result = new ParallelDeflater(pool, 6, 32 * 1024).deflate(new ByteArrayInputStream(data),
+                entry);
+        writer.endDeflatedEntry(result.getCrc(), result.getSize());
+        writer.close();
+        Assert.assertEquals(crc(data), result.getCrc());
+        Assert.assertEquals(data.length, result.getSize());
+    }
+
+    private static byte[] compressibleData(int size) {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+
+public class ParallelMultipartUploaderTest {
+
+    private static final int PART_SIZE = S3MultipartOutputStream.MINIMUM_PART_SIZE;
+
+    /**
+     * Keeps the last checkpoint like the journal of the store activities
+     */
+    private static final class LastCheckpoint implements ParallelMultipartUploader.CheckpointListener {
+
+        private String value;
+
+        @Override
+        public void checkpoint(UploadCheckpoint checkpoint) {
+            value = checkpoint.toString();
+        }
+    }
+
+    private ExecutorService executor;
+
+    private InMemoryS3 s3;
+
+    private File file;
+
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        s3 = new InMemoryS3();
+        // Three full parts and a short last one
+        data = new byte[3 * PART_SIZE + 1000];
+        new Random(5).nextBytes(data);
+        file = File.createTempFile("upload", ".bin");
+        Files.write(file.toPath(), data);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void resumedUploadSendsOnlyMissingParts() throws IOException {
+        // One part at a time, so the parts before the failing one are all in S3
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(s3.client(), executor, PART_SIZE, 1);
+        LastCheckpoint journal = new LastCheckpoint();
+        s3.failingPartNumber = 3;
+        try {
+            uploader.upload("bucket", "key", file, null, null, journal);
+            Assert.fail("uploaded with a failed part");
+        }
+        catch (AmazonS3Exception e) {
+            Assert.assertNull(s3.get("bucket", "key"));
+        }
+        Assert.assertEquals(Arrays.asList(1, 2), s3.uploadedPartNumbers);
+
+        s3.failingPartNumber = 0;
+        s3.uploadedPartNumbers.clear();
+        uploader = new ParallelMultipartUploader(s3.client(), executor, PART_SIZE, 2);
+        uploader.upload("bucket", "key", file, null, UploadCheckpoint.parse(journal.value), journal);
+
+        List<Integer> resent = new ArrayList<Integer>(s3.uploadedPartNumbers);
+        Collections.sort(resent);
+        Assert.assertEquals(Arrays.asList(3, 4), resent);
+        Assert.assertArrayEquals(data, s3.get("bucket", "key"));
+        Assert.assertEquals(0, s3.openUploads());
+    }
+
+    @Test
+    public void checkpointOfFinishedUploadStartsOver() throws IOException {
+        ParallelMultipartUploader uploader = new ParallelMultipartUploader(s3.client(), executor, PART_SIZE, 2);
+        LastCheckpoint journal = new LastCheckpoint();
+        uploader.upload("bucket", "key", file, null, null, journal);
+        s3.delete("bucket", "key");
+        s3.uploadedPartNumbers.clear();
+
+        // The upload of the checkpoint no longer exists in S3
+        uploader.upload("bucket", "key", file, null, UploadCheckpoint.parse(journal.value), journal);
+        Assert.assertEquals(4, s3.uploadedPartNumbers.size());
+        Assert.assertArrayEquals(data, s3.get("bucket", "key"));
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelRangeDownloaderTest {
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+
+    private ExecutorService executor;
+
+    private File destination;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        destination = File.createTempFile("download", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        destination.delete();
+    }
+
+    @Test
+    public void downloadsAllRangesToTheirOffsets() throws IOException {
+        byte[] content = new byte[100 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        s3.put("bucket", "key", content);
+
+        final long[] lastProgress = new long[2];
+        ParallelRangeDownloader downloader = new ParallelRangeDownloader(s3.client(), executor, 8 * 1024, 4);
+        downloader.download("bucket", "key", destination, null, new ParallelRangeDownloader.ProgressListener() {
+
+            @Override
+            public void progress(long bytesTransferred, long totalBytes, DownloadCheckpoint checkpoint) {
+                lastProgress[0] = bytesTransferred;
+                lastProgress[1] = totalBytes;
+            }
+        });
+
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertEquals(13, s3.rangedGets.get());
+        Assert.assertEquals(content.length, lastProgress[0]);
+        Assert.assertEquals(content.length, lastProgress[1]);
+    }
+
+    @Test
+    public void downloadsEmptyObject() throws IOException {
+        s3.put("bucket", "empty", new byte[0]);
+        new ParallelRangeDownloader(s3.client(), executor, 1024, 4).download("bucket", "empty", destination, null, null);
+        Assert.assertEquals(0, destination.length());
+        Assert.assertEquals(0, s3.rangedGets.get());
+    }
+
+    @Test
+    public void resumesAfterDurablePrefix() throws IOException {
+        byte[] content = new byte[10 * 1024];
+        new Random(7).nextBytes(content);
+        s3.put("bucket", "key", content);
+        // Partial file from an earlier attempt: first 4KB are valid, the rest is garbage
+        byte[] partial = new byte[content.length];
+        System.arraycopy(content, 0, partial, 0, 4 * 1024);
+        Files.write(destination.toPath(), partial);
+
+        DownloadCheckpoint previous = new DownloadCheckpoint(InMemoryS3.eTag(content), content.length, 4 * 1024);
+        new ParallelRangeDownloader(s3.client(), executor, 2 * 1024, 2).download("bucket", "key", destination, previous,
+                null);
+
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertEquals(3, s3.rangedGets.get());
+    }
+
+    @Test
+    public void ignoresCheckpointOfAnotherVersion() throws IOException {
+        byte[] content = new byte[4 * 1024];
+        new Random(9).nextBytes(content);
+        s3.put("bucket", "key", content);
+
+        DownloadCheckpoint previous = new DownloadCheckpoint("stale", content.length, 2 * 1024);
+        new ParallelRangeDownloader(s3.client(), executor, 1024, 2).download("bucket", "key", destination, previous, null);
+
+        Assert.assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        Assert.assertEquals(4, s3.rangedGets.get());
+    }
+
+}
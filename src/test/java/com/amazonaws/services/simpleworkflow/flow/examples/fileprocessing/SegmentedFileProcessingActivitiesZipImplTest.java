@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentedFileProcessingActivitiesZipImplTest {
+
+    private ForkJoinPool pool;
+
+    private File zipFile;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(2);
+        zipFile = File.createTempFile("segmented", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        zipFile.delete();
+    }
+
+    @Test
+    public void combinesCrcOfPieces() {
+        byte[] data = compressibleData(300000);
+        long combined = 0;
+        for (int start = 0; start < data.length; start += 70000) {
+            int end = Math.min(data.length, start + 70000);
+            combined = Crc32Combine.combine(combined, crc(data, start, end), end - start);
+        }
+        Assert.assertEquals(crc(data, 0, data.length), combined);
+    }
+
+    @Test
+    public void segmentsCompressedApartFormOneEntry() throws IOException {
+        byte[] data = compressibleData(1000 * 1000);
+        int segmentSize = 300000;
+        long time = System.currentTimeMillis();
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        archive.write(SegmentedFileProcessingActivitiesZipImpl.zipHeader("data.txt", time));
+        long crc = 0;
+        long compressedSize = 0;
+        ParallelDeflater deflater = new ParallelDeflater(pool, -1, ParallelDeflater.DEFAULT_BLOCK_SIZE);
+        for (int start = 0; start < data.length; start += segmentSize) {
+            int end = Math.min(data.length, start + segmentSize);
+            byte[] dictionary = start == 0 ? null : Arrays.copyOfRange(data, Math.max(0, start - 32 * 1024), start);
+            ParallelDeflater.Result result = deflater.deflate(new ByteArrayInputStream(data, start, end - start),
+                    archive, dictionary, end == data.length);
+            crc = Crc32Combine.combine(crc, result.getCrc(), result.getSize());
+            compressedSize += result.getCompressedSize();
+        }
+        archive.write(SegmentedFileProcessingActivitiesZipImpl.zipTrailer("data.txt", time, crc, data.length,
+                compressedSize));
+        FileOutputStream out = new FileOutputStream(zipFile);
+        try {
+            archive.writeTo(out);
+        }
+        finally {
+            out.close();
+        }
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            ZipEntry entry = zip.getEntry("data.txt");
+            Assert.assertEquals(data.length, entry.getSize());
+            Assert.assertEquals(compressedSize, entry.getCompressedSize());
+            Assert.assertArrayEquals(data, readFully(zip.getInputStream(entry)));
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    @Test
+    public void composesSegmentsInIndexOrderAndCleansUp() throws Exception {
+        byte[] data = compressibleData(1200 * 1000);
+        long time = System.currentTimeMillis();
+        InMemoryS3 s3 = new InMemoryS3();
+        s3.listingPageSize = 5;
+        long[] entry = putSegments(s3, data, 100000, time);
+        SegmentedFileProcessingActivitiesZipImpl activities = new SegmentedFileProcessingActivitiesZipImpl(s3.client(),
+                2, S3MultipartOutputStream.MINIMUM_PART_SIZE, 2);
+
+        activities.composeArchive("bucket", "data.zip", "data.zip.segments/run/", 12, "data.txt", time, entry[0],
+                data.length, entry[1]);
+        assertArchive(s3.get("bucket", "data.zip"), data);
+        Assert.assertNull(s3.get("bucket", "data.zip.segments/run/0"));
+        Assert.assertNull(s3.get("bucket", "data.zip.segments/run/11"));
+
+        // A retry after the segments were deleted finds the composed archive
+        activities.composeArchive("bucket", "data.zip", "data.zip.segments/run/", 12, "data.txt", time, entry[0],
+                data.length, entry[1]);
+        assertArchive(s3.get("bucket", "data.zip"), data);
+    }
+
+    @Test
+    public void missingSegmentFailsCompose() throws Exception {
+        byte[] data = compressibleData(300000);
+        long time = System.currentTimeMillis();
+        InMemoryS3 s3 = new InMemoryS3();
+        long[] entry = putSegments(s3, data, 100000, time);
+        s3.delete("bucket", "data.zip.segments/run/1");
+        SegmentedFileProcessingActivitiesZipImpl activities = new SegmentedFileProcessingActivitiesZipImpl(s3.client(),
+                2, S3MultipartOutputStream.MINIMUM_PART_SIZE, 2);
+        try {
+            activities.composeArchive("bucket", "data.zip", "data.zip.segments/run/", 3, "data.txt", time, entry[0],
+                    data.length, entry[1]);
+            Assert.fail("composed with a missing segment");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertNull(s3.get("bucket", "data.zip"));
+        }
+
+        activities.deleteSegments("bucket", "data.zip.segments/run/");
+        Assert.assertNull(s3.get("bucket", "data.zip.segments/run/0"));
+        Assert.assertNull(s3.get("bucket", "data.zip.segments/run/2"));
+    }
+
+    /**
+     * Stores the segments compressed apart as the compressSegment activity
+     * does
+     * 
+     * @return CRC32 and compressed size of the entry
+     */
+    private long[] putSegments(InMemoryS3 s3, byte[] data, int segmentSize, long time) throws IOException {
+        long crc = 0;
+        long compressedSize = 0;
+        ParallelDeflater deflater = new ParallelDeflater(pool, -1, ParallelDeflater.DEFAULT_BLOCK_SIZE);
+        for (int start = 0; start < data.length; start += segmentSize) {
+            int end = Math.min(data.length, start + segmentSize);
+            ByteArrayOutputStream segment = new ByteArrayOutputStream();
+            if (start == 0) {
+                segment.write(SegmentedFileProcessingActivitiesZipImpl.zipHeader("data.txt", time));
+            }
+            byte[] dictionary = start == 0 ? null : Arrays.copyOfRange(data, Math.max(0, start - 32 * 1024), start);
+            ParallelDeflater.Result result = deflater.deflate(new ByteArrayInputStream(data, start, end - start),
+                    segment, dictionary, end == data.length);
+            crc = Crc32Combine.combine(crc, result.getCrc(), result.getSize());
+            compressedSize += result.getCompressedSize();
+            s3.put("bucket", "data.zip.segments/run/" + (start / segmentSize), segment.toByteArray());
+        }
+        return new long[] { crc, compressedSize };
+    }
+
+    private void assertArchive(byte[] archive, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(zipFile);
+        try {
+            out.write(archive);
+        }
+        finally {
+            out.close();
+        }
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            Assert.assertArrayEquals(data, readFully(zip.getInputStream(zip.getEntry("data.txt"))));
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private static byte[] compressibleData(int size) {
+        Random random = new Random(7);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return data;
+    }
+
+    private static long crc(byte[] data, int start, int end) {
+        CRC32 crc = new CRC32();
+        crc.update(data, start, end - start);
+        return crc.getValue();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
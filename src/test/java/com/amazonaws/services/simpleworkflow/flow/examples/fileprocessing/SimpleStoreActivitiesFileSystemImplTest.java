@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimpleStoreActivitiesFileSystemImplTest {
+
+    private File directory;
+
+    private SimpleStoreActivitiesFileSystemImpl store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("store").toFile();
+        new File(directory, "local").mkdir();
+        store = new SimpleStoreActivitiesFileSystemImpl(new File(directory, "root").getPath(),
+                new File(directory, "local").getPath() + File.separator, "host");
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void downloadsAndUploadsThroughTheTree() throws Exception {
+        write(new File(directory, "root/source/in/file.txt"), "content");
+
+        Assert.assertEquals("host", store.download("source", "in/file.txt", "run_file.txt"));
+        Assert.assertEquals("content", read(new File(directory, "local/run_file.txt")));
+
+        Assert.assertTrue(store.upload("target", "run_file.txt", "out/file.txt"));
+        Assert.assertEquals("content", read(new File(directory, "root/target/out/file.txt")));
+
+        store.deleteLocalFile("run_file.txt");
+        Assert.assertFalse(new File(directory, "local/run_file.txt").exists());
+        Assert.assertEquals("content", read(new File(directory, "root/target/out/file.txt")));
+    }
+
+    @Test
+    public void skipsUploadOfUnchangedContent() throws Exception {
+        File local = new File(directory, "local/run_out.zip");
+        write(local, "zipped");
+        ContentDigest.writeSidecar(local, "digest-1");
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertFalse(store.upload("target", "run_out.zip", "out.zip"));
+
+        ContentDigest.writeSidecar(local, "digest-2");
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+    }
+
+    @Test
+    public void uploadReplacesTargetWithoutChangingEarlierDownloads() throws Exception {
+        write(new File(directory, "root/bucket/key"), "old");
+        store.download("bucket", "key", "run_key");
+        write(new File(directory, "local/run_new"), "new");
+        store.upload("bucket", "run_new", "key");
+
+        Assert.assertEquals("new", read(new File(directory, "root/bucket/key")));
+        Assert.assertEquals("old", read(new File(directory, "local/run_key")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeysOutsideTheBucket() throws Exception {
+        store.download("bucket", "../other/key", "run_key");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+}
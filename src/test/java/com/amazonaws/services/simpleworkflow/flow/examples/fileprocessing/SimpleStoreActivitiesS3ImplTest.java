@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimpleStoreActivitiesS3ImplTest {
+
+    private File directory;
+
+    private InMemoryS3 s3;
+
+    private SimpleStoreActivitiesS3Impl store;
+
+    private File local;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("s3store").toFile();
+        s3 = new InMemoryS3();
+        store = new SimpleStoreActivitiesS3Impl(s3.client(), directory.getPath() + File.separator, "host",
+                S3MultipartOutputStream.MINIMUM_PART_SIZE, 2, S3MultipartOutputStream.MINIMUM_PART_SIZE, 2, null);
+        local = new File(directory, "run_out.zip");
+        Files.write(local.toPath(), "zipped".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void skipsUploadOfUnchangedContent() throws Exception {
+        ContentDigest.writeSidecar(local, "digest-1");
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertEquals(1, s3.writes.get());
+
+        Assert.assertFalse(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertEquals(1, s3.writes.get());
+    }
+
+    @Test
+    public void uploadsChangedContent() throws Exception {
+        ContentDigest.writeSidecar(local, "digest-1");
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+
+        Files.write(local.toPath(), "rezipped".getBytes(StandardCharsets.UTF_8));
+        ContentDigest.writeSidecar(local, "digest-2");
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertEquals(2, s3.writes.get());
+        Assert.assertEquals("rezipped", new String(s3.get("target", "out.zip"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void uploadsOverObjectWithoutDigest() throws Exception {
+        s3.put("target", "out.zip", "other".getBytes(StandardCharsets.UTF_8));
+        ContentDigest.writeSidecar(local, "digest-1");
+
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertEquals(1, s3.writes.get());
+        Assert.assertEquals("zipped", new String(s3.get("target", "out.zip"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void uploadsFileWithoutDigest() throws Exception {
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertTrue(store.upload("target", "run_out.zip", "out.zip"));
+        Assert.assertEquals(2, s3.writes.get());
+    }
+
+}
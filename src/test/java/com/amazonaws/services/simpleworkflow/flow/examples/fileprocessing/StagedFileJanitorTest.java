@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StagedFileJanitorTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("staged").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void groupsOldStagedFilesByRun() throws IOException {
+        File source = createFile("run1_input.txt", 1000);
+        File target = createFile("run1_input.txt.zip", 1000);
+        File other = createFile("run2_input.txt", 1000);
+        createFile("run3_input.txt", 5000);
+        createFile("unrelated.txt", 1000);
+        new File(directory, "cache").mkdir();
+
+        Map<String, List<File>> staged = StagedFileJanitor.indexStagedFiles(directory.listFiles(), 2000);
+        Assert.assertEquals(2, staged.size());
+        Assert.assertEquals(2, staged.get("run1").size());
+        Assert.assertTrue(staged.get("run1").containsAll(Arrays.asList(source, target)));
+        Assert.assertEquals(Arrays.asList(other), staged.get("run2"));
+    }
+
+    private File createFile(String name, long lastModified) throws IOException {
+        File file = new File(directory, name);
+        file.createNewFile();
+        file.setLastModified(lastModified);
+        return file;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingFileProcessingActivitiesZipImplTest {
+
+    private InMemoryS3 s3;
+
+    private StreamingFileProcessingActivitiesZipImpl activities;
+
+    private File zipFile;
+
+    @Before
+    public void setUp() throws IOException {
+        s3 = new InMemoryS3();
+        activities = new StreamingFileProcessingActivitiesZipImpl(s3.client(), "host1",
+                S3MultipartOutputStream.MINIMUM_PART_SIZE, 2);
+        zipFile = File.createTempFile("streaming", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        zipFile.delete();
+    }
+
+    @Test
+    public void streamedArchiveHoldsTheSource() throws Exception {
+        // Incompressible, so the archive spans several parts
+        byte[] data = randomData(12 * 1024 * 1024);
+        s3.put("source", "data.bin", data);
+
+        Assert.assertEquals("host1", activities.processFileStreaming("source", "data.bin", "target", "data.zip"));
+        FileOutputStream out = new FileOutputStream(zipFile);
+        try {
+            out.write(s3.get("target", "data.zip"));
+        }
+        finally {
+            out.close();
+        }
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            Assert.assertArrayEquals(data, readFully(zip.getInputStream(zip.getEntry("data.bin"))));
+        }
+        finally {
+            zip.close();
+        }
+        Assert.assertEquals(0, s3.openUploads());
+    }
+
+    @Test
+    public void failedPartAbortsTheUpload() throws Exception {
+        s3.put("source", "data.bin", randomData(12 * 1024 * 1024));
+        s3.failingPartNumber = 2;
+        try {
+            activities.processFileStreaming("source", "data.bin", "target", "data.zip");
+            Assert.fail("streamed with a failed part");
+        }
+        catch (IOException e) {
+            Assert.assertNull(s3.get("target", "data.zip"));
+            Assert.assertEquals(0, s3.openUploads());
+        }
+    }
+
+    @Test
+    public void partsGrowToFitTheSource() {
+        int partSize = S3MultipartOutputStream.MINIMUM_PART_SIZE;
+        Assert.assertEquals(partSize, StreamingFileProcessingActivitiesZipImpl.partSizeFor(partSize, 1024L * 1024 * 1024));
+        long totalSize = 100L * 1024 * 1024 * 1024;
+        long grown = StreamingFileProcessingActivitiesZipImpl.partSizeFor(partSize, totalSize);
+        Assert.assertTrue(grown > partSize);
+        Assert.assertTrue(grown * S3MultipartOutputStream.MAXIMUM_PARTS > totalSize + totalSize / 100);
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(11).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.fileprocessing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UploadCheckpointTest {
+
+    @Test
+    public void roundTripsCompletedParts() {
+        UploadCheckpoint checkpoint = new UploadCheckpoint("upload-1", 5 * 1024 * 1024, 12 * 1024 * 1024);
+        checkpoint.partCompleted(3, "etag-3");
+        checkpoint.partCompleted(1, "etag-1");
+
+        UploadCheckpoint parsed = UploadCheckpoint.parse(checkpoint.toString());
+
+        Assert.assertEquals("upload-1", parsed.getUploadId());
+        Assert.assertEquals(3, parsed.getPartCount());
+        Assert.assertTrue(parsed.matches(5 * 1024 * 1024, 12 * 1024 * 1024));
+        Assert.assertEquals(checkpoint.getCompletedParts(), parsed.getCompletedParts());
+    }
+
+    @Test
+    public void heartbeatDetailsDropPartsWhenTooLong() {
+        UploadCheckpoint checkpoint = new UploadCheckpoint("upload-2", 5 * 1024 * 1024, 10000L * 5 * 1024 * 1024);
+        for (int part = 1; part <= 1000; part++) {
+            checkpoint.partCompleted(part, "\"0123456789abcdef0123456789abcdef\"");
+        }
+
+        String details = checkpoint.toHeartbeatDetails();
+
+        Assert.assertTrue(details.length() <= UploadCheckpoint.MAX_DETAILS_LENGTH);
+        Assert.assertEquals("upload-2", UploadCheckpoint.parse(details).getUploadId());
+        Assert.assertTrue(UploadCheckpoint.parse(details).getCompletedParts().isEmpty());
+    }
+
+    @Test
+    public void ignoresGarbage() {
+        Assert.assertNull(UploadCheckpoint.parse(null));
+        Assert.assertNull(UploadCheckpoint.parse("42"));
+        Assert.assertNull(UploadCheckpoint.parse("id;x;1;"));
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.simpleworkflow.flow.examples.splitmerge.PartitionPlanner.Partition;
+
+public class AverageCalculatorActivitiesImplTest {
+
+    private static final long SUB_RANGE = 64 * 1024;
+
+    @Test
+    public void subRangesMatchASerialScan() throws IOException {
+        StringBuilder content = new StringBuilder();
+        Random random = new Random(11);
+        long sum = 0;
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(2000000) - 1000000;
+            sum += value;
+            content.append(value).append('\n');
+        }
+        ObjectStore store = new ObjectStore(content.toString().getBytes(StandardCharsets.UTF_8));
+        AggregationOptions aggregation = new AggregationOptions();
+        aggregation.setAggregators(Arrays.asList(AggregatorType.SUM, AggregatorType.COUNT, AggregatorType.MIN,
+                AggregatorType.MAX, AggregatorType.VARIANCE));
+
+        AverageCalculatorActivitiesImpl serial = new AverageCalculatorActivitiesImpl(store.client());
+        AverageCalculatorActivitiesImpl parallel = new AverageCalculatorActivitiesImpl(store.client(), null, 4,
+                SUB_RANGE);
+        long length = store.content.length;
+        PartialAggregate expected = serial.computeAggregateForRange("bucket", "key", 0, length, aggregation, false);
+        int serialGets = store.gets.getAndSet(0);
+        PartialAggregate actual = parallel.computeAggregateForRange("bucket", "key", 0, length, aggregation, false);
+
+        Assert.assertEquals(sum, expected.getSum());
+        Assert.assertEquals(100000, expected.getCount());
+        Assert.assertEquals(expected.getSum(), actual.getSum());
+        Assert.assertEquals(expected.getCount(), actual.getCount());
+        Assert.assertEquals(expected.getMinMax().getMin(), actual.getMinMax().getMin());
+        Assert.assertEquals(expected.getMinMax().getMax(), actual.getMinMax().getMax());
+        double variance = expected.getVariance().sampleVariance();
+        Assert.assertEquals(variance, actual.getVariance().sampleVariance(), variance * 1e-9);
+        Assert.assertTrue(store.gets.get() >= length / SUB_RANGE);
+        Assert.assertTrue(serialGets < store.gets.get());
+    }
+
+    @Test
+    public void fixedRowsAreSplitAtRowBoundaries() throws IOException {
+        int rows = 30000;
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            content.append(String.format("%06d\n", i));
+        }
+        ObjectStore store = new ObjectStore(content.toString().getBytes(StandardCharsets.UTF_8));
+        AverageCalculatorActivitiesImpl parallel = new AverageCalculatorActivitiesImpl(store.client(), null, 3,
+                SUB_RANGE);
+
+        PartialAggregate aggregate = parallel.computeAggregateForRows("bucket", "key", 5, rows, new AggregationOptions(),
+                false);
+
+        Assert.assertEquals((long) rows * (rows - 1) / 2 - 10, aggregate.getSum());
+        Assert.assertEquals(rows - 5, aggregate.getCount());
+    }
+
+    @Test
+    public void appendOnlyRowsAtTheEndAreNotCached() throws IOException {
+        File folder = new File(System.getProperty("java.io.tmpdir"), "splitmerge-cache-" + System.nanoTime());
+        ChunkResultCache cache = new ChunkResultCache(folder, 100);
+        try {
+            ObjectStore store = new ObjectStore(fixedRows(10));
+            AverageCalculatorActivitiesImpl activities = new AverageCalculatorActivitiesImpl(store.client(), cache, 1,
+                    SUB_RANGE);
+            activities.computeAggregateForRows("bucket", "key", 0, 5, new AggregationOptions(), true);
+            activities.computeAggregateForRows("bucket", "key", 5, 10, new AggregationOptions(), true);
+            Assert.assertEquals(1, cache.getEntryCount());
+
+            // An append can complete the last row
+            ObjectStore appended = new ObjectStore(fixedRows(12));
+            activities = new AverageCalculatorActivitiesImpl(appended.client(), cache, 1, SUB_RANGE);
+            activities.computeAggregateForRows("bucket", "key", 0, 5, new AggregationOptions(), true);
+            Assert.assertEquals(0, appended.gets.get());
+            PartialAggregate aggregate = activities.computeAggregateForRows("bucket", "key", 5, 10,
+                    new AggregationOptions(), true);
+            Assert.assertEquals(1, appended.gets.get());
+            Assert.assertEquals(5 + 6 + 7 + 8 + 9, aggregate.getSum());
+        }
+        finally {
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void binaryFootersReplaceFullBlocks() throws IOException {
+        long[] values = randomValues(50000, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        BinaryFormat.Header header = new BinaryFormat.Header(4, 1000, values.length);
+        ObjectStore store = new ObjectStore(writeBinary(header, values));
+        AverageCalculatorActivitiesImpl activities = new AverageCalculatorActivitiesImpl(store.client());
+        AggregationOptions aggregation = new AggregationOptions();
+        aggregation.setAggregators(Arrays.asList(AggregatorType.SUM, AggregatorType.COUNT, AggregatorType.MIN,
+                AggregatorType.MAX));
+
+        long dataSize = activities.computeDataSizeForInputData("bucket", "key");
+        Assert.assertEquals(values.length * 4L, dataSize);
+        // Partitions of 9001 rows leave partial blocks at both ends
+        PartialAggregate aggregate = scanBinary(activities, dataSize, 9001 * 4, aggregation);
+
+        assertMatches(values, aggregate);
+        // Small blocks are cheaper to read than to skip, the footers of a partition take a single read
+        Assert.assertTrue(store.gets.get() < 50);
+    }
+
+    @Test
+    public void binaryFootersSkipLargeBlocks() throws IOException {
+        long[] values = randomValues(1500000, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        BinaryFormat.Header header = new BinaryFormat.Header(4, 300000, values.length);
+        ObjectStore store = new ObjectStore(writeBinary(header, values));
+        AverageCalculatorActivitiesImpl activities = new AverageCalculatorActivitiesImpl(store.client());
+        AggregationOptions aggregation = new AggregationOptions();
+        aggregation.setAggregators(Arrays.asList(AggregatorType.SUM, AggregatorType.COUNT, AggregatorType.MIN,
+                AggregatorType.MAX));
+
+        long dataSize = activities.computeDataSizeForInputData("bucket", "key");
+        PartialAggregate aggregate = scanBinary(activities, dataSize, 700000 * 4, aggregation);
+
+        assertMatches(values, aggregate);
+        Assert.assertTrue(store.bytes.get() < values.length * 4L / 2);
+    }
+
+    @Test
+    public void mappedBinaryMatchesValues() throws IOException {
+        long[] values = randomValues(40000, Long.MIN_VALUE / 50000, Long.MAX_VALUE / 50000);
+        BinaryFormat.Header header = new BinaryFormat.Header(8, 0, values.length);
+        File folder = new File(System.getProperty("java.io.tmpdir"), "splitmerge-binary-" + System.nanoTime());
+        File file = new File(new File(folder, "bucket"), "key");
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(writeBinary(header, values));
+        }
+        finally {
+            out.close();
+        }
+        // Reading S3 fails the test
+        AverageCalculatorActivitiesImpl activities = new AverageCalculatorActivitiesImpl(
+                new ObjectStore(new byte[0]).client(), null, 3, SUB_RANGE, folder);
+        AggregationOptions aggregation = new AggregationOptions();
+        aggregation.setAggregators(Arrays.asList(AggregatorType.MIN, AggregatorType.MAX, AggregatorType.VARIANCE));
+        try {
+            long dataSize = activities.computeDataSizeForInputData("bucket", "key");
+            PartialAggregate aggregate = scanBinary(activities, dataSize, 0, aggregation);
+
+            assertMatches(values, aggregate);
+            Assert.assertNotNull(aggregate.getVariance());
+        }
+        finally {
+            file.delete();
+            file.getParentFile().delete();
+            folder.delete();
+        }
+    }
+
+    private static PartialAggregate scanBinary(AverageCalculatorActivitiesImpl activities, long dataSize,
+            long partitionBytes, AggregationOptions aggregation) throws IOException {
+        List<Partition> partitions = new PartitionPlanner(partitionBytes, 2000, 0).plan(dataSize,
+                SplitMode.BINARY.getUnitSize());
+        PartialAggregate total = aggregation.createAggregate();
+        for (Partition partition : partitions) {
+            total.merge(activities.computeAggregateForBinary("bucket", "key", partition.getStart(),
+                    partition.getEnd(), aggregation));
+        }
+        return total;
+    }
+
+    private static void assertMatches(long[] values, PartialAggregate aggregate) {
+        long sum = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long value : values) {
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        Assert.assertEquals(values.length, aggregate.getCount());
+        Assert.assertEquals(sum, aggregate.getSum());
+        Assert.assertEquals(min, aggregate.getMinMax().getMin());
+        Assert.assertEquals(max, aggregate.getMinMax().getMax());
+    }
+
+    private static byte[] fixedRows(int rows) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            content.append(String.format("%06d\n", i));
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long[] randomValues(int count, long lower, long upper) {
+        Random random = new Random(count);
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = lower + (long) (random.nextDouble() * (upper - lower));
+        }
+        return values;
+    }
+
+    private static byte[] writeBinary(BinaryFormat.Header header, long[] values) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryFormat.Writer writer = new BinaryFormat.Writer(out, header);
+        try {
+            for (long value : values) {
+                writer.add(value);
+            }
+        }
+        finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serves ranged GETs of a single object the way S3 does
+     */
+    private static class ObjectStore implements InvocationHandler {
+
+        final byte[] content;
+
+        final AtomicInteger gets = new AtomicInteger();
+
+        final AtomicLong bytes = new AtomicLong();
+
+        ObjectStore(byte[] content) {
+            this.content = content;
+        }
+
+        AmazonS3 client() {
+            return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[] { AmazonS3.class },
+                    this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getObject") && args.length == 1 && args[0] instanceof GetObjectRequest) {
+                return getObject((GetObjectRequest) args[0]);
+            }
+            if (method.getName().equals("getObjectMetadata") && args.length == 2) {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(content.length);
+                return metadata;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private S3Object getObject(GetObjectRequest request) {
+            gets.incrementAndGet();
+            long[] range = request.getRange();
+            if (range[0] >= content.length) {
+                AmazonServiceException e = new AmazonServiceException("Requested range not satisfiable");
+                e.setStatusCode(416);
+                throw e;
+            }
+            int from = (int) range[0];
+            int to = (int) Math.min(range[1], content.length - 1);
+            bytes.addAndGet(to - from + 1);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+            S3Object obj = new S3Object();
+            obj.setObjectMetadata(metadata);
+            obj.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(content, from, to - from + 1),
+                    new HttpGet()));
+            return obj;
+        }
+    }
+
+}
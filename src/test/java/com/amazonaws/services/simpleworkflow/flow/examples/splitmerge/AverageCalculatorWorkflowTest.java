@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.junit.FlowBlockJUnit4ClassRunner;
+import com.amazonaws.services.simpleworkflow.flow.junit.WorkflowTest;
+
+@RunWith(FlowBlockJUnit4ClassRunner.class)
+public class AverageCalculatorWorkflowTest {
+
+    @Rule
+    public WorkflowTest workflowTest = new WorkflowTest();
+
+    private final AverageCalculatorWorkflowClientFactory workflowFactory = new AverageCalculatorWorkflowClientFactoryImpl();
+
+    private InMemoryAverageCalculatorActivities activities;
+
+    @Before
+    public void setUp() throws Exception {
+        activities = new InMemoryAverageCalculatorActivities(100);
+        workflowTest.addActivitiesImplementation(activities);
+        workflowTest.addWorkflowImplementationType(AverageCalculatorWorkflowImpl.class);
+        workflowTest.addWorkflowImplementationType(PartitionMergeWorkflowImpl.class);
+    }
+
+    @Test
+    public void wavesScanEveryPartitionOnce() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        options.setMaxConcurrentPartitions(3);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertExact(done, 10);
+    }
+
+    @Test
+    public void approximateJobWithoutTargetScansEverything() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        options.setSampleChunks(3);
+        options.setSampleSeed(17);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertExact(done, 10);
+        assertEstimate(done, 10);
+    }
+
+    @Test
+    public void approximateJobStopsWithinTarget() {
+        Arrays.fill(activities.values, 5);
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        options.setSampleChunks(3);
+        options.setSampleSeed(17);
+        options.setTargetRelativeError(0.01);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertStoppedEarly(done);
+    }
+
+    @Asynchronous
+    private void assertExact(Promise<Void> done, int partitions) {
+        activities.assertExact(partitions);
+    }
+
+    @Asynchronous
+    private void assertEstimate(Promise<Void> done, int chunks) {
+        SplitMergeEstimate estimate = activities.result.getEstimate();
+        Assert.assertNotNull(estimate);
+        Assert.assertEquals(chunks, estimate.getCompletedChunks());
+        Assert.assertEquals(chunks, estimate.getTotalChunks());
+        Assert.assertEquals(0.0, estimate.getMarginOfError(), 0.0);
+    }
+
+    @Asynchronous
+    private void assertStoppedEarly(Promise<Void> done) {
+        SplitMergeResult result = activities.result;
+        // The sample is the first wave, every chunk in it has the same mean
+        Assert.assertEquals(3, activities.scanned.size());
+        Assert.assertEquals(30, result.getCount());
+        Assert.assertEquals(5.0, result.getMean(), 0.0);
+        Assert.assertEquals(3, result.getEstimate().getCompletedChunks());
+    }
+
+}
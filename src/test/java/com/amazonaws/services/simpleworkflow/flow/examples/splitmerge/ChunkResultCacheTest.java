@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkResultCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("chunks").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void keyCoversVersionRangeAndStatistics() {
+        AggregationOptions aggregation = new AggregationOptions();
+        String key = ChunkResultCache.key("bucket", "key", "etag-1", "range", 0, 100, aggregation);
+        Assert.assertEquals(key, ChunkResultCache.key("bucket", "key", "etag-1", "range", 0, 100, aggregation));
+        Assert.assertFalse(key.equals(ChunkResultCache.key("bucket", "key", "etag-2", "range", 0, 100, aggregation)));
+        Assert.assertFalse(key.equals(ChunkResultCache.key("bucket", "key", null, "range", 0, 100, aggregation)));
+        Assert.assertFalse(key.equals(ChunkResultCache.key("bucket", "key", "etag-1", "rows", 0, 100, aggregation)));
+        Assert.assertFalse(key.equals(ChunkResultCache.key("bucket", "key", "etag-1", "range", 0, 101, aggregation)));
+
+        AggregationOptions withVariance = new AggregationOptions();
+        withVariance.setAggregators(Arrays.asList(AggregatorType.VARIANCE));
+        Assert.assertFalse(key.equals(ChunkResultCache.key("bucket", "key", "etag-1", "range", 0, 100, withVariance)));
+
+        AggregationOptions otherQuantiles = new AggregationOptions();
+        otherQuantiles.setQuantiles(Arrays.asList(0.9));
+        Assert.assertEquals(key, ChunkResultCache.key("bucket", "key", "etag-1", "range", 0, 100, otherQuantiles));
+    }
+
+    @Test
+    public void returnsStoredAggregate() throws IOException {
+        ChunkResultCache cache = new ChunkResultCache(directory, 10);
+        Assert.assertNull(cache.get("missing"));
+        cache.put("present", new PartialAggregate(42, 3));
+        PartialAggregate cached = cache.get("present");
+        Assert.assertEquals(42, cached.getSum());
+        Assert.assertEquals(3, cached.getCount());
+        Assert.assertEquals(1, new ChunkResultCache(directory, 10).getEntryCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        ChunkResultCache cache = new ChunkResultCache(directory, 10);
+        for (int i = 0; i < 10; i++) {
+            cache.put("entry" + i, new PartialAggregate(i, 1));
+            new File(directory, "entry" + i + ".json").setLastModified(1000000L * (i + 1));
+        }
+        cache.put("entry10", new PartialAggregate(10, 1));
+        Assert.assertEquals(9, cache.getEntryCount());
+        Assert.assertNull(cache.get("entry0"));
+        Assert.assertNull(cache.get("entry1"));
+        Assert.assertEquals(10, cache.get("entry10").getSum());
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+
+/**
+ * Fixed size rows held in memory, recording the rows every activity scans.
+ * Used by the workflow tests, only the fixed rows mode is implemented.
+ */
+class InMemoryAverageCalculatorActivities implements AverageCalculatorActivities {
+
+    /**
+     * Ten rows per partition of a job over the default rows
+     */
+    static final long RANGE_SIZE = 10 * SplitMode.FIXED_ROWS.getUnitSize();
+
+    final long[] values;
+
+    final List<String> scanned = new ArrayList<String>();
+
+    SplitMergeResult result;
+
+    /**
+     * Rows holding their own index
+     */
+    InMemoryAverageCalculatorActivities(int rows) {
+        values = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = i;
+        }
+    }
+
+    @Override
+    public long computeContentLength(String bucketName, String filename) {
+        return values.length * (long) SplitMode.FIXED_ROWS.getUnitSize();
+    }
+
+    @Override
+    public PartialAggregate computeAggregateForRows(String bucketName, String filename, long startRow, long endRow,
+            AggregationOptions aggregation, boolean appendOnly) {
+        scanned.add(startRow + "-" + endRow);
+        PartialAggregate aggregate = aggregation.createAggregate();
+        for (long row = startRow; row < endRow; row++) {
+            aggregate.setSum(aggregate.getSum() + values[(int) row]);
+        }
+        aggregate.setCount(endRow - startRow);
+        return aggregate;
+    }
+
+    @Override
+    public PartialAggregate computeAggregateForRange(String bucketName, String filename, long start, long end,
+            AggregationOptions aggregation, boolean appendOnly) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long computeDataSizeForInputData(String bucketName, String filename) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PartialAggregate computeAggregateForBinary(String bucketName, String filename, long start, long end,
+            AggregationOptions aggregation) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void reportResult(SplitMergeResult result) {
+        this.result = result;
+    }
+
+    /**
+     * Checks that the reported result covers the rows of
+     * {@link #InMemoryAverageCalculatorActivities(int)} and that each
+     * partition was scanned exactly once
+     */
+    void assertExact(int partitions) {
+        int rows = values.length;
+        Assert.assertEquals((long) rows * (rows - 1) / 2, result.getSum());
+        Assert.assertEquals(rows, result.getCount());
+        Assert.assertEquals(partitions, scanned.size());
+        List<String> sorted = new ArrayList<String>(scanned);
+        Collections.sort(sorted);
+        for (int i = 1; i < sorted.size(); i++) {
+            Assert.assertFalse(sorted.get(i).equals(sorted.get(i - 1)));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartialAggregateTest {
+
+    @Test
+    public void mergedChunksMatchASinglePass() throws IOException {
+        AggregationOptions aggregation = new AggregationOptions();
+        aggregation.setAggregators(Arrays.asList(AggregatorType.values()));
+        aggregation.setHistogramLowerBound(-1000);
+        aggregation.setHistogramUpperBound(1000);
+        Random random = new Random(7);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(3000) - 1500;
+        }
+
+        PartialAggregate whole = aggregate(aggregation, values, 0, values.length);
+        PartialAggregate merged = aggregation.createAggregate();
+        for (int start = 0; start < values.length; start += 999) {
+            merged.merge(aggregate(aggregation, values, start, Math.min(values.length, start + 999)));
+        }
+
+        Assert.assertEquals(whole.getSum(), merged.getSum());
+        Assert.assertEquals(values.length, merged.getCount());
+        Assert.assertEquals(whole.getMinMax().getMin(), merged.getMinMax().getMin());
+        Assert.assertEquals(whole.getMinMax().getMax(), merged.getMinMax().getMax());
+        Assert.assertEquals(whole.getVariance().sampleVariance(), merged.getVariance().sampleVariance(), 1e-6);
+        Assert.assertArrayEquals(whole.getHistogram().getCounts(), merged.getHistogram().getCounts());
+        Assert.assertEquals(whole.getHistogram().getUnderflow(), merged.getHistogram().getUnderflow());
+        Assert.assertEquals(whole.getQuantiles().quantile(0.99), merged.getQuantiles().quantile(0.99), 0);
+
+        SplitMergeResult result = SplitMergeResult.fromAggregate(merged, aggregation);
+        Assert.assertEquals((double) whole.getSum() / values.length, result.getMean(), 1e-9);
+        Assert.assertEquals(naiveVariance(values), result.getVariance(), 1e-6);
+        Assert.assertTrue(result.getQuantiles().containsKey("p99"));
+    }
+
+    @Test
+    public void onlyRequestedStatisticsAreComputed() {
+        AggregationOptions aggregation = new AggregationOptions();
+        PartialAggregate aggregate = aggregation.createAggregate();
+        Assert.assertFalse(aggregate.needsValues());
+        SplitMergeResult result = SplitMergeResult.fromAggregate(aggregate, aggregation);
+        Assert.assertTrue(Double.isNaN(result.getMean()));
+        Assert.assertNull(result.getVariance());
+        Assert.assertNull(result.getQuantiles());
+    }
+
+    @Test
+    public void speculationCountsSurviveEmptyPartitions() {
+        AggregationOptions aggregation = new AggregationOptions();
+        PartialAggregate empty = aggregation.createAggregate();
+        empty.setSpeculativeBackups(2);
+        empty.setBackupWins(1);
+        PartialAggregate merged = aggregation.createAggregate();
+        merged.merge(empty);
+        merged.merge(empty);
+        SplitMergeResult result = SplitMergeResult.fromAggregate(merged, aggregation);
+        Assert.assertEquals(4, result.getSpeculativeBackups());
+        Assert.assertEquals(2, result.getBackupWins());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMergingMissingStatistic() {
+        AggregationOptions aggregation = new AggregationOptions();
+        aggregation.setAggregators(Arrays.asList(AggregatorType.VARIANCE));
+        aggregation.createAggregate().merge(new PartialAggregate(5, 1));
+    }
+
+    @Test
+    public void quantileNames() {
+        Assert.assertEquals("p50", SplitMergeResult.quantileName(0.5));
+        Assert.assertEquals("p99.9", SplitMergeResult.quantileName(0.999));
+    }
+
+    private static PartialAggregate aggregate(AggregationOptions aggregation, long[] values, int from, int to)
+            throws IOException {
+        StringBuilder rows = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            rows.append(values[i]).append('\n');
+        }
+        PartialAggregate aggregate = aggregation.createAggregate();
+        RowParser parser = new RowParser();
+        parser.setValueListener(aggregate);
+        parser.parse(new ByteArrayInputStream(rows.toString().getBytes(StandardCharsets.US_ASCII)));
+        aggregate.setSum(parser.getSum());
+        aggregate.setCount(parser.getRows());
+        return aggregate;
+    }
+
+    private static double naiveVariance(long[] values) {
+        double mean = 0;
+        for (long value : values) {
+            mean += value;
+        }
+        mean /= values.length;
+        double squares = 0;
+        for (long value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        return squares / (values.length - 1);
+    }
+
+}
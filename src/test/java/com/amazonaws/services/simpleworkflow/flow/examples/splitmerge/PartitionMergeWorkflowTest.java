@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.junit.FlowBlockJUnit4ClassRunner;
+import com.amazonaws.services.simpleworkflow.flow.junit.WorkflowTest;
+
+/**
+ * Merges jobs wider than the fan out through child executions
+ */
+@RunWith(FlowBlockJUnit4ClassRunner.class)
+public class PartitionMergeWorkflowTest {
+
+    @Rule
+    public WorkflowTest workflowTest = new WorkflowTest();
+
+    private final AverageCalculatorWorkflowClientFactory workflowFactory = new AverageCalculatorWorkflowClientFactoryImpl();
+
+    private InMemoryAverageCalculatorActivities activities;
+
+    @Before
+    public void setUp() throws Exception {
+        activities = new InMemoryAverageCalculatorActivities(100);
+        workflowTest.addActivitiesImplementation(activities);
+        workflowTest.addWorkflowImplementationType(AverageCalculatorWorkflowImpl.class);
+        workflowTest.addWorkflowImplementationType(PartitionMergeWorkflowImpl.class);
+    }
+
+    @Test
+    public void treeReduceMergesThroughChildExecutions() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        // Groups of four, four and two partitions merged by children, the larger ones through grandchildren
+        options.setMergeFanOut(3);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertExact(done, 10);
+    }
+
+    @Test
+    public void binaryTreeMergesThroughSeveralLevels() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        // Ten partitions halved down to pairs, three levels of children deep
+        options.setMergeFanOut(2);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertExact(done, 10);
+    }
+
+    @Test
+    public void fanOutAboveThePartitionsMergesInTheParent() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        options.setMergeFanOut(20);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertExact(done, 10);
+    }
+
+    @Asynchronous
+    private void assertExact(Promise<Void> done, int partitions) {
+        activities.assertExact(partitions);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amazonaws.services.simpleworkflow.flow.examples.splitmerge.PartitionPlanner.Partition;
+
+public class PartitionPlannerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void partitionCountFollowsObjectSize() {
+        PartitionPlanner planner = new PartitionPlanner(64 * MB, 2000, 100);
+        Assert.assertEquals(1, planner.plan(MB, 1).size());
+        Assert.assertEquals(16, planner.plan(1024 * MB, 1).size());
+    }
+
+    @Test
+    public void coversTrailingRowsOfUnevenSplit() {
+        // 12 full rows and a last one missing its newline
+        List<Partition> partitions = new PartitionPlanner(0, 5, 0).plan(12 * 7 + 6, 7);
+        Assert.assertEquals(5, partitions.size());
+        assertContiguous(partitions, 13);
+    }
+
+    @Test
+    public void largeObjectIsCappedAndScheduledInWaves() {
+        long terabyte = 1024 * 1024 * MB;
+        PartitionPlanner planner = new PartitionPlanner(64 * MB, 2000, 100);
+        List<Partition> partitions = planner.plan(terabyte, 1);
+        Assert.assertTrue(partitions.size() <= 2000);
+        assertContiguous(partitions, terabyte);
+        Assert.assertEquals(100, planner.getWaveSize(partitions.size()));
+    }
+
+    @Test
+    public void growingObjectKeepsBoundaries() {
+        PartitionPlanner planner = new PartitionPlanner(10 * 7, 2000, 100);
+        List<Partition> before = planner.plan(95 * 7, 7);
+        List<Partition> after = planner.plan(130 * 7, 7);
+        Assert.assertEquals(10, before.size());
+        Assert.assertEquals(13, after.size());
+        for (int i = 0; i < before.size() - 1; i++) {
+            Assert.assertEquals(before.get(i).getStart(), after.get(i).getStart());
+            Assert.assertEquals(before.get(i).getEnd(), after.get(i).getEnd());
+        }
+        assertContiguous(after, 130);
+    }
+
+    @Test
+    public void unboundedWaveSchedulesEverything() {
+        Assert.assertEquals(7, new PartitionPlanner(0, 7, 0).getWaveSize(7));
+    }
+
+    @Test
+    public void emptyObjectHasNoPartitions() {
+        Assert.assertEquals(0, new PartitionPlanner(64 * MB, 2000, 100).plan(0, 7).size());
+    }
+
+    private static void assertContiguous(List<Partition> partitions, long units) {
+        long next = 0;
+        for (Partition partition : partitions) {
+            Assert.assertEquals(next, partition.getStart());
+            Assert.assertTrue(partition.getEnd() > partition.getStart());
+            next = partition.getEnd();
+        }
+        Assert.assertEquals(units, next);
+    }
+
+}
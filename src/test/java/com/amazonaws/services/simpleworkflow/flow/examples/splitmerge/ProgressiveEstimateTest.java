@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProgressiveEstimateTest {
+
+    @Test
+    public void normalQuantile() {
+        Assert.assertEquals(1.959964, ProgressiveEstimate.normalQuantile(0.975), 1e-6);
+        Assert.assertEquals(-2.326348, ProgressiveEstimate.normalQuantile(0.01), 1e-6);
+        Assert.assertEquals(0, ProgressiveEstimate.normalQuantile(0.5), 1e-12);
+    }
+
+    @Test
+    public void exactOnceEveryChunkIsScanned() {
+        List<PartialAggregate> chunks = population(new Random(1), 20);
+        ProgressiveEstimate estimate = new ProgressiveEstimate(chunks.size(), 0.95, 0);
+        Assert.assertTrue(Double.isNaN(estimate.marginOfError()));
+        long sum = 0;
+        long count = 0;
+        for (PartialAggregate chunk : chunks) {
+            estimate.add(chunk);
+            sum += chunk.getSum();
+            count += chunk.getCount();
+        }
+        Assert.assertEquals(0, estimate.marginOfError(), 0);
+        Assert.assertEquals((double) sum / count, estimate.mean(), 1e-9);
+        Assert.assertFalse(estimate.isWithinTarget());
+    }
+
+    @Test
+    public void intervalCoversTheMeanAtTheConfidenceLevel() {
+        Random random = new Random(3);
+        List<PartialAggregate> chunks = population(random, 300);
+        long sum = 0;
+        long count = 0;
+        for (PartialAggregate chunk : chunks) {
+            sum += chunk.getSum();
+            count += chunk.getCount();
+        }
+        double mean = (double) sum / count;
+        int trials = 1000;
+        int covered = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            Collections.shuffle(chunks, random);
+            ProgressiveEstimate estimate = new ProgressiveEstimate(chunks.size(), 0.9, 0);
+            for (PartialAggregate chunk : chunks.subList(0, 40)) {
+                estimate.add(chunk);
+            }
+            if (Math.abs(estimate.mean() - mean) <= estimate.marginOfError()) {
+                covered++;
+            }
+        }
+        Assert.assertTrue("covered " + covered, covered > 0.85 * trials && covered < 0.95 * trials);
+    }
+
+    @Test
+    public void reachesTargetBeforeTheEnd() {
+        List<PartialAggregate> chunks = population(new Random(5), 500);
+        ProgressiveEstimate estimate = new ProgressiveEstimate(chunks.size(), 0.95, 0.05);
+        int added = 0;
+        while (!estimate.isWithinTarget()) {
+            estimate.add(chunks.get(added++));
+        }
+        Assert.assertTrue("added " + added, added < chunks.size() / 2);
+        Assert.assertEquals(added, estimate.toEstimate().getCompletedChunks());
+    }
+
+    /**
+     * Chunks of different sizes whose rows drift with their position
+     */
+    private static List<PartialAggregate> population(Random random, int size) {
+        List<PartialAggregate> chunks = new ArrayList<PartialAggregate>();
+        for (int i = 0; i < size; i++) {
+            long count = 500 + random.nextInt(1000);
+            long sum = 0;
+            for (int row = 0; row < count; row++) {
+                sum += 1000 + i + random.nextInt(400);
+            }
+            chunks.add(new PartialAggregate(sum, count));
+        }
+        return chunks;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void quantilesAreWithinRelativeAccuracy() {
+        Random random = new Random(11);
+        long[] values = new long[100000];
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 0; i < values.length; i++) {
+            // Long tailed like latencies
+            values[i] = (long) Math.exp(random.nextGaussian() * 2 + 8);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+        for (double quantile : new double[] { 0, 0.5, 0.9, 0.99, 1 }) {
+            long exact = values[(int) (quantile * (values.length - 1))];
+            Assert.assertEquals("p" + quantile, exact, sketch.quantile(quantile), exact * 0.01 + 1e-9);
+        }
+    }
+
+    @Test
+    public void handlesNegativeValuesAndZero() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (long value : new long[] { -1000, -10, 0, 0, 10, Long.MIN_VALUE, Long.MAX_VALUE }) {
+            sketch.add(value);
+        }
+        Assert.assertEquals(Long.MIN_VALUE, sketch.quantile(0), -0.01 * Long.MIN_VALUE);
+        Assert.assertEquals(-1000, sketch.quantile(1.0 / 6), 10);
+        Assert.assertEquals(0, sketch.quantile(0.5), 0);
+        Assert.assertEquals(Long.MAX_VALUE, sketch.quantile(1), 0.01 * Long.MAX_VALUE);
+    }
+
+    @Test
+    public void mergeEqualsSinglePass() {
+        QuantileSketch whole = new QuantileSketch(0.02);
+        QuantileSketch even = new QuantileSketch(0.02);
+        QuantileSketch odd = new QuantileSketch(0.02);
+        for (long value = -2000; value <= 5000; value += 3) {
+            whole.add(value);
+            (value % 2 == 0 ? even : odd).add(value);
+        }
+        QuantileSketch merged = new QuantileSketch(0.02);
+        merged.merge(even);
+        merged.merge(odd);
+        Assert.assertEquals(whole.getCount(), merged.getCount());
+        for (double quantile : new double[] { 0, 0.01, 0.25, 0.5, 0.75, 0.99, 1 }) {
+            Assert.assertEquals(whole.quantile(quantile), merged.quantile(quantile), 0);
+        }
+    }
+
+    @Test
+    public void emptySketchHasNoQuantiles() {
+        Assert.assertTrue(Double.isNaN(new QuantileSketch(0.01).quantile(0.5)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMergingDifferentAccuracy() {
+        new QuantileSketch(0.01).merge(new QuantileSketch(0.02));
+    }
+
+}
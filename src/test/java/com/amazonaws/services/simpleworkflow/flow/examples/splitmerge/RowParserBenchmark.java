@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+
+/**
+ * Compares the reader based row parsing computeSumForChunk used to have with
+ * {@link RowParser}. Not run as part of the tests; run it with the test
+ * classpath:
+ * 
+ * <pre>
+ * java RowParserBenchmark [rowsInMillions]
+ * </pre>
+ * 
+ * Rows are 7 bytes, six digits and a line break, as the activity assumes.
+ * They are parsed from memory so the figures do not depend on the network.
+ * Each measurement is the best of a few runs after warm up runs.
+ */
+public class RowParserBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int rows = (args.length == 0 ? 10 : Integer.parseInt(args[0])) * 1000 * 1000;
+        byte[] input = createInput(rows);
+        long expected = sumWithReader(input);
+        RowParser parser = new RowParser();
+        parser.parse(new ByteArrayInputStream(input));
+        if (parser.getSum() != expected) {
+            throw new IllegalStateException("Parsers disagree: " + expected + " != " + parser.getSum());
+        }
+
+        long readerNanos = Long.MAX_VALUE;
+        long parserNanos = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_RUNS + RUNS; i++) {
+            long start = System.nanoTime();
+            sumWithReader(input);
+            long reader = System.nanoTime() - start;
+            start = System.nanoTime();
+            parser.reset();
+            parser.parse(new ByteArrayInputStream(input));
+            long bytes = System.nanoTime() - start;
+            if (i >= WARMUP_RUNS) {
+                readerNanos = Math.min(readerNanos, reader);
+                parserNanos = Math.min(parserNanos, bytes);
+            }
+        }
+        System.out.printf("%12s %16s%n", "parser", "rows/s");
+        System.out.printf("%12s %16d%n", "reader", rows * 1000000000L / readerNanos);
+        System.out.printf("%12s %16d%n", "RowParser", rows * 1000000000L / parserNanos);
+    }
+
+    private static byte[] createInput(int rows) {
+        Random random = new Random(rows);
+        byte[] input = new byte[rows * 7];
+        for (int row = 0; row < rows; row++) {
+            int value = random.nextInt(1000000);
+            for (int digit = 5; digit >= 0; digit--) {
+                input[row * 7 + digit] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            input[row * 7 + 6] = '\n';
+        }
+        return input;
+    }
+
+    /**
+     * The parsing loop of the activity before {@link RowParser}
+     */
+    private static long sumWithReader(byte[] input) throws IOException {
+        long sum = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input)));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sum += Integer.parseInt(line);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RowParserTest {
+
+    @Test
+    public void sumsRowsAcrossBufferBoundaries() throws IOException {
+        RowParser parser = new RowParser(4);
+        parser.parse(input("123456\n000001\n-00010\r\n\n42"));
+        Assert.assertEquals(123456 + 1 - 10 + 42, parser.getSum());
+        Assert.assertEquals(4, parser.getRows());
+
+        parser.reset();
+        parser.parse(input("7\n"));
+        Assert.assertEquals(7, parser.getSum());
+        Assert.assertEquals(1, parser.getRows());
+    }
+
+    @Test
+    public void sumsPastIntegerRange() throws IOException {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            rows.append(Integer.MAX_VALUE).append('\n');
+        }
+        RowParser parser = new RowParser();
+        parser.parse(input(rows.toString()));
+        Assert.assertEquals(3L * Integer.MAX_VALUE, parser.getSum());
+    }
+
+    @Test
+    public void rangesCountEveryRowOnce() throws IOException {
+        Random random = new Random(3);
+        StringBuilder rows = new StringBuilder();
+        long expected = 0;
+        for (int i = 0; i < 200; i++) {
+            int value = random.nextInt(2000000) - 1000000;
+            expected += value;
+            rows.append(value).append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        byte[] input = rows.toString().getBytes(StandardCharsets.US_ASCII);
+        RowParser parser = new RowParser(5);
+        for (int rangeSize : new int[] { 1, 3, 7, 64, 1000, input.length }) {
+            long sum = 0;
+            long count = 0;
+            for (int start = 0; start < input.length; start += rangeSize) {
+                int end = Math.min(input.length, start + rangeSize);
+                int from = start == 0 ? 0 : start - 1;
+                parser.reset();
+                parser.beginRange(start > 0, end - from);
+                // Input arrives in two pieces like consecutive ranged reads
+                int split = Math.min(input.length, end + 2);
+                if (!parser.parseRange(new ByteArrayInputStream(input, from, split - from))
+                        && !parser.parseRange(new ByteArrayInputStream(input, split, input.length - split))) {
+                    parser.endOfInput();
+                }
+                sum += parser.getSum();
+                count += parser.getRows();
+            }
+            Assert.assertEquals("range size " + rangeSize, expected, sum);
+            Assert.assertEquals("range size " + rangeSize, 200, count);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsMalformedRows() throws IOException {
+        new RowParser().parse(input("12\n1 2\n"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsSignWithoutDigits() throws IOException {
+        new RowParser().parse(input("12\n-\n"));
+    }
+
+    private static ByteArrayInputStream input(String rows) {
+        return new ByteArrayInputStream(rows.getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2014 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.services.simpleworkflow.flow.examples.splitmerge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.amazonaws.services.simpleworkflow.flow.WorkflowClock;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Asynchronous;
+import com.amazonaws.services.simpleworkflow.flow.annotations.Wait;
+import com.amazonaws.services.simpleworkflow.flow.core.Promise;
+import com.amazonaws.services.simpleworkflow.flow.core.Settable;
+import com.amazonaws.services.simpleworkflow.flow.examples.splitmerge.PartitionPlanner.Partition;
+import com.amazonaws.services.simpleworkflow.flow.junit.FlowBlockJUnit4ClassRunner;
+import com.amazonaws.services.simpleworkflow.flow.junit.WorkflowTest;
+
+/**
+ * Runs waves of five partitions whose durations are driven by the workflow
+ * clock, and a whole job to check that speculation does not keep it open
+ */
+@RunWith(FlowBlockJUnit4ClassRunner.class)
+public class SpeculativeWaveTest {
+
+    @Rule
+    public WorkflowTest workflowTest = new WorkflowTest();
+
+    private final AverageCalculatorWorkflowClientFactory workflowFactory = new AverageCalculatorWorkflowClientFactoryImpl();
+
+    private InMemoryAverageCalculatorActivities activities;
+
+    private WorkflowClock clock;
+
+    /**
+     * Attempts scheduled so far by partition start
+     */
+    private final Map<Long, Integer> attempts = new HashMap<Long, Integer>();
+
+    @Before
+    public void setUp() throws Exception {
+        activities = new InMemoryAverageCalculatorActivities(100);
+        workflowTest.addActivitiesImplementation(activities);
+        workflowTest.addWorkflowImplementationType(AverageCalculatorWorkflowImpl.class);
+        workflowTest.addWorkflowImplementationType(PartitionMergeWorkflowImpl.class);
+    }
+
+    @Test
+    public void speculationLeavesNoTimerBehind() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setRangeSizeBytes(InMemoryAverageCalculatorActivities.RANGE_SIZE);
+        options.setSpeculationSlowdown(1.5);
+        Promise<Void> done = workflowFactory.getClient().average("bucket", "key", 2, options);
+        assertNoBackups(done);
+    }
+
+    @Test
+    public void backupReplacesStraggler() {
+        startClock();
+        SpeculativeWave wave = new SpeculativeWave(new SpeculativeWave.PartitionScheduler() {
+
+            @Override
+            public Promise<PartialAggregate> schedule(Partition partition) {
+                if (countAttempt(partition) == 1 && partition.getStart() == 4) {
+                    // The first attempt of the last partition never completes
+                    return new Settable<PartialAggregate>();
+                }
+                return completeAfter(clock.createTimer(10), partition);
+            }
+        }, clock, speculationOptions());
+        List<Promise<PartialAggregate>> results = wave.start(partitions());
+        assertBackups(results, wave, 1, 1);
+        assertAttempts(results, 4, 2);
+    }
+
+    @Test
+    public void noBackupBeforeTheFractionHasCompleted() {
+        startClock();
+        SpeculativeWave wave = new SpeculativeWave(new SpeculativeWave.PartitionScheduler() {
+
+            @Override
+            public Promise<PartialAggregate> schedule(Partition partition) {
+                int attempt = countAttempt(partition);
+                // Only three partitions are done after 10 seconds, one short
+                // of the default fraction of the wave
+                if (partition.getStart() == 3) {
+                    return completeAfter(clock.createTimer(100), partition);
+                }
+                if (partition.getStart() == 4 && attempt == 1) {
+                    return completeAfter(clock.createTimer(200), partition);
+                }
+                return completeAfter(clock.createTimer(10), partition);
+            }
+        }, clock, speculationOptions());
+        List<Promise<PartialAggregate>> results = wave.start(partitions());
+        assertBackups(results, wave, 1, 1);
+        assertAttempts(results, 3, 1);
+        assertAttempts(results, 4, 2);
+    }
+
+    private void startClock() {
+        workflowTest.setClockAccelerationCoefficient(1000);
+        clock = workflowTest.getDecisionContext().getWorkflowClock();
+    }
+
+    private SplitMergeOptions speculationOptions() {
+        SplitMergeOptions options = new SplitMergeOptions();
+        options.setSpeculationSlowdown(1.5);
+        return options;
+    }
+
+    private static List<Partition> partitions() {
+        List<Partition> partitions = new ArrayList<Partition>();
+        for (int i = 0; i < 5; i++) {
+            partitions.add(new Partition(i, i + 1));
+        }
+        return partitions;
+    }
+
+    private int countAttempt(Partition partition) {
+        Integer attempt = attempts.get(partition.getStart());
+        int count = attempt == null ? 1 : attempt + 1;
+        attempts.put(partition.getStart(), count);
+        return count;
+    }
+
+    @Asynchronous
+    private Promise<PartialAggregate> completeAfter(Promise<Void> timer, Partition partition) {
+        return Promise.asPromise(new PartialAggregate(partition.getStart(), 1));
+    }
+
+    @Asynchronous
+    private void assertBackups(@Wait List<Promise<PartialAggregate>> results, SpeculativeWave wave, int backups,
+            int backupWins) {
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i, results.get(i).get().getSum());
+        }
+        Assert.assertEquals(backups, wave.getBackups());
+        Assert.assertEquals(backupWins, wave.getBackupWins());
+        Assert.assertEquals(Integer.valueOf(1), attempts.get(0L));
+    }
+
+    @Asynchronous
+    private void assertAttempts(@Wait List<Promise<PartialAggregate>> results, long start, int expected) {
+        Assert.assertEquals(Integer.valueOf(expected), attempts.get(start));
+    }
+
+    @Asynchronous
+    private void assertNoBackups(Promise<Void> done) {
+        activities.assertExact(10);
+        Assert.assertEquals(0, activities.result.getSpeculativeBackups());
+    }
+
+}